@@ -0,0 +1,107 @@
+package main.benchmark;
+
+import main.service.indexer.FieldManager;
+import main.service.indexer.PageContext;
+import main.service.indexer.factory.LemmaFactory;
+import main.utilities.LemmaCache;
+import main.utilities.Lexeme;
+import main.utilities.WordCounter;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Анализ текста при индексации: выделение слов, лемматизация, поля страницы и леммы страницы.
+ * Одна операция - проход по всем страницам корпуса на выбранном языке
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-bench.xml")
+@State(Scope.Benchmark)
+public class AnalysisBenchmark {
+    @Param({"ru", "en"})
+    public String language;
+
+    private List<PageContext> contexts;
+    private List<String> texts;
+    private List<String> words;
+    private List<LuceneMorphology> morphologies;
+    private List<Lexeme> lexemes;
+    private FieldManager fieldManager;
+
+    @Setup
+    public void setUp() {
+        contexts = new ArrayList<>();
+        texts = new ArrayList<>();
+        for (Corpus.Entry entry : Corpus.load(language)) {
+            PageContext context = entry.context();
+            contexts.add(context);
+            texts.add(context.getText("body"));
+            LemmaFactory.reset(context.getPage().getSite());
+        }
+        fieldManager = Corpus.fields();
+        Set<String> known = new LinkedHashSet<>();
+        texts.forEach(text -> WordCounter.selectWords(text).stream().filter(LemmaCache::isKnown).forEach(known::add));
+        words = new ArrayList<>(known);
+        morphologies = words.stream()
+                .map(word -> WordCounter.russianMorph.checkString(word) ? WordCounter.russianMorph : WordCounter.englishMorph)
+                .toList();
+        lexemes = words.stream().map(LemmaCache::lemmatize).filter(lemma -> lemma != null).map(Lexeme::ofNormalForm).toList();
+    }
+
+    @Benchmark
+    public void selectWords(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(WordCounter.selectWords(text));
+        }
+    }
+
+    @Benchmark
+    public void getStats(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(WordCounter.getStats(text));
+        }
+    }
+
+    /**
+     * Лексема по словоформе через морфологический словарь, в обход {@link LemmaCache}
+     */
+    @Benchmark
+    public void lexemeCreate(Blackhole blackhole) {
+        for (int i = 0; i < words.size(); i++) {
+            blackhole.consume(new Lexeme(words.get(i), morphologies.get(i)));
+        }
+    }
+
+    /**
+     * Сравнение соседних лексем: так HashMap в {@link WordCounter#getStats} сравнивает ключи
+     */
+    @Benchmark
+    public void lexemeEquals(Blackhole blackhole) {
+        for (int i = 0; i < lexemes.size(); i++) {
+            blackhole.consume(lexemes.get(i).equals(lexemes.get((i + 1) % lexemes.size())));
+        }
+    }
+
+    @Benchmark
+    public void fieldManagerParse(Blackhole blackhole) {
+        for (PageContext context : contexts) {
+            blackhole.consume(fieldManager.parse(context));
+        }
+    }
+
+    @Benchmark
+    public void lemmaFactoryCreate(Blackhole blackhole) {
+        for (PageContext context : contexts) {
+            blackhole.consume(LemmaFactory.create(context, fieldManager));
+        }
+    }
+}
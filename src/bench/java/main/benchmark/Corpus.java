@@ -0,0 +1,101 @@
+package main.benchmark;
+
+import main.model.Field;
+import main.model.Page;
+import main.model.Site;
+import main.service.indexer.FieldManager;
+import main.service.indexer.PageContext;
+import org.jsoup.Jsoup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Страницы корпуса src/bench/resources/corpus. Список страниц - corpus/pages.txt,
+ * язык страницы - префикс имени файла (ru-, en-)
+ */
+final class Corpus {
+    private static final String DIRECTORY = "/corpus/";
+
+    private Corpus() {
+    }
+
+    /**
+     * @param language префикс файлов: ru или en
+     * @return страницы корпуса на этом языке
+     */
+    static List<Entry> load(String language) {
+        List<Entry> entries = new ArrayList<>();
+        for (String line : read("pages.txt").split("\n")) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.trim().split("\\s+");
+            if (columns[1].startsWith(language + "-")) {
+                entries.add(new Entry(columns[0], read(columns[1])));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Поля страницы по умолчанию, как в V1__init.sql
+     */
+    static FieldManager fields() {
+        return new FieldManager(List.of(field("title", 1.0f), field("body", 0.8f)));
+    }
+
+    private static Field field(String selector, float weight) {
+        Field field = new Field();
+        field.setName(selector);
+        field.setSelector(selector);
+        field.setWeight(weight);
+        return field;
+    }
+
+    private static String read(String name) {
+        try (InputStream stream = Objects.requireNonNull(Corpus.class.getResourceAsStream(DIRECTORY + name), name)) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Страница корпуса
+     *
+     * @param url  адрес, относительно которого разрешаются ссылки
+     * @param html содержимое
+     */
+    record Entry(String url, String html) {
+        /**
+         * @return сайт страницы: схема и хост её адреса
+         */
+        Site site() {
+            URI uri = URI.create(url);
+            Site site = new Site();
+            site.setId(Math.abs(uri.getHost().hashCode()));
+            site.setUrl(uri.getScheme() + "://" + uri.getHost());
+            site.setName(uri.getHost());
+            site.setGeneration(1);
+            return site;
+        }
+
+        /**
+         * @return контекст страницы с заново разобранным документом
+         */
+        PageContext context() {
+            Page page = new Page();
+            page.setUrl(URI.create(url).getRawPath());
+            page.setSite(site());
+            page.setGeneration(1);
+            return new PageContext(page, Jsoup.parse(html, url));
+        }
+    }
+}
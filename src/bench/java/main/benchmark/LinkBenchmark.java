@@ -0,0 +1,68 @@
+package main.benchmark;
+
+import main.service.indexer.ContentTypeFilter;
+import main.service.indexer.LinkManager;
+import main.utilities.CrawlerProperties;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка ссылок страницы: разбор a[href], проверка и отбор ссылок для очереди обхода.
+ * Одна операция - все ссылки страниц корпуса на выбранном языке
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-bench.xml")
+@State(Scope.Benchmark)
+public class LinkBenchmark {
+    @Param({"ru", "en"})
+    public String language;
+
+    private List<Corpus.Entry> entries;
+    private List<String> links;
+    private LinkManager linkManager;
+    private ContentTypeFilter contentTypes;
+
+    @Setup
+    public void setUp() {
+        CrawlerProperties properties = new CrawlerProperties();
+        entries = Corpus.load(language);
+        links = new ArrayList<>();
+        entries.forEach(entry -> links.addAll(entry.context().getLinks()));
+        linkManager = new LinkManager(entries.get(0).site(), properties);
+        contentTypes = new ContentTypeFilter(properties);
+    }
+
+    /**
+     * Разбор страниц и сбор абсолютных ссылок
+     */
+    @Benchmark
+    public void getLinks(Blackhole blackhole) {
+        for (Corpus.Entry entry : entries) {
+            blackhole.consume(entry.context().getLinks());
+        }
+    }
+
+    @Benchmark
+    public void check(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(linkManager.check(link));
+        }
+    }
+
+    /**
+     * Отбор ссылок, как в {@link main.service.indexer.Frontier#offer}: расширение и тип по ссылке, затем ключ страницы
+     */
+    @Benchmark
+    public void filter(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(contentTypes.isSkipped(link) ? null : linkManager.key(link));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package main.benchmark;
+
+import main.service.searcher.SnippetExtractor;
+import main.utilities.WordCounter;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сниппеты результатов поиска. Для каждой страницы корпуса запрос - её самые частые леммы,
+ * как у страницы, найденной по этим леммам. Берутся леммы, которые встречаются в тексте в начальной форме:
+ * для остальных {@link SnippetExtractor} ищет словоформу по префиксу и может её не найти.
+ * Одна операция - сниппеты всех страниц на выбранном языке
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-bench.xml")
+@State(Scope.Benchmark)
+public class SnippetBenchmark {
+    private static final int QUERY_LEMMAS = 3;
+
+    @Param({"ru", "en"})
+    public String language;
+
+    private List<String> contents;
+    private List<List<String>> queries;
+
+    @Setup
+    public void setUp() {
+        contents = new ArrayList<>();
+        queries = new ArrayList<>();
+        for (Corpus.Entry entry : Corpus.load(language)) {
+            String content = Jsoup.parse(entry.html()).text().toLowerCase();
+            contents.add(content);
+            queries.add(WordCounter.getStats(content).keySet().stream()
+                    .filter(content::contains)
+                    .limit(QUERY_LEMMAS)
+                    .toList());
+        }
+    }
+
+    @Benchmark
+    public void extract(Blackhole blackhole) {
+        for (int i = 0; i < contents.size(); i++) {
+            blackhole.consume(SnippetExtractor.extract(contents.get(i), queries.get(i)));
+        }
+    }
+}
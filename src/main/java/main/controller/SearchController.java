@@ -1,17 +1,23 @@
 package main.controller;
 
 import main.service.searcher.SearchClient;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 @RestController
 public class SearchController {
     private final SearchClient searchClient;
+    private final ApplicationAvailability availability;
 
-    public SearchController(SearchClient searchClient) {
+    public SearchController(SearchClient searchClient, ApplicationAvailability availability) {
         this.searchClient = searchClient;
+        this.availability = availability;
     }
 
     @GetMapping("/api/search")
@@ -19,4 +25,16 @@ public class SearchController {
                                  @RequestParam(defaultValue = "0") int offset, @RequestParam(defaultValue = "20") int limit) {
         return searchClient.search(query, site, offset, limit);
     }
+
+    /**
+     * Проба готовности: 503, пока не загружены снимки индекса и не прогрета морфология
+     * (см. {@link main.service.searcher.SnapshotService#load})
+     */
+    @GetMapping("/api/ready")
+    public ResponseEntity<?> ready() {
+        if (availability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC) {
+            return ResponseEntity.ok(Map.of("result", true));
+        }
+        return ResponseEntity.status(503).body(Map.of("result", false, "error", "Поиск ещё не готов."));
+    }
 }
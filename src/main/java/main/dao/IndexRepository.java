@@ -1,17 +1,45 @@
 package main.dao;
 
+import java.util.Collection;
 import java.util.List;
 import main.model.Index;
+import main.model.LemmaPosting;
 import main.model.Page;
+import main.model.Posting;
 import main.model.Word;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
-public interface IndexRepository extends JpaRepository<Index, Integer> {
+public interface IndexRepository extends JpaRepository<Index, Index.Key> {
   List<Index> findByPage(Page page);
 
   List<Index> findByWord(Word word);
 
   Index findByPageAndWord(Page page, Word word);
+
+  /**
+   * Вхождения леммы без загрузки страниц: i.page.id читается из внешнего ключа
+   */
+  @Query("SELECT new main.model.Posting(i.page.id, i.rank) FROM Index i WHERE i.word = :word")
+  List<Posting> findPostingsByWord(@Param("word") Word word);
+
+  /**
+   * Вхождения всех лемм страниц вместе с леммами
+   */
+  @Query("SELECT new main.model.LemmaPosting(w.id, w.name, w.frequency, i.page.id, i.rank) FROM Index i"
+      + " JOIN i.word w WHERE i.page.id IN :pages")
+  List<LemmaPosting> findLemmaPostingsByPageIds(@Param("pages") Collection<Integer> pageIds);
+
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM _index WHERE page_id IN :pages", nativeQuery = true)
+  void deleteByPageIds(@Param("pages") Collection<Integer> pageIds);
+
+  @Query("SELECT i.word FROM Index i WHERE i.page = :page")
+  List<Word> findWordsByPage(@Param("page") Page page);
 }
@@ -0,0 +1,19 @@
+package main.dao;
+
+import java.util.Collection;
+import main.model.PageContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface PageContentRepository extends JpaRepository<PageContent, Integer> {
+
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM _page_content WHERE page_id IN :pages", nativeQuery = true)
+  void deleteByPageIds(@Param("pages") Collection<Integer> pageIds);
+}
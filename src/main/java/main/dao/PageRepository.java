@@ -1,8 +1,11 @@
 package main.dao;
 
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import main.model.Page;
+import main.model.PageVersion;
 import main.model.Site;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -14,13 +17,55 @@ import org.springframework.transaction.annotation.Transactional;
 @Repository
 public interface PageRepository extends JpaRepository<Page, Integer> {
 
-  Optional<Page> findByUrlAndSite(String url, Site site);
+  Optional<Page> findByUrlAndSiteAndGeneration(String url, Site site, int generation);
 
-  @Query("SELECT COUNT(*) FROM Page WHERE site_id =:#{#site.id}")
-  long countBySiteId(@Param("site") Site site);
+  @Query("SELECT new main.model.PageVersion(p.id, p.url, p.etag, p.lastModified, p.contentHash, p.fetchTime,"
+      + " p.firstFetch, p.checkCount, p.changeCount) FROM Page p WHERE p.site = :site AND p.generation = :generation")
+  List<PageVersion> findVersionsBySite(@Param("site") Site site, @Param("generation") int generation);
+
+  @Query("SELECT new main.model.PageVersion(p.id, p.url, p.etag, p.lastModified, p.contentHash, p.fetchTime,"
+      + " p.firstFetch, p.checkCount, p.changeCount) FROM Page p WHERE p.id IN :ids")
+  List<PageVersion> findVersionsByIds(@Param("ids") Collection<Integer> ids);
+
+  /**
+   * Страницы сайта, которые вероятнее всего изменились с последней загрузки. При частоте изменений
+   * rate вероятность изменения за время t равна 1 - exp(-rate * t), поэтому порядок задаёт rate * t
+   *
+   * @param threshold наименьшее rate * t
+   * @param limit     сколько страниц выбрать
+   */
+  @Query(value = "SELECT id FROM _page WHERE site_id = :site AND generation = :generation AND fetch_time IS NOT NULL"
+      + " AND change_rate * TIMESTAMPDIFF(SECOND, fetch_time, NOW()) >= :threshold"
+      + " ORDER BY change_rate * TIMESTAMPDIFF(SECOND, fetch_time, NOW()) DESC LIMIT :limit", nativeQuery = true)
+  List<Integer> findStaleIds(@Param("site") int siteId, @Param("generation") int generation,
+                             @Param("threshold") double threshold, @Param("limit") int limit);
+
+  boolean existsByUrlAndSiteAndGeneration(String url, Site site, int generation);
+
+  @Query("SELECT p.simhash FROM Page p WHERE p.site = :site AND p.generation = :generation AND p.simhash <> 0")
+  List<Long> findSimhashesBySite(@Param("site") Site site, @Param("generation") int generation);
+
+  /**
+   * Страницы отживших поколений сайта: не из keep и старше newest, чтобы не задеть поколение,
+   * начатое после чтения keep
+   */
+  @Query(value = "SELECT id FROM _page WHERE site_id = :site AND generation NOT IN :keep AND generation < :newest"
+      + " LIMIT :limit", nativeQuery = true)
+  List<Integer> findGarbageIds(@Param("site") int siteId, @Param("keep") Collection<Integer> keep,
+                               @Param("newest") int newest, @Param("limit") int limit);
 
   @Transactional
-  void deleteBySite(Site site);
+  @Modifying
+  @Query(value = "DELETE FROM _page WHERE id IN :ids", nativeQuery = true)
+  void deleteByIds(@Param("ids") Collection<Integer> ids);
 
-  List<Page> findBySite(Site site);
+  /**
+   * Отмечает повторную загрузку, не заставшую изменений
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE Page p SET p.fetchTime = :time, p.checkCount = p.checkCount + 1, p.changeRate = :rate,"
+      + " p.etag = COALESCE(:etag, p.etag), p.lastModified = COALESCE(:lastModified, p.lastModified) WHERE p.id = :id")
+  void touch(@Param("id") int id, @Param("time") Timestamp time, @Param("rate") double rate,
+             @Param("etag") String etag, @Param("lastModified") String lastModified);
 }
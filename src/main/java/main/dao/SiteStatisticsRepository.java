@@ -0,0 +1,28 @@
+package main.dao;
+
+import java.util.Collection;
+import main.model.SiteStatistics;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface SiteStatisticsRepository extends JpaRepository<SiteStatistics, SiteStatistics.Key> {
+  /**
+   * Прибавляет к счётчикам поколения. Pipeline выполняет его в транзакции записи страниц
+   */
+  String ADD = "INSERT INTO _site_stats (site_id, generation, pages, lemmas) VALUES (:site, :generation, :pages, :lemmas)"
+      + " ON DUPLICATE KEY UPDATE pages = pages + VALUES(pages), lemmas = lemmas + VALUES(lemmas)";
+
+  /**
+   * Удаляет счётчики отживших поколений сайта, см. {@link PageRepository#findGarbageIds}
+   */
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM _site_stats WHERE site_id = :site AND generation NOT IN :keep AND generation < :newest",
+      nativeQuery = true)
+  void deleteGarbage(@Param("site") int siteId, @Param("keep") Collection<Integer> keep, @Param("newest") int newest);
+}
@@ -1,9 +1,12 @@
 package main.dao;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import main.model.Site;
 import main.model.Word;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -11,11 +14,19 @@ import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface WordRepository extends JpaRepository<Word, Integer> {
-    Optional<Word> findByNameAndSite(String name, Site site);
+    Optional<Word> findByNameAndSiteAndGeneration(String name, Site site, int generation);
 
-    @Query("SELECT COUNT(*) FROM Word WHERE site_id =:#{#site.id}")
-    long countBySiteId(@Param("site") Site site);
+    List<Word> findBySiteAndGeneration(Site site, int generation);
 
+    /**
+     * Удаляет пачку лемм отживших поколений сайта, см. {@link PageRepository#findGarbageIds}
+     *
+     * @return количество удалённых лемм
+     */
     @Transactional
-    void deleteBySite(Site site);
+    @Modifying
+    @Query(value = "DELETE FROM _lemma WHERE site_id = :site AND generation NOT IN :keep AND generation < :newest"
+        + " LIMIT :limit", nativeQuery = true)
+    int deleteGarbage(@Param("site") int siteId, @Param("keep") Collection<Integer> keep,
+                      @Param("newest") int newest, @Param("limit") int limit);
 }
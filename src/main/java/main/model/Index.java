@@ -1,6 +1,9 @@
 package main.model;
 
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
@@ -9,28 +12,45 @@ import javax.persistence.*;
 import java.io.Serial;
 import java.io.Serializable;
 
+/**
+ * Вхождение леммы в страницу. Ключ - (lemma_id, page_id): строки одной леммы лежат в таблице рядом
+ */
 @Getter
 @Setter
-@ToString
+@ToString(exclude = {"word", "page"})
 @RequiredArgsConstructor
 @Entity
 @Table(name = "_index")
+@IdClass(Index.Key.class)
 public class Index implements Serializable {
     @Serial
     private static final long serialVersionUID = 111L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private int id;
-
-    @OneToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "lemma_id")
     private Word word;
 
-    @ManyToOne
+    @Id
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "page_id")
     private Page page;
 
     @Column(name = "`rank`")
     private float rank;
+
+    /**
+     * Составной ключ: id леммы и id страницы
+     */
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 112L;
+        private int word;
+        private int page;
+    }
 }
@@ -0,0 +1,7 @@
+package main.model;
+
+/**
+ * Вхождение леммы в страницу вместе с самой леммой: для записи сегмента по изменившимся страницам
+ */
+public record LemmaPosting(int lemmaId, String lemma, int frequency, int pageId, float rank) {
+}
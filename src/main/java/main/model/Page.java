@@ -7,28 +7,77 @@ import lombok.ToString;
 import javax.persistence.*;
 import java.io.Serial;
 import java.io.Serializable;
+import java.sql.Timestamp;
 
 @Getter
 @Setter
-@ToString(exclude = {"content", "site"})
+@ToString(exclude = "site")
 @Entity
-@Table(name = "_page")
+@Table(name = "_page", uniqueConstraints = @UniqueConstraint(columnNames = {"site_id", "generation", "path"}))
 public class Page implements Serializable {
     @Serial
     private static final long serialVersionUID = 222L;
+    /**
+     * Путь длиннее не умещается в уникальный ключ (site_id, generation, path)
+     */
+    public static final int MAX_PATH_LENGTH = 760;
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
-    @Column(name = "path")
+    @Column(name = "path", length = MAX_PATH_LENGTH)
     private String url;
 
     private int code;
 
-    private String content;
+    /**
+     * Валидаторы ответа для условных запросов
+     */
+    private String etag;
 
-    @ManyToOne
+    @Column(name = "last_modified")
+    private String lastModified;
+
+    /**
+     * Хэш тела ответа: если он не изменился, страница не разбирается заново
+     */
+    @Column(name = "content_hash")
+    private long contentHash;
+
+    @Column(name = "fetch_time")
+    private Timestamp fetchTime;
+
+    /**
+     * История загрузок для оценки частоты изменений: время первой загрузки, число повторных
+     * загрузок и сколько из них застали страницу изменившейся
+     */
+    @Column(name = "first_fetch")
+    private Timestamp firstFetch;
+
+    @Column(name = "check_count")
+    private int checkCount;
+
+    @Column(name = "change_count")
+    private int changeCount;
+
+    /**
+     * Оценка частоты изменений, раз в секунду
+     */
+    @Column(name = "change_rate")
+    private double changeRate;
+
+    /**
+     * SimHash текста страницы для поиска почти дубликатов, 0 - не посчитан
+     */
+    private long simhash;
+
+    /**
+     * Поколение индекса сайта, см. {@link Site#getGeneration()}
+     */
+    private int generation;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id")
     private Site site;
 }
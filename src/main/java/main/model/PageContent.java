@@ -0,0 +1,54 @@
+package main.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import main.utilities.CompressedText;
+
+import javax.persistence.*;
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * HTML страницы, сжатый в формате COMPRESS() MySQL. Хранится отдельно от _page, чтобы выборки
+ * страниц не тянули содержимое: оно читается только для сниппетов и повторного разбора.
+ */
+@Getter
+@Setter
+@ToString(exclude = {"page", "data"})
+@Entity
+@Table(name = "_page_content")
+public class PageContent implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 666L;
+
+    @Id
+    @Column(name = "page_id")
+    private int pageId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    private Page page;
+
+    @Column(name = "content", columnDefinition = "MEDIUMBLOB")
+    private byte[] data;
+
+    /**
+     * Размер HTML до сжатия, байт
+     */
+    @Column(name = "raw_size")
+    private int rawSize;
+
+    public static PageContent of(Page page, String html) {
+        PageContent content = new PageContent();
+        content.setPage(page);
+        content.setData(CompressedText.compress(html));
+        content.setRawSize(CompressedText.length(content.getData()));
+        return content;
+    }
+
+    public String getHtml() {
+        return CompressedText.decompress(data);
+    }
+}
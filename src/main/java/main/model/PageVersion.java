@@ -0,0 +1,24 @@
+package main.model;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Сохранённая версия страницы без содержимого: всё, что нужно для условного запроса
+ */
+public record PageVersion(int id, String url, String etag, String lastModified, long contentHash, Timestamp fetchTime,
+                          Timestamp firstFetch, int checkCount, int changeCount) {
+    /**
+     * Для выражения "SELECT new PageVersion(...)": Hibernate ищет конструктор по типу java.util.Date,
+     * хотя значения столбцов - Timestamp
+     */
+    public PageVersion(int id, String url, String etag, String lastModified, long contentHash, Date fetchTime,
+                       Date firstFetch, int checkCount, int changeCount) {
+        this(id, url, etag, lastModified, contentHash, timestamp(fetchTime), timestamp(firstFetch), checkCount,
+                changeCount);
+    }
+
+    private static Timestamp timestamp(Date date) {
+        return date == null || date instanceof Timestamp ? (Timestamp) date : new Timestamp(date.getTime());
+    }
+}
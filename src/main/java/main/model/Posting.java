@@ -0,0 +1,7 @@
+package main.model;
+
+/**
+ * Вхождение леммы в страницу без самих сущностей: только id страницы и rank
+ */
+public record Posting(int pageId, float rank) {
+}
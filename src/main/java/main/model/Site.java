@@ -37,6 +37,23 @@ public class Site implements Serializable {
 
     private String name;
 
+    /**
+     * Поколение индекса, из которого отвечает поиск. 0 - сайт ещё ни разу не проиндексирован
+     */
+    private int generation;
+
+    /**
+     * Поколение, которое строит полный обход, пока поиск читает прежнее. null - полный обход не идёт
+     */
+    private Integer building;
+
+    /**
+     * @return поколение, в которое записываются страницы и леммы обхода
+     */
+    public int getTargetGeneration() {
+        return building == null ? generation : building;
+    }
+
     public enum Status {
         INDEXING, INDEXED, FAILED
     }
@@ -0,0 +1,49 @@
+package main.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.*;
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Количество страниц и лемм в поколении индекса сайта
+ */
+@Getter
+@Setter
+@ToString
+@Entity
+@Table(name = "_site_stats")
+@IdClass(SiteStatistics.Key.class)
+public class SiteStatistics implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 777L;
+
+    @Id
+    @Column(name = "site_id")
+    private int siteId;
+
+    @Id
+    private int generation;
+
+    private long pages;
+
+    private long lemmas;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 778L;
+        private int siteId;
+        private int generation;
+    }
+}
@@ -14,7 +14,7 @@ import java.io.Serializable;
 @ToString
 @RequiredArgsConstructor
 @Entity
-@Table(name = "_lemma")
+@Table(name = "_lemma", uniqueConstraints = @UniqueConstraint(columnNames = {"site_id", "generation", "lemma"}))
 public class Word implements Serializable {
     @Serial
     private static final long serialVersionUID = 333L;
@@ -28,10 +28,12 @@ public class Word implements Serializable {
 
     private int frequency;
 
+    /**
+     * Поколение индекса сайта, см. {@link Site#getGeneration()}
+     */
+    private int generation;
+
     @ManyToOne
     @JoinColumn(name = "site_id")
     private Site site;
-
-    @Transient
-    private float rank;
 }
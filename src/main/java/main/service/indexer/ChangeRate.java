@@ -0,0 +1,66 @@
+package main.service.indexer;
+
+import main.model.Page;
+import main.model.PageVersion;
+import main.utilities.CrawlerProperties;
+
+import java.sql.Timestamp;
+
+/**
+ * Оценка частоты изменений страницы по истории её загрузок.
+ * <p>
+ * Изменения считаются пуассоновским потоком. За n загрузок с интервалом I изменения застали X раз,
+ * тогда частота оценивается как -ln((n - X + 0.5) / (n + 0.5)) / I (Cho, Garcia-Molina). Оценка
+ * учитывает, что между двумя загрузками страница могла измениться несколько раз.
+ */
+public final class ChangeRate {
+    private ChangeRate() {
+    }
+
+    /**
+     * @param checks       сколько раз страницу загружали повторно
+     * @param changes      сколько из них страница была изменена
+     * @param observed     сколько секунд прошло от первой загрузки до последней
+     * @param properties   настройки с начальной и наименьшей частотой
+     * @return изменений в секунду
+     */
+    public static double estimate(int checks, int changes, double observed, CrawlerProperties properties) {
+        if (checks == 0 || observed <= 0) {
+            return 1.0 / properties.getInitialChangeInterval().toSeconds();
+        }
+        double interval = observed / checks;
+        int x = Math.min(changes, checks);
+        double rate = -Math.log((checks - x + 0.5) / (checks + 0.5)) / interval;
+        return Math.max(rate, 1.0 / properties.getMaxChangeInterval().toSeconds());
+    }
+
+    /**
+     * Частота после повторной загрузки, не заставшей изменений
+     */
+    public static double unchanged(PageVersion version, Timestamp now, CrawlerProperties properties) {
+        return estimate(version.checkCount() + 1, version.changeCount(), observed(version.firstFetch(), now), properties);
+    }
+
+    /**
+     * Переносит историю загрузок на новую версию страницы и учитывает изменение
+     *
+     * @param page     новая версия страницы
+     * @param previous сохранённая версия, null - если страница новая
+     */
+    public static void changed(Page page, PageVersion previous, CrawlerProperties properties) {
+        if (previous == null || previous.firstFetch() == null) {
+            page.setFirstFetch(page.getFetchTime());
+            page.setChangeRate(estimate(0, 0, 0, properties));
+            return;
+        }
+        page.setFirstFetch(previous.firstFetch());
+        page.setCheckCount(previous.checkCount() + 1);
+        page.setChangeCount(previous.changeCount() + 1);
+        page.setChangeRate(estimate(page.getCheckCount(), page.getChangeCount(),
+                observed(previous.firstFetch(), page.getFetchTime()), properties));
+    }
+
+    private static double observed(Timestamp from, Timestamp to) {
+        return from == null ? 0 : (to.getTime() - from.getTime()) / 1000.0;
+    }
+}
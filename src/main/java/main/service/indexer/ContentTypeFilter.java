@@ -0,0 +1,94 @@
+package main.service.indexer;
+
+import main.utilities.CrawlerProperties;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Угадывает по ссылке, что за ней не HTML, чтобы не тратить на неё запрос.
+ * <p>
+ * Ссылки с расширениями из crawler.skipped-extensions отбрасываются сразу. Остальные группируются
+ * по каталогу и расширению (/files/*.ashx, /download/*): если на ссылки группы уже пришло
+ * crawler.non-html-threshold ответов не-HTML и ни одного HTML, следующие ссылки группы не загружаются.
+ * Хранит состояние одного обхода сайта, безопасен для вызова из любого потока.
+ */
+public class ContentTypeFilter {
+    /**
+     * Ограничение на количество запоминаемых групп ссылок сайта
+     */
+    private static final int MAX_PATTERNS = 10_000;
+    /**
+     * В группе встречался HTML - группа больше не отбрасывается
+     */
+    private static final int HTML = -1;
+    private final Set<String> extensions;
+    private final int threshold;
+    private final Map<String, Integer> patterns = new ConcurrentHashMap<>();
+
+    public ContentTypeFilter(CrawlerProperties properties) {
+        extensions = properties.getSkippedExtensions().stream()
+                .map(extension -> extension.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+        threshold = properties.getNonHtmlThreshold();
+    }
+
+    /**
+     * @param url ссылка
+     * @return true - если загружать ссылку не нужно
+     */
+    public boolean isSkipped(String url) {
+        String path = path(url);
+        if (path == null) {
+            return false;
+        }
+        String extension = extension(path);
+        if (extension != null && extensions.contains(extension)) {
+            return true;
+        }
+        Integer count = patterns.get(pattern(path, extension));
+        return count != null && count >= threshold;
+    }
+
+    /**
+     * Запоминает тип полученного по ссылке ответа
+     *
+     * @param url  ссылка
+     * @param html true - если ответ HTML
+     */
+    public void record(String url, boolean html) {
+        String path = path(url);
+        if (path == null) {
+            return;
+        }
+        String pattern = pattern(path, extension(path));
+        if (html) {
+            patterns.put(pattern, HTML);
+        } else if (patterns.containsKey(pattern) || patterns.size() < MAX_PATTERNS) {
+            patterns.merge(pattern, 1, (count, one) -> count == HTML ? HTML : count + one);
+        }
+    }
+
+    private static String path(String url) {
+        try {
+            String path = new URI(url).getRawPath();
+            return path == null || path.isEmpty() ? "/" : path.toLowerCase(Locale.ROOT);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String extension(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot <= 0 || dot == name.length() - 1 ? null : name.substring(dot + 1);
+    }
+
+    private static String pattern(String path, String extension) {
+        String directory = path.substring(0, path.lastIndexOf('/') + 1);
+        return extension == null ? directory + "*" : directory + "*." + extension;
+    }
+}
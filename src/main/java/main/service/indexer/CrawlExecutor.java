@@ -0,0 +1,35 @@
+package main.service.indexer;
+
+import lombok.Getter;
+import main.utilities.CrawlerProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+
+/**
+ * Общие для всех сайтов стадии обхода: разбор и выделение ссылок -> лемматизация.
+ * <p>
+ * Загрузку асинхронно выполняет Fetcher, запись в базу - Pipeline сайта. Загрузка масштабируется
+ * числом соединений, разбор и лемматизация - числом ядер.
+ */
+@Getter
+@Component
+public class CrawlExecutor {
+    private final Stage parse;
+    private final Stage analyze;
+
+    public CrawlExecutor(CrawlerProperties properties) {
+        parse = new Stage("parse", properties.getParseThreads(), properties.getQueueCapacity());
+        analyze = new Stage("analyze", properties.getAnalyzeThreads(), properties.getQueueCapacity());
+    }
+
+    public List<Stage> getStages() {
+        return List.of(parse, analyze);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        getStages().forEach(Stage::shutdown);
+    }
+}
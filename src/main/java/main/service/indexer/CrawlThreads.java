@@ -0,0 +1,41 @@
+package main.service.indexer;
+
+import main.utilities.LogUtil;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Потоки, которые координируют обход и большую часть времени ждут: запуск индексации,
+ * обход сайта, ожидание записи.
+ */
+final class CrawlThreads {
+
+    private CrawlThreads() {
+    }
+
+    /**
+     * Создаёт исполнителя: с виртуальными потоками - новый поток на каждую задачу, иначе -
+     * ограниченный пул обычных потоков, лишние задачи ждут в очереди
+     *
+     * @param name    префикс имени потоков
+     * @param virtual использовать виртуальные потоки, если JDK их поддерживает
+     * @param threads размер пула обычных потоков
+     * @return исполнитель
+     */
+    static ExecutorService newExecutor(String name, boolean virtual, int threads) {
+        if (virtual) {
+            try {
+                // Executors.newVirtualThreadPerTaskExecutor() появился в JDK 21, проект собирается под 17
+                Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                LogUtil.logger.info("CrawlThreads -> [%s] uses virtual threads.".formatted(name));
+                return (ExecutorService) executor;
+            } catch (ReflectiveOperationException e) {
+                LogUtil.logger.warn(("CrawlThreads -> crawler.virtual-threads is set, but Java %s has no virtual threads"
+                        + " (21+ is required): [%s] uses platform threads.").formatted(Runtime.version(), name));
+            }
+        }
+        return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory(name + "-"));
+    }
+}
@@ -0,0 +1,81 @@
+package main.service.indexer;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.util.Locale;
+
+/**
+ * Ответ сервера на GET запрос с уже распакованным телом
+ */
+@Getter
+@RequiredArgsConstructor
+public class FetchResult {
+    /**
+     * Адрес после всех перенаправлений
+     */
+    private final URI uri;
+    private final int statusCode;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    /**
+     * Тело обрезано по crawler.max-body-size
+     */
+    private final boolean truncated;
+
+    /**
+     * @return true - если сервер ответил 304 на условный запрос
+     */
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    public String getEtag() {
+        return headers.firstValue("ETag").orElse(null);
+    }
+
+    public String getLastModified() {
+        return headers.firstValue("Last-Modified").orElse(null);
+    }
+
+    /**
+     * 64-битный отпечаток тела: FNV-1a по байтам и перемешивание из MurmurHash3
+     */
+    public long getContentHash() {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : body) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public String getContentType() {
+        return headers.firstValue("Content-Type").orElse("");
+    }
+
+    public boolean isHtml() {
+        String type = getContentType().toLowerCase(Locale.ROOT);
+        return type.contains("text/html") || type.contains("application/xhtml+xml");
+    }
+
+    /**
+     * @return кодировка из Content-Type, null - если не указана
+     */
+    public String getCharset() {
+        for (String parameter : getContentType().split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].equalsIgnoreCase("charset")) {
+                return pair[1].replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+}
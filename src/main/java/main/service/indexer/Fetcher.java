@@ -0,0 +1,307 @@
+package main.service.indexer;
+
+import main.utilities.CrawlerProperties;
+import main.utilities.LogUtil;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Асинхронная загрузка страниц через один общий HttpClient.
+ * <p>
+ * Клиент переиспользует соединения с каждым хостом, договаривается о HTTP/2 и сжатии gzip/deflate.
+ * Ответ, Content-Type которого не подходит под заголовок Accept запроса, обрывается сразу после
+ * заголовков. Ожидание ответа не занимает поток. Когда и сколько запросов отправлять, решает PolitenessScheduler.
+ */
+@Component
+public class Fetcher {
+    private final HttpClient client;
+    private final int maxBodySize;
+    private final CrawlerProperties properties;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final long startTime = System.nanoTime();
+
+    public Fetcher(CrawlerProperties properties) {
+        this.properties = properties;
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(properties.getTimeout())
+                .build();
+        maxBodySize = properties.getMaxBodySize();
+    }
+
+    /**
+     * Загружает страницу
+     *
+     * @param url адрес страницы
+     * @return ответ сервера
+     */
+    public CompletableFuture<FetchResult> fetch(String url) {
+        return fetch(url, Map.of());
+    }
+
+    /**
+     * Загружает страницу с дополнительными заголовками, например условными
+     *
+     * @param url     адрес страницы
+     * @param headers заголовки запроса
+     * @return ответ сервера
+     */
+    public CompletableFuture<FetchResult> fetch(String url, Map<String, String> headers) {
+        HttpRequest request = request(url, headers);
+        inFlight.incrementAndGet();
+        return client.sendAsync(request, info -> {
+                    if (info.statusCode() == 200 && !isAccepted(request, info.headers())) {
+                        skipped.increment();
+                        return new DiscardingBodySubscriber();
+                    }
+                    return new LimitedBodySubscriber(maxBodySize);
+                })
+                .thenApply(this::decode)
+                .whenComplete((result, e) -> {
+                    inFlight.decrementAndGet();
+                    completed.increment();
+                    if (result != null) {
+                        bytes.add(result.getBody().length);
+                    }
+                });
+    }
+
+    /**
+     * Открывает тело ответа потоком, без ограничения размера. Для больших файлов вроде sitemap
+     *
+     * @param url адрес файла
+     * @return распакованное тело ответа
+     * @throws IOException если сервер ответил не 200
+     */
+    public InputStream open(String url) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = client.send(request(url, Map.of()), HttpResponse.BodyHandlers.ofInputStream());
+        InputStream body = response.body();
+        if (response.statusCode() != 200) {
+            body.close();
+            throw new IOException("%s -> status code %d".formatted(url, response.statusCode()));
+        }
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+        if (encoding.equalsIgnoreCase("gzip")) {
+            return new GZIPInputStream(body);
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            return new InflaterInputStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * Проверяет Content-Type ответа по заголовку Accept запроса. Без Accept принимается любой ответ
+     */
+    static boolean isAccepted(HttpRequest request, HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse(null);
+        List<String> accepted = request.headers().allValues("Accept");
+        if (contentType == null || accepted.isEmpty()) {
+            return true;
+        }
+        String type = mediaType(contentType);
+        for (String value : accepted) {
+            for (String range : value.split(",")) {
+                String media = mediaType(range);
+                if (media.equals("*/*") || media.equals(type)
+                        || media.endsWith("/*") && type.startsWith(media.substring(0, media.length() - 1))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String mediaType(String value) {
+        int parameters = value.indexOf(';');
+        return (parameters < 0 ? value : value.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private HttpRequest request(String url, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(properties.getTimeout())
+                .header("User-Agent", LinkManager.USER_AGENT)
+                .header("Referer", LinkManager.REFERRER)
+                .header("Accept-Encoding", "gzip, deflate");
+        headers.forEach(builder::header);
+        return builder.GET().build();
+    }
+
+    private FetchResult decode(HttpResponse<Body> response) {
+        Body body = response.body();
+        byte[] content = body.bytes();
+        boolean truncated = body.truncated();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+        try {
+            if (encoding.equalsIgnoreCase("gzip")) {
+                content = inflate(new GZIPInputStream(new ByteArrayInputStream(content)));
+            } else if (encoding.equalsIgnoreCase("deflate")) {
+                content = inflate(new InflaterInputStream(new ByteArrayInputStream(content)));
+            }
+        } catch (IOException e) {
+            LogUtil.logger.error("Fetcher::decode -> [%s] can't be decoded: %s".formatted(response.uri(), e.getMessage()));
+            content = new byte[0];
+        }
+        if (content.length > maxBodySize) {
+            content = Arrays.copyOf(content, maxBodySize);
+            truncated = true;
+        }
+        return new FetchResult(response.uri(), response.statusCode(), response.headers(), content, truncated);
+    }
+
+    /**
+     * Распаковывает не больше max-body-size байт. Обрезанный поток распаковывается до места обрыва
+     */
+    private byte[] inflate(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (in) {
+            int n;
+            while (out.size() <= maxBodySize && (n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (EOFException e) {
+            LogUtil.logger.trace("Fetcher::inflate -> compressed body is truncated.");
+        }
+        return out.toByteArray();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return количество ответов, тело которых не загружалось из-за неподходящего Content-Type
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return среднее количество загруженных страниц в секунду
+     */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds == 0 ? 0 : completed.sum() / seconds;
+    }
+
+    private record Body(byte[] bytes, boolean truncated) {
+    }
+
+    /**
+     * Прерывает передачу, не прочитав тела: пустое тело считается обрезанным
+     */
+    private static class DiscardingBodySubscriber implements BodySubscriber<Body> {
+        private final CompletableFuture<Body> result = new CompletableFuture<>();
+
+        @Override
+        public CompletionStage<Body> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+            result.complete(new Body(new byte[0], true));
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.complete(new Body(new byte[0], true));
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new Body(new byte[0], true));
+        }
+    }
+
+    /**
+     * Читает тело ответа до заданного размера, после чего прерывает передачу
+     */
+    private static class LimitedBodySubscriber implements BodySubscriber<Body> {
+        private final CompletableFuture<Body> result = new CompletableFuture<>();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final int limit;
+        private Flow.Subscription subscription;
+
+        LimitedBodySubscriber(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public CompletionStage<Body> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                int length = Math.min(buffer.remaining(), limit - out.size());
+                byte[] chunk = new byte[length];
+                buffer.get(chunk);
+                out.write(chunk, 0, length);
+                if (buffer.hasRemaining()) {
+                    subscription.cancel();
+                    result.complete(new Body(out.toByteArray(), true));
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new Body(out.toByteArray(), false));
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package main.service.indexer;
+
+import main.model.Site;
+import main.utilities.CrawlerProperties;
+import main.utilities.LogUtil;
+import main.utilities.ScalableBloomFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Очередь ссылок сайта, которые предстоит обойти, и множество уже встреченных ссылок.
+ * <p>
+ * Ссылки, за которыми по расширению или опыту обхода ожидается не HTML ({@link ContentTypeFilter}),
+ * в очередь не попадают.
+ * <p>
+ * Встреченные ссылки хранятся в масштабируемом фильтре Блума - пара байт на ссылку вместо строки.
+ * Ложное срабатывание означает, что новая страница будет пропущена, его вероятность задаётся
+ * crawler.seen-false-positive-rate. Проверка ссылок идёт без блокировок.
+ * <p>
+ * Очередь - журнал на диске ({@link FrontierLog}) в каталоге crawler.data-dir/frontier/&lt;id сайта&gt;.
+ * После записи страниц в базу время от времени сохраняется контрольная точка: позиция чтения журнала,
+ * выданные, но ещё не записанные ссылки и снимок фильтра. Если контрольная точка есть, обход
+ * продолжается с неё, иначе каталог очищается и обход начинается заново.
+ */
+public class Frontier implements Closeable {
+    private static final String LOG = "frontier.log";
+    private static final String SEEN = "seen.bin";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String STARTED = "started";
+    private final Path directory;
+    private final LinkManager linkManager;
+    private final ContentTypeFilter contentTypes;
+    private final ScalableBloomFilter seen;
+    private final FrontierLog log;
+    /**
+     * Ссылки, выданные poll() и ещё не завершённые вызовом done()
+     */
+    private final Set<String> pending = new LinkedHashSet<>();
+    /**
+     * Незавершённые ссылки из контрольной точки, выдаются раньше журнала
+     */
+    private final Deque<String> resumed = new ArrayDeque<>();
+    private final boolean isResumed;
+    private volatile RobotsTxt robots = RobotsTxt.ALLOW_ALL;
+    private final long checkpointInterval;
+    private final Object checkpointLock = new Object();
+    private long lastCheckpoint = System.nanoTime();
+
+    public Frontier(Site site, CrawlerProperties properties) throws IOException {
+        linkManager = new LinkManager(site, properties);
+        contentTypes = new ContentTypeFilter(properties);
+        directory = Path.of(properties.getDataDir(), "frontier", String.valueOf(site.getId()));
+        checkpointInterval = properties.getCheckpointInterval().toNanos();
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        isResumed = Files.exists(checkpoint);
+        if (!isResumed) {
+            delete(directory);
+            Files.createDirectories(directory);
+            Files.writeString(directory.resolve(STARTED), String.valueOf(System.currentTimeMillis()));
+            seen = new ScalableBloomFilter(properties.getSeenInitialCapacity(), properties.getSeenFalsePositiveRate());
+            log = new FrontierLog(directory.resolve(LOG), 0, 0);
+            return;
+        }
+        long readOffset;
+        long writeOffset;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            readOffset = in.readLong();
+            writeOffset = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                resumed.add(in.readUTF());
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(SEEN))))) {
+            seen = ScalableBloomFilter.readFrom(in);
+        }
+        log = new FrontierLog(directory.resolve(LOG), readOffset, writeOffset);
+        log.replay(writeOffset, url -> seen.add(linkManager.key(url)));
+        LogUtil.logger.info("Frontier -> resumed [%s]: %d pending, %d seen.".formatted(site.getUrl(), resumed.size(), seen.size()));
+    }
+
+    /**
+     * @return true - если обход продолжается с контрольной точки
+     */
+    public boolean isResumed() {
+        return isResumed;
+    }
+
+    /**
+     * Ссылки, запрещённые robots.txt, в очередь не попадают
+     */
+    public void setRobots(RobotsTxt robots) {
+        this.robots = robots;
+    }
+
+    /**
+     * @return время начала обхода, мс
+     */
+    public long getStartedAt() throws IOException {
+        return Long.parseLong(Files.readString(directory.resolve(STARTED)).trim());
+    }
+
+    /**
+     * Добавляет в очередь ссылки, которые раньше не встречались
+     *
+     * @param urls ссылки со страницы
+     * @return количество добавленных ссылок
+     */
+    public int offer(Collection<String> urls) {
+        int added = 0;
+        try {
+            for (String url : urls) {
+                int fragment = url.indexOf('#');
+                if (fragment >= 0) {
+                    url = url.substring(0, fragment);
+                }
+                String key = linkManager.key(url);
+                if (key != null && robots.isAllowed(RobotsTxt.target(url)) && !contentTypes.isSkipped(url)
+                        && seen.add(key)) {
+                    log.append(url);
+                    added++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (added > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        LogUtil.logger.trace("Frontier::offer -> %d of %d links are new.".formatted(added, urls.size()));
+        return added;
+    }
+
+    /**
+     * Выдаёт следующую ссылку. Ссылка считается незавершённой, пока не вызван done()
+     *
+     * @return ссылка, null - если за время ожидания новых ссылок не появилось
+     */
+    public synchronized String poll(long timeout, TimeUnit unit) throws InterruptedException, IOException {
+        String url = next();
+        if (url == null) {
+            TimeUnit.MILLISECONDS.timedWait(this, unit.toMillis(timeout));
+            url = next();
+        }
+        if (url != null) {
+            pending.add(url);
+        }
+        return url;
+    }
+
+    private String next() throws IOException {
+        String url = resumed.poll();
+        return url != null ? url : log.poll();
+    }
+
+    /**
+     * Отмечает ссылку обработанной: страница записана в базу или отброшена.
+     * Не чаще crawler.checkpoint-interval сохраняет контрольную точку
+     */
+    public void done(String url) {
+        boolean due;
+        synchronized (this) {
+            pending.remove(url);
+            due = System.nanoTime() - lastCheckpoint >= checkpointInterval;
+        }
+        if (due) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                LogUtil.logger.error("Frontier::done -> checkpoint failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return путь ссылки, по которому она сравнивается с другими
+     */
+    public String key(String url) {
+        return linkManager.key(url);
+    }
+
+    /**
+     * Запоминает тип ответа по ссылке, чтобы не загружать похожие ссылки на не-HTML
+     */
+    public void record(String url, FetchResult response) {
+        if (response.getStatusCode() == 200) {
+            contentTypes.record(url, response.isHtml());
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return resumed.isEmpty() && log.isEmpty();
+    }
+
+    /**
+     * Сохраняет контрольную точку. Файлы пишутся рядом и переименовываются, поэтому при падении
+     * на диске остаётся предыдущая целая контрольная точка
+     */
+    public void checkpoint() throws IOException {
+        long readOffset;
+        long writeOffset;
+        List<String> unfinished;
+        synchronized (this) {
+            lastCheckpoint = System.nanoTime();
+            log.force();
+            readOffset = log.getReadOffset();
+            writeOffset = log.getWriteOffset();
+            unfinished = Stream.concat(resumed.stream(), pending.stream()).toList();
+        }
+        synchronized (checkpointLock) {
+            Path seenFile = directory.resolve(SEEN + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(seenFile)))) {
+                seen.writeTo(out);
+            }
+            Path checkpointFile = directory.resolve(CHECKPOINT + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(checkpointFile)))) {
+                out.writeLong(readOffset);
+                out.writeLong(writeOffset);
+                out.writeInt(unfinished.size());
+                for (String url : unfinished) {
+                    out.writeUTF(url);
+                }
+            }
+            Files.move(seenFile, directory.resolve(SEEN), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(checkpointFile, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        LogUtil.logger.info("Frontier::checkpoint -> [%s] offset %d of %d, %d unfinished.".formatted(directory, readOffset, writeOffset, unfinished.size()));
+    }
+
+    /**
+     * Обход завершён: журнал и контрольная точка больше не нужны
+     */
+    public void complete() throws IOException {
+        close();
+        delete(directory);
+    }
+
+    /**
+     * @return приблизительное количество встреченных ссылок
+     */
+    public long getSeenCount() {
+        return seen.size();
+    }
+
+    /**
+     * @return объём памяти множества встреченных ссылок, байт
+     */
+    public long getSeenBytes() {
+        return seen.sizeInBytes();
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
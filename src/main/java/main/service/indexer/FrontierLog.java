@@ -0,0 +1,163 @@
+package main.service.indexer;
+
+import main.utilities.LogUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Журнал ссылок, отображённый в память: ссылки только дописываются в конец и читаются по порядку.
+ * <p>
+ * Файл отображается кусками по 8 Мб. Запись: длина (int) и байты UTF-8; длина 0 - конец данных,
+ * -1 - запись продолжается в следующем куске. Байты пишутся раньше длины, поэтому при падении
+ * процесса недописанная запись не видна.
+ */
+class FrontierLog implements Closeable {
+    private static final int CHUNK = 8 << 20;
+    private static final int NEXT_CHUNK = -1;
+    private final FileChannel channel;
+    private MappedByteBuffer writeChunk;
+    private long writeChunkStart = -1;
+    private MappedByteBuffer readChunk;
+    private long readChunkStart = -1;
+    private long writeOffset;
+    private long readOffset;
+
+    /**
+     * Открывает журнал
+     *
+     * @param file       файл журнала
+     * @param readOffset позиция первой непрочитанной записи
+     * @param writeHint  позиция, до которой записи точно есть; конец данных ищется от неё
+     */
+    FrontierLog(Path file, long readOffset, long writeHint) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.readOffset = readOffset;
+        writeOffset = writeHint;
+        while (true) {
+            MappedByteBuffer chunk = writeChunk(writeOffset);
+            int position = (int) (writeOffset - writeChunkStart);
+            int length = position + Integer.BYTES > CHUNK ? NEXT_CHUNK : chunk.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            writeOffset = length == NEXT_CHUNK ? writeChunkStart + CHUNK : writeOffset + Integer.BYTES + length;
+        }
+    }
+
+    /**
+     * Дописывает ссылку в конец журнала
+     */
+    synchronized void append(String url) throws IOException {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length + Integer.BYTES > CHUNK) {
+            LogUtil.logger.error("FrontierLog::append -> url is too long: " + url.substring(0, 100));
+            return;
+        }
+        MappedByteBuffer chunk = writeChunk(writeOffset);
+        int position = (int) (writeOffset - writeChunkStart);
+        if (position + Integer.BYTES + bytes.length > CHUNK) {
+            if (position + Integer.BYTES <= CHUNK) {
+                chunk.putInt(position, NEXT_CHUNK);
+            }
+            writeOffset = writeChunkStart + CHUNK;
+            chunk = writeChunk(writeOffset);
+            position = 0;
+        }
+        chunk.put(position + Integer.BYTES, bytes);
+        chunk.putInt(position, bytes.length);
+        writeOffset += Integer.BYTES + bytes.length;
+    }
+
+    /**
+     * Читает следующую ссылку
+     *
+     * @return ссылка, null - если все записи прочитаны
+     */
+    synchronized String poll() throws IOException {
+        while (readOffset < writeOffset) {
+            MappedByteBuffer chunk = readChunk(readOffset);
+            int position = (int) (readOffset - readChunkStart);
+            int length = position + Integer.BYTES > CHUNK ? NEXT_CHUNK : chunk.getInt(position);
+            if (length == NEXT_CHUNK) {
+                readOffset = readChunkStart + CHUNK;
+                continue;
+            }
+            byte[] bytes = new byte[length];
+            chunk.get(position + Integer.BYTES, bytes);
+            readOffset += Integer.BYTES + length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    /**
+     * Перечисляет записи начиная с позиции, не сдвигая позицию чтения
+     */
+    synchronized void replay(long from, Consumer<String> action) throws IOException {
+        long saved = readOffset;
+        readOffset = from;
+        try {
+            String url;
+            while ((url = poll()) != null) {
+                action.accept(url);
+            }
+        } finally {
+            readOffset = saved;
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return readOffset >= writeOffset;
+    }
+
+    synchronized long getReadOffset() {
+        return readOffset;
+    }
+
+    synchronized long getWriteOffset() {
+        return writeOffset;
+    }
+
+    /**
+     * Сбрасывает записанные куски на диск
+     */
+    synchronized void force() {
+        if (writeChunk != null) {
+            writeChunk.force();
+        }
+    }
+
+    private MappedByteBuffer writeChunk(long offset) throws IOException {
+        long start = offset / CHUNK * CHUNK;
+        if (start != writeChunkStart) {
+            if (writeChunk != null) {
+                writeChunk.force();
+            }
+            writeChunk = channel.map(FileChannel.MapMode.READ_WRITE, start, CHUNK);
+            writeChunkStart = start;
+        }
+        return writeChunk;
+    }
+
+    private MappedByteBuffer readChunk(long offset) throws IOException {
+        long start = offset / CHUNK * CHUNK;
+        if (start != readChunkStart) {
+            readChunk = channel.map(FileChannel.MapMode.READ_ONLY, start, CHUNK);
+            readChunkStart = start;
+        }
+        return readChunk;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
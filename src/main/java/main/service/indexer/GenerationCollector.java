@@ -0,0 +1,117 @@
+package main.service.indexer;
+
+import main.dao.IndexRepository;
+import main.dao.PageContentRepository;
+import main.dao.PageRepository;
+import main.dao.SiteRepository;
+import main.dao.SiteStatisticsRepository;
+import main.dao.WordRepository;
+import main.model.Site;
+import main.utilities.LogUtil;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Удаляет в фоне страницы, индексы и леммы поколений, из которых поиск уже не отвечает и которые
+ * не строятся: прежнее поколение после переключения и брошенное недостроенное.
+ * <p>
+ * Удаление идёт небольшими пачками в отдельных транзакциях, чтобы не держать долгих блокировок.
+ */
+@Service
+public class GenerationCollector {
+    private static final int BATCH_SIZE = 1000;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final IndexRepository indexRepository;
+    private final WordRepository wordRepository;
+    private final SiteStatisticsRepository siteStatisticsRepository;
+    private final IndexStatistics statistics;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("generation-gc-"));
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder lemmas = new LongAdder();
+
+    public GenerationCollector(SiteRepository siteRepository,
+                               PageRepository pageRepository,
+                               PageContentRepository pageContentRepository,
+                               IndexRepository indexRepository,
+                               WordRepository wordRepository,
+                               SiteStatisticsRepository siteStatisticsRepository,
+                               IndexStatistics statistics) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.indexRepository = indexRepository;
+        this.wordRepository = wordRepository;
+        this.siteStatisticsRepository = siteStatisticsRepository;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Дочищает поколения, оставшиеся от прошлого запуска
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void collectAll() {
+        siteRepository.findAll().forEach(this::collect);
+    }
+
+    /**
+     * Ставит сайт в очередь на удаление отживших поколений
+     */
+    public void collect(Site site) {
+        int siteId = site.getId();
+        executor.execute(() -> siteRepository.findById(siteId).ifPresent(this::sweep));
+    }
+
+    private void sweep(Site site) {
+        try {
+            List<Integer> keep = site.getBuilding() == null
+                    ? List.of(site.getGeneration())
+                    : List.of(site.getGeneration(), site.getBuilding());
+            int newest = keep.stream().max(Integer::compare).orElseThrow();
+            List<Integer> ids;
+            while (!(ids = pageRepository.findGarbageIds(site.getId(), keep, newest, BATCH_SIZE)).isEmpty()) {
+                indexRepository.deleteByPageIds(ids);
+                pageContentRepository.deleteByPageIds(ids);
+                pageRepository.deleteByIds(ids);
+                pages.add(ids.size());
+            }
+            int deleted;
+            while ((deleted = wordRepository.deleteGarbage(site.getId(), keep, newest, BATCH_SIZE)) > 0) {
+                lemmas.add(deleted);
+            }
+            siteStatisticsRepository.deleteGarbage(site.getId(), keep, newest);
+            statistics.remove(site.getId(), keep, newest);
+            LogUtil.logger.info("GenerationCollector::sweep -> [%s] keeps generations %s.".formatted(site.getUrl(), keep));
+        } catch (Exception e) {
+            LogUtil.logger.error("GenerationCollector::sweep -> [%s] failed.".formatted(site.getUrl()), e);
+        }
+    }
+
+    /**
+     * @return количество удалённых страниц отживших поколений
+     */
+    public long getPages() {
+        return pages.sum();
+    }
+
+    /**
+     * @return количество удалённых лемм отживших поколений
+     */
+    public long getLemmas() {
+        return lemmas.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
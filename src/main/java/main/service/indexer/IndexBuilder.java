@@ -7,28 +7,31 @@ import main.dao.IndexRepository;
 import main.dao.PageRepository;
 import main.dao.SiteRepository;
 import main.dao.WordRepository;
-import main.model.Index;
 import main.model.Page;
 import main.model.Site;
 import main.model.Site.Status;
-import main.model.Word;
-import main.service.indexer.factory.IndexFactory;
 import main.service.indexer.factory.LemmaFactory;
 import main.service.indexer.factory.PageFactory;
 import main.service.indexer.factory.SiteFactory;
+import main.service.searcher.DeltaIndex;
+import main.service.searcher.SearchEngine;
+import main.service.searcher.SnapshotService;
 import main.utilities.ApplicationProperties;
+import main.utilities.CrawlerProperties;
+import main.utilities.LemmaCache;
 import main.utilities.LogUtil;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
-import java.net.URL;
+import javax.annotation.PreDestroy;
+
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.function.Predicate;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class IndexBuilder {
@@ -38,20 +41,61 @@ public class IndexBuilder {
     private final PageRepository pageRepository;
     private final WordRepository wordRepository;
     private final IndexRepository indexRepository;
-    private final ThreadPoolExecutor threadPool;
+    private final CrawlExecutor crawlExecutor;
+    private final Fetcher fetcher;
+    private final PolitenessScheduler scheduler;
+    private final RecrawlService recrawlService;
+    private final CrawlerProperties crawlerProperties;
+    private final GenerationCollector generationCollector;
+    private final IndexStatistics indexStatistics;
+    private final SnapshotService snapshotService;
+    private final DeltaIndex deltaIndex;
+    private final SearchEngine searchEngine;
+    private final ExecutorService threadPool;
+    /**
+     * Запись страниц из indexPage в базу после ответа: один поток на все вызовы
+     */
+    private final ExecutorService pageWriter =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("index-page-"));
+    /**
+     * Очередь записи страниц из indexPage; остановка индексации её не отменяет
+     */
+    private Pipeline pagePipeline;
     private LaunchState launchState = LaunchState.IDLE;
 
     public IndexBuilder(ApplicationProperties properties,
                         SiteRepository siteRepository,
                         PageRepository pageRepository,
                         WordRepository wordRepository,
-                        IndexRepository indexRepository) {
+                        IndexRepository indexRepository,
+                        CrawlExecutor crawlExecutor,
+                        Fetcher fetcher,
+                        PolitenessScheduler scheduler,
+                        RecrawlService recrawlService,
+                        CrawlerProperties crawlerProperties,
+                        GenerationCollector generationCollector,
+                        IndexStatistics indexStatistics,
+                        SnapshotService snapshotService,
+                        DeltaIndex deltaIndex,
+                        SearchEngine searchEngine) {
         this.properties = properties;
         this.siteRepository = siteRepository;
         this.indexRepository = indexRepository;
         this.pageRepository = pageRepository;
         this.wordRepository = wordRepository;
-        threadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        this.crawlExecutor = crawlExecutor;
+        this.fetcher = fetcher;
+        this.scheduler = scheduler;
+        this.recrawlService = recrawlService;
+        this.crawlerProperties = crawlerProperties;
+        this.generationCollector = generationCollector;
+        this.indexStatistics = indexStatistics;
+        this.snapshotService = snapshotService;
+        this.deltaIndex = deltaIndex;
+        this.searchEngine = searchEngine;
+        // сайты, а также запуск и остановка, которые ждут их завершения
+        threadPool = CrawlThreads.newExecutor("index-builder", crawlerProperties.isVirtualThreads(),
+                crawlerProperties.getSiteThreads() + 2);
     }
 
     public ResponseEntity<?> stop() {
@@ -93,10 +137,13 @@ public class IndexBuilder {
                 tasks.add(() -> indexSite(site));
             }
             try {
+                recrawlService.pause();
                 threadPool.invokeAll(tasks);
             } catch (Exception e) {
                 LogUtil.logger.fatal(e);
                 System.exit(3);
+            } finally {
+                recrawlService.resume();
             }
             launchState = LaunchState.IDLE;
         };
@@ -109,84 +156,195 @@ public class IndexBuilder {
             SiteFactory.update(site, Status.INDEXING);
             Pipeline pipeline = new Pipeline();
             WebCrawler webCrawler = new WebCrawler(site, pipeline);
-            ForkJoinPool pool = ForkJoinPool.commonPool();
-            pool.invoke(webCrawler);
+            webCrawler.crawl();
             pipeline.close();
             if (launchState == LaunchState.STOPPING) {
+                webCrawler.suspend();
+                unload(site);
                 SiteFactory.update(site, "Индексация остановлена");
             } else {
-                SiteFactory.update(site, Status.INDEXED);
+                SiteFactory.publish(site);
+                searchEngine.publish(site);
+                snapshotService.schedule(site);
+                webCrawler.complete();
+                generationCollector.collect(site);
             }
         } catch (Exception e) {
             LogUtil.logger.fatal(site.getUrl(), e);
+            unload(site);
             SiteFactory.update(site, e);
             return false;
         }
         return true;
     }
 
+    /**
+     * Забывает кэши недостроенного поколения, чтобы повторный обход поиска не писал в него
+     */
+    private void unload(Site site) {
+        if (site.getBuilding() != null) {
+            LemmaFactory.unload(site);
+            NearDuplicates.unload(site);
+        }
+    }
+
     public ResponseEntity<?> indexPage(String url) throws Exception {
-        Optional<Site> found = properties.getSites().stream().filter(x -> new LinkManager(x).check(url))
+        Optional<Site> found = properties.getSites().stream().filter(x -> new LinkManager(x, crawlerProperties).check(url))
                 .findAny();
         if (found.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("result", false, "error",
                     "Данная страница находится за пределами сайтов, указанных в конфигурационном файле"));
         }
         Site site = found.get();
-        Optional<Page> optionalPage = pageRepository.findByUrlAndSite(new URL(url).getPath(), site);
-        Page page;
+        Optional<Page> optionalPage = pageRepository.findByUrlAndSiteAndGeneration(
+                new LinkManager(site, crawlerProperties).key(url), site, site.getTargetGeneration());
+        PageContext context;
         if (optionalPage.isPresent()) {
-            page = PageFactory.update(optionalPage.get());
+            optionalPage.get().setSite(site);
+            context = PageFactory.update(optionalPage.get());
         } else {
-            page = PageFactory.create(url, site);
+            context = PageFactory.create(url, site);
         }
-        if (page == null) {
+        if (context == null) {
             return ResponseEntity.status(HttpStatus.OK).body(Map.of("result", true));
         }
-        pageRepository.save(page);
-        if (page.getCode() == 404 || page.getCode() == 500) {
-            LogUtil.logger.info(
-                    "IndexBuilder::indexPage -> page [%s] is declined due to status code.".formatted(page));
-            return ResponseEntity.status(HttpStatus.OK).body(Map.of("result", true));
-        }
-        List<Index> oldIndices = indexRepository.findByPage(page);
-        List<Word> oldWords = oldIndices.stream().map(Index::getWord).toList();
-        Collection<Word> toPersist = LemmaFactory.update(oldWords, page);
-        List<Word> toDelete = new ArrayList<>();
-        oldWords.stream().filter(Predicate.not(toPersist::contains)).forEach(toDelete::add);
-        wordRepository.deleteAll(toDelete);
-        wordRepository.saveAll(toPersist);
-        indexRepository.deleteAll(oldIndices);
-        Collection<Index> indices = IndexFactory.create(page, toPersist);
-        indexRepository.saveAll(indices);
+        Page page = context.getPage();
+        Map<String, Float> stats = page.getCode() == 404 || page.getCode() == 500 ? Map.of()
+                : LemmaFactory.parse(context);
+        deltaIndex.add(page, context.getContent(), stats);
+        pageWriter.execute(() -> write(site, context, stats));
         return ResponseEntity.status(HttpStatus.OK).body(Map.of("result", true));
     }
 
+    /**
+     * Записывает страницу из indexPage в базу. Пока поиск отвечает из снимка, записанная страница
+     * остаётся в сегменте в памяти до следующего сегмента снимка
+     */
+    private void write(Site site, PageContext context, Map<String, Float> stats) {
+        Page page = context.getPage();
+        try {
+            if (!LemmaFactory.isLoaded(site)) {
+                LemmaFactory.load(site, wordRepository.findBySiteAndGeneration(site, page.getGeneration()));
+            }
+            if (page.getId() == 0) {
+                // страницу мог записать предыдущий вызов indexPage, пока эта загружалась
+                pageRepository.findByUrlAndSiteAndGeneration(page.getUrl(), site, page.getGeneration())
+                        .ifPresent(stored -> page.setId(stored.getId()));
+            }
+            pagePipeline().run(context, stats, () -> deltaIndex.committed(page,
+                    snapshotService.isUsed(site.getId(), page.getGeneration())));
+        } catch (Exception e) {
+            LogUtil.logger.error("IndexBuilder::write -> page [%s] is not saved.".formatted(page), e);
+            // поиск не должен показывать версию, которой не будет в базе
+            deltaIndex.committed(page, false);
+        }
+    }
+
+    private synchronized Pipeline pagePipeline() {
+        if (pagePipeline == null) {
+            pagePipeline = new Pipeline(true);
+        }
+        return pagePipeline;
+    }
+
     public ResponseEntity<?> statistics() {
         LogUtil.logger.info("IndexBuilder::statistics");
         ObjectMapper mapper = new ObjectMapper();
         ObjectNode root = mapper.createObjectNode();
         root.put("result", true);
         ObjectNode statistics = root.putObject("statistics");
+        List<Site> sites = siteRepository.findAll();
         ObjectNode total = statistics.putObject("total");
-        total.put("sites", siteRepository.count());
-        total.put("pages", pageRepository.count());
-        total.put("lemmas", wordRepository.count());
+        total.put("sites", sites.size());
+        total.put("pages", sites.stream().mapToLong(indexStatistics::getPages).sum());
+        total.put("lemmas", sites.stream().mapToLong(indexStatistics::getLemmas).sum());
         total.put("isIndexing", launchState != LaunchState.IDLE);
+        ArrayNode stages = statistics.putArray("stages");
+        ObjectNode fetch = stages.addObject();
+        fetch.put("name", "fetch");
+        fetch.put("active", fetcher.getInFlight());
+        fetch.put("completed", fetcher.getCompleted());
+        fetch.put("throughput", fetcher.getThroughput());
+        fetch.put("bytes", fetcher.getBytes());
+        fetch.put("skipped", fetcher.getSkipped());
+        for (Stage stage : crawlExecutor.getStages()) {
+            ObjectNode node = stages.addObject();
+            node.put("name", stage.getName());
+            node.put("threads", stage.getThreads());
+            node.put("active", stage.getActiveCount());
+            node.put("queue", stage.getQueueSize());
+            node.put("completed", stage.getCompleted());
+            node.put("throughput", stage.getThroughput());
+        }
+        ObjectNode persist = stages.addObject();
+        persist.put("name", "persist");
+        persist.put("queue", Pipeline.getQueueSize());
+        persist.put("completed", Pipeline.getCommitted());
+        persist.put("duplicates", Pipeline.getDuplicates());
+        persist.put("rawBytes", Pipeline.getRawBytes());
+        persist.put("storedBytes", Pipeline.getStoredBytes());
+        persist.put("compressionRatio", Pipeline.getStoredBytes() == 0 ? 0
+                : (double) Pipeline.getRawBytes() / Pipeline.getStoredBytes());
+        persist.put("latencyP50", Pipeline.getCommitLatency().getPercentile(0.5));
+        persist.put("latencyP99", Pipeline.getCommitLatency().getPercentile(0.99));
+        ArrayNode hosts = statistics.putArray("hosts");
+        for (PolitenessScheduler.Host host : scheduler.getHosts()) {
+            ObjectNode node = hosts.addObject();
+            node.put("name", host.getName());
+            node.put("queue", host.getQueueSize());
+            node.put("active", host.getActive());
+            node.put("limit", host.getLimit());
+            node.put("rate", host.getRate());
+        }
+        ObjectNode recrawl = statistics.putObject("recrawl");
+        recrawl.put("revisited", recrawlService.getRevisited());
+        recrawl.put("unchanged", PageFactory.getUnchanged());
+        recrawl.put("discovered", recrawlService.getDiscovered());
+        recrawl.put("pending", recrawlService.getPending());
+        ObjectNode generations = statistics.putObject("generations");
+        generations.put("collectedPages", generationCollector.getPages());
+        generations.put("collectedLemmas", generationCollector.getLemmas());
+        ObjectNode snapshots = statistics.putObject("snapshots");
+        snapshots.put("loaded", snapshotService.getCount());
+        snapshots.put("segments", snapshotService.getSegments());
+        snapshots.put("bytes", snapshotService.getSize());
+        snapshots.put("deltaPages", deltaIndex.getPages());
+        ObjectNode lemmaCache = statistics.putObject("lemmaCache");
+        lemmaCache.put("size", LemmaCache.size());
+        lemmaCache.put("hitRate", LemmaCache.stats().hitRate());
         ArrayNode arrayNode = statistics.putArray("detailed");
-        for (Site site : siteRepository.findAll()) {
+        for (Site site : sites) {
             ObjectNode node = arrayNode.addObject();
             node.put("url", site.getUrl());
             node.put("name", site.getName());
             node.put("status", site.getStatus().toString());
             node.put("statusTime", site.getStatusTime().toString());
             node.put("error", site.getLastError());
-            node.put("pages", pageRepository.countBySiteId(site));
-            node.put("lemmas", wordRepository.countBySiteId(site));
+            node.put("pages", indexStatistics.getPages(site));
+            node.put("lemmas", indexStatistics.getLemmas(site));
+            node.put("generation", site.getGeneration());
+            if (site.getBuilding() != null) {
+                node.put("building", site.getBuilding());
+            }
         }
         return ResponseEntity.status(HttpStatus.OK).body(root);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        pageWriter.shutdown();
+        try {
+            pageWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (pagePipeline != null) {
+                pagePipeline.close();
+            }
+        }
+    }
+
     private enum LaunchState {
         BUILDING_INDEX,
         STOPPING,
@@ -0,0 +1,84 @@
+package main.service.indexer;
+
+import main.dao.SiteStatisticsRepository;
+import main.model.Site;
+import main.model.SiteStatistics;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Количество страниц и лемм по поколениям сайтов в памяти.
+ * <p>
+ * Счётчики читаются из _site_stats при запуске, а дальше меняются вместе с ней: Pipeline прибавляет
+ * к таблице в транзакции записи страниц и к памяти после её фиксации. Поэтому статистика и поиск
+ * не считают строки _page и _lemma.
+ */
+@Component
+public class IndexStatistics {
+    private final SiteStatisticsRepository repository;
+    private final Map<SiteStatistics.Key, Counters> counters = new ConcurrentHashMap<>();
+
+    public IndexStatistics(SiteStatisticsRepository repository) {
+        this.repository = repository;
+    }
+
+    @PostConstruct
+    public void load() {
+        counters.clear();
+        for (SiteStatistics row : repository.findAll()) {
+            Counters value = counters(row.getSiteId(), row.getGeneration());
+            value.pages.add(row.getPages());
+            value.lemmas.add(row.getLemmas());
+        }
+    }
+
+    /**
+     * Учитывает зафиксированные в базе страницы и леммы
+     */
+    public void add(int siteId, int generation, long pages, long lemmas) {
+        Counters value = counters(siteId, generation);
+        value.pages.add(pages);
+        value.lemmas.add(lemmas);
+    }
+
+    /**
+     * Забывает поколения сайта, удалённые сборщиком
+     *
+     * @param keep   оставшиеся поколения
+     * @param newest см. {@link main.dao.PageRepository#findGarbageIds}
+     */
+    public void remove(int siteId, Collection<Integer> keep, int newest) {
+        counters.keySet().removeIf(key -> key.getSiteId() == siteId
+                && !keep.contains(key.getGeneration()) && key.getGeneration() < newest);
+    }
+
+    /**
+     * @return количество страниц в поколении сайта, из которого отвечает поиск
+     */
+    public long getPages(Site site) {
+        Counters value = counters.get(new SiteStatistics.Key(site.getId(), site.getGeneration()));
+        return value == null ? 0 : value.pages.sum();
+    }
+
+    /**
+     * @return количество лемм в поколении сайта, из которого отвечает поиск
+     */
+    public long getLemmas(Site site) {
+        Counters value = counters.get(new SiteStatistics.Key(site.getId(), site.getGeneration()));
+        return value == null ? 0 : value.lemmas.sum();
+    }
+
+    private Counters counters(int siteId, int generation) {
+        return counters.computeIfAbsent(new SiteStatistics.Key(siteId, generation), key -> new Counters());
+    }
+
+    private static class Counters {
+        private final LongAdder pages = new LongAdder();
+        private final LongAdder lemmas = new LongAdder();
+    }
+}
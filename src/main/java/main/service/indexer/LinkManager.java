@@ -1,16 +1,17 @@
 package main.service.indexer;
 
 import lombok.Getter;
+import main.model.Page;
 import main.model.Site;
+import main.utilities.CrawlerProperties;
 import main.utilities.LogUtil;
 import org.apache.commons.validator.routines.UrlValidator;
 
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Locale;
 import java.util.Objects;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class LinkManager {
     private static int id;
@@ -19,11 +20,10 @@ public class LinkManager {
     public static String REFERRER = "http://www.google.com";
     @Getter
     private final String baseHost;
-    private final HashSet<String> visitedUrls = new HashSet<>();
-    private final ReentrantLock mutex = new ReentrantLock();
     UrlValidator urlValidator;
+    private final UrlCanonicalizer canonicalizer;
 
-    public LinkManager(Site site) {
+    public LinkManager(Site site, CrawlerProperties properties) {
         name = "LinkManager#" + id++;
         LogUtil.logger.info(name + " is created.");
         String h;
@@ -34,73 +34,40 @@ public class LinkManager {
         } catch (MalformedURLException e) {
             LogUtil.logger.fatal(e);
         }
-        h = Objects.requireNonNull(url1).getHost();
+        h = Objects.requireNonNull(url1).getHost().toLowerCase(Locale.ROOT);
         h = h.startsWith("www.") ? h.substring(4) : h;
         baseHost = h;
-        add(site.getUrl());
+        canonicalizer = new UrlCanonicalizer(properties);
     }
 
     /**
-     * Проверяет ссылку
+     * Проверяет ссылку. Не хранит состояния, поэтому может вызываться из любого потока
      *
      * @param toCheck ссылка
-     * @return true - если ссылка - внутренняя ссылка главной страницы и уникальна
+     * @return true - если ссылка - внутренняя ссылка главной страницы
      */
     public boolean check(String toCheck) {
-        if (!urlValidator.isValid(toCheck))
-        {
-            return false;
-        }
-        try {
-            URL url2 = new URL(toCheck);
-            String host = url2.getHost();
-            host = host.startsWith("www.") ? host.substring(4) : host;
-            boolean cond1 = baseHost.equals(host);
-            boolean cond2 = !visitedUrls.contains(url2.getPath());
-            boolean cond3 = !toCheck.contains("#");
-            return cond1 && cond2 && cond3;
-        } catch (MalformedURLException e) {
-            LogUtil.logger.fatal(e);
-            return false;
-        }
+        return key(toCheck) != null;
     }
 
     /**
-     * Добавляет ссылку в коллекцию
+     * Ключ, по которому ссылки считаются одной страницей
      *
      * @param url ссылка
+     * @return канонические путь и строка запроса ссылки (см. {@link UrlCanonicalizer}),
+     * null - если ссылка не внутренняя или путь длиннее {@link Page#MAX_PATH_LENGTH}
      */
-    private void add(String url) {
-        try {
-            // получаем путь от url
-            String path = new URL(url).getPath();
-            visitedUrls.add(path);
-            LogUtil.logger.trace(name + "::add -> " + path + " is added.");
-        } catch (MalformedURLException e) {
-            LogUtil.logger.fatal(url, e);
+    public String key(String url) {
+        String canonical = canonicalizer.canonicalize(url);
+        if (canonical == null || !urlValidator.isValid(canonical)) {
+            return null;
         }
+        String host = URI.create(canonical).getHost();
+        host = host.startsWith("www.") ? host.substring(4) : host;
+        if (!baseHost.equals(host)) {
+            return null;
+        }
+        String key = canonicalizer.key(canonical);
+        return key == null || key.length() > Page.MAX_PATH_LENGTH ? null : key;
     }
-
-    public void add(Collection<String> collection) {
-        collection.forEach(this::add);
-    }
-
-    /**
-     * Блокирует менеджер для синхронизации
-     */
-    public void lock() {
-        mutex.lock();
-    }
-
-    /**
-     * Снимает блокировку с менеджера
-     */
-    public void unlock() {
-        mutex.unlock();
-    }
-
-    public void filter(Collection<String> collection) {
-        collection.removeIf(url -> !check(url));
-    }
-
 }
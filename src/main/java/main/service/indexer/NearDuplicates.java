@@ -0,0 +1,117 @@
+package main.service.indexer;
+
+import main.model.Site;
+import main.utilities.SimHash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отпечатки SimHash проиндексированных страниц по сайтам.
+ * <p>
+ * Страница - почти дубликат, если её отпечаток отличается от уже известного не больше чем в
+ * {@link #MAX_DISTANCE} битах. Отпечаток делится на MAX_DISTANCE + 1 полос по 16 бит: у близких
+ * отпечатков хотя бы одна полоса совпадает, поэтому сравниваются только отпечатки из общих полос.
+ * Проверка включена для сайтов, отпечатки которых загружены через reset() или load().
+ */
+public final class NearDuplicates {
+    public static final int MAX_DISTANCE = 3;
+    private static final int BANDS = MAX_DISTANCE + 1;
+    private static final Map<Integer, Index> sites = new ConcurrentHashMap<>();
+
+    private NearDuplicates() {
+    }
+
+    /**
+     * Начинает сайт с пустого набора отпечатков
+     */
+    public static void reset(Site site) {
+        sites.put(site.getId(), new Index());
+    }
+
+    /**
+     * Загружает отпечатки уже сохранённых страниц сайта
+     */
+    public static void load(Site site, Collection<Long> fingerprints) {
+        Index index = new Index();
+        fingerprints.forEach(index::add);
+        sites.put(site.getId(), index);
+    }
+
+    /**
+     * Отключает проверку для сайта до следующей загрузки отпечатков
+     */
+    public static void unload(Site site) {
+        sites.remove(site.getId());
+    }
+
+    public static boolean isLoaded(Site site) {
+        return sites.containsKey(site.getId());
+    }
+
+    /**
+     * Запоминает отпечаток страницы, если у сайта нет почти такой же
+     *
+     * @param site        сайт страницы
+     * @param fingerprint SimHash страницы, 0 - нет отпечатка
+     * @return false - если страница почти дубликат уже известной
+     */
+    public static boolean claim(Site site, long fingerprint) {
+        Index index = sites.get(site.getId());
+        if (index == null || fingerprint == 0) {
+            return true;
+        }
+        synchronized (index) {
+            if (index.contains(fingerprint)) {
+                return false;
+            }
+            index.add(fingerprint);
+            return true;
+        }
+    }
+
+    /**
+     * Запоминает отпечаток без проверки, например новой версии уже проиндексированной страницы
+     */
+    public static void add(Site site, long fingerprint) {
+        Index index = sites.get(site.getId());
+        if (index != null && fingerprint != 0) {
+            synchronized (index) {
+                index.add(fingerprint);
+            }
+        }
+    }
+
+    private static class Index {
+        private final Map<Long, List<Long>> bands = new HashMap<>();
+
+        void add(long fingerprint) {
+            for (int band = 0; band < BANDS; band++) {
+                bands.computeIfAbsent(key(band, fingerprint), x -> new ArrayList<>(1)).add(fingerprint);
+            }
+        }
+
+        boolean contains(long fingerprint) {
+            for (int band = 0; band < BANDS; band++) {
+                List<Long> candidates = bands.get(key(band, fingerprint));
+                if (candidates == null) {
+                    continue;
+                }
+                for (long candidate : candidates) {
+                    if (SimHash.distance(candidate, fingerprint) <= MAX_DISTANCE) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static long key(int band, long fingerprint) {
+            return (long) band << 16 | (fingerprint >>> (band * 16) & 0xFFFF);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package main.service.indexer;
+
+import lombok.Getter;
+import main.model.Page;
+import main.model.PageContent;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Контекст обработки страницы: сущность Page, её сжатое содержимое и DOM, разобранный один раз при загрузке.
+ * <p>
+ * Ссылки, текст полей и леммы извлекаются из одного и того же документа. После обработки
+ * документ освобождается, дальше живут только производные данные.
+ */
+public class PageContext {
+    @Getter
+    private final Page page;
+    @Getter
+    private final PageContent content;
+    private Document document;
+
+    public PageContext(Page page, Document document) {
+        this.page = page;
+        this.document = document;
+        content = PageContent.of(page, document.outerHtml());
+    }
+
+    /**
+     * Собирает ссылки документа
+     *
+     * @return абсолютные адреса из a[href]
+     */
+    public Set<String> getLinks() {
+        Set<String> result = new LinkedHashSet<>();
+        for (Element e : getDocument().select("a[href]")) {
+            result.add(e.attr("abs:href"));
+        }
+        return result;
+    }
+
+    /**
+     * @return абсолютный адрес из link[rel=canonical], null - если его нет
+     */
+    public String getCanonical() {
+        Element link = getDocument().selectFirst("link[rel=canonical][href]");
+        if (link == null) {
+            return null;
+        }
+        String href = link.attr("abs:href");
+        return href.isEmpty() ? null : href;
+    }
+
+    /**
+     * Собирает текст элементов, подходящих под селектор
+     *
+     * @param selector css селектор поля
+     * @return текст элементов через пробел
+     */
+    public String getText(String selector) {
+        StringBuilder sb = new StringBuilder();
+        for (Element element : getDocument().select(selector)) {
+            if (!sb.isEmpty()) {
+                sb.append(' ');
+            }
+            sb.append(element.text());
+        }
+        return sb.toString();
+    }
+
+    public Document getDocument() {
+        if (document == null) {
+            throw new IllegalStateException("Document of page [%s] is already released.".formatted(page));
+        }
+        return document;
+    }
+
+    /**
+     * Освобождает DOM страницы
+     */
+    public void release() {
+        document = null;
+    }
+}
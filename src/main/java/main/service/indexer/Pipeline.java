@@ -1,112 +1,367 @@
 package main.service.indexer;
 
+import main.dao.FieldRepository;
+import main.dao.IndexRepository;
+import main.dao.SiteStatisticsRepository;
+import main.model.Field;
 import main.model.Index;
 import main.model.Page;
+import main.model.PageContent;
+import main.model.SiteStatistics;
 import main.model.Word;
 import main.service.indexer.factory.IndexFactory;
 import main.service.indexer.factory.LemmaFactory;
+import main.service.searcher.SearchEngine;
+import main.service.searcher.SnapshotService;
 import main.utilities.BeanUtil;
+import main.utilities.CrawlerProperties;
+import main.utilities.LatencyHistogram;
 import main.utilities.LogUtil;
+import main.utilities.SimHash;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Лемматизирует страницы и записывает их в базу.
+ * <p>
+ * Запись - последняя стадия обхода: один поток на сайт забирает страницы из ограниченной очереди
+ * и сохраняет их пачками, одна транзакция на пачку. Пока очередь заполнена, run() ждёт.
+ * В той же транзакции к _site_stats прибавляются новые страницы и леммы ({@link IndexStatistics}),
+ * а леммы, частота которых после замены страниц дошла до нуля, удаляются и вычитаются из счётчика.
+ * До транзакции снимки индекса поколений пачки устаревают ({@link SnapshotService#invalidate}),
+ * после неё записанные страницы попадают в следующий сегмент снимка ({@link SnapshotService#committed}).
+ * Движку поиска, которому нужен текст полей из _field, он передаётся после фиксации ({@link SearchEngine#index}).
+ * <p>
+ * Запись страниц, которые поиск уже видит из сегмента в памяти ({@link main.service.searcher.DeltaIndex}),
+ * не отменяется остановкой индексации и не переводит поиск со снимка на базу: сегмент накрывает
+ * устаревшие вхождения снимка, пока записанные страницы не попадут в его следующий сегмент.
+ */
 public class Pipeline {
 
     public static volatile boolean isCancelled;
     private static int id;
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final LongAdder committed = new LongAdder();
+    private static final LongAdder duplicates = new LongAdder();
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder storedBytes = new LongAdder();
+    private static final LatencyHistogram commitLatency = new LatencyHistogram();
     private final SessionFactory sessionFactory;
+    private final IndexRepository indexRepository;
+    private final IndexStatistics statistics;
+    private final SnapshotService snapshots;
+    private final SearchEngine searchEngine;
+    private final List<Field> fields;
     private final String name;
-    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
-    private final ExecutorService threadExecutor;
-    private volatile boolean threadIsActive;
+    private final BlockingQueue<Unit> queue;
+    private final int batchSize;
+    private final Thread writer;
+    /**
+     * Страницы уже видны поиску из сегмента в памяти
+     */
+    private final boolean overlaid;
+    private volatile boolean closed;
 
     public Pipeline() {
+        this(false);
+    }
+
+    /**
+     * @param overlaid страницы до записи уже видны поиску из сегмента в памяти: запись не отменяется
+     *                 через isCancelled, а снимок индекса остаётся в поиске
+     */
+    public Pipeline(boolean overlaid) {
+        this.overlaid = overlaid;
         name = "Pipeline#" + id++;
         LogUtil.logger.info(name + " is created.");
         sessionFactory = BeanUtil.getBean(SessionFactory.class);
-        threadExecutor = Executors.newSingleThreadExecutor();
+        indexRepository = BeanUtil.getBean(IndexRepository.class);
+        statistics = BeanUtil.getBean(IndexStatistics.class);
+        snapshots = BeanUtil.getBean(SnapshotService.class);
+        searchEngine = BeanUtil.getBean(SearchEngine.class);
+        fields = searchEngine.isTextIndexed() ? BeanUtil.getBean(FieldRepository.class).findAll() : List.of();
+        CrawlerProperties properties = BeanUtil.getBean(CrawlerProperties.class);
+        queue = new LinkedBlockingQueue<>(properties.getQueueCapacity());
+        batchSize = properties.getBatchSize();
+        writer = new Thread(this::flush, name + "-writer");
+        writer.start();
+    }
+
+    public void run(PageContext context) {
+        run(context, () -> {
+        });
+    }
+
+    /**
+     * Лемматизирует страницу и ставит её в очередь на запись. Если страница уже есть в базе,
+     * её прежние индексы удаляются, а частоты лемм меняются на разницу между версиями.
+     * Новая страница, почти совпадающая по тексту с уже известной страницей сайта, отбрасывается
+     * до лемматизации (см. {@link NearDuplicates})
+     *
+     * @param context   страница с разобранным документом
+     * @param committed вызывается в потоке записи после фиксации транзакции со страницей,
+     *                  а для отброшенного дубликата - сразу
+     */
+    public void run(PageContext context, Runnable committed) {
+        run(context, null, committed);
     }
 
-    public void run(Page page) {
+    /**
+     * То же, что {@link #run(PageContext, Runnable)}, но леммы страницы уже выделены вызывающим
+     *
+     * @param stats леммы страницы и их rank ({@link LemmaFactory#parse}), null - выделить их здесь
+     */
+    public void run(PageContext context, Map<String, Float> stats, Runnable committed) {
         LogUtil.logger.info(name + "::run -> started");
-        if (isCancelled) {
+        if (!overlaid && isCancelled) {
             LogUtil.logger.info(name + "::run -> canceled");
             return;
         }
-        persist(page);
+        Page page = context.getPage();
+        List<Object> unit = new ArrayList<>();
+        unit.add(page);
+        unit.add(context.getContent());
+        Page replaced = page.getId() == 0 ? null : page;
+        if (replaced != null) {
+            unit.addAll(LemmaFactory.release(indexRepository.findWordsByPage(page), page.getSite()));
+        }
         if (page.getCode() == 404 || page.getCode() == 500) {
             LogUtil.logger.info(name + "::run -> page [%s] is declined due to status code.".formatted(page));
+            context.release();
+            persist(new Unit(unit, replaced, Map.of(), committed), context.getContent());
             return;
         }
-        Collection<Word> words = LemmaFactory.create(page);
-        persist(words);
+        // отпечаток берётся с того же текста полей из _field, что и леммы
+        page.setSimhash(SimHash.of(LemmaFactory.text(context)));
+        if (replaced != null) {
+            NearDuplicates.add(page.getSite(), page.getSimhash());
+        } else if (!NearDuplicates.claim(page.getSite(), page.getSimhash())) {
+            LogUtil.logger.info(name + "::run -> page [%s] is a near-duplicate.".formatted(page));
+            duplicates.increment();
+            context.release();
+            committed.run();
+            return;
+        }
+        Map<Word, Float> words = stats == null ? LemmaFactory.create(context) : LemmaFactory.create(stats, page);
+        Map<String, String> texts = new HashMap<>();
+        fields.forEach(field -> texts.put(field.getName(), context.getText(field.getSelector())));
+        context.release();
         Collection<Index> indices = IndexFactory.create(page, words);
-        persist(indices);
+        unit.addAll(words.keySet());
+        unit.addAll(indices);
+        persist(new Unit(unit, replaced, texts, committed), context.getContent());
         LogUtil.logger.info(name + "::run -> ended");
     }
 
-    private <T> void persist(T entity) {
-        queue.add(entity);
-        if (!threadIsActive) {
-            LogUtil.logger.trace(name + "::persist -> invoking worker.");
-            threadExecutor.execute(this::flush);
+    /**
+     * Ставит сущности одной страницы в очередь на запись
+     *
+     * @param unit    страница, её содержимое, леммы и индексы
+     * @param content сжатое содержимое страницы, для статистики сжатия
+     */
+    private void persist(Unit unit, PageContent content) {
+        rawBytes.add(content.getRawSize());
+        storedBytes.add(content.getData().length);
+        try {
+            queue.put(unit);
+            queued.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LogUtil.logger.error(name + "::persist -> interrupted, page is not saved.");
         }
     }
 
-    private <T> void persist(Collection<T> entities) {
-        entities.forEach(this::persist);
-    }
-
     private void flush() {
-        threadIsActive = true;
+        List<Unit> batch = new ArrayList<>();
         try {
-            LogUtil.logger.info(name + "::flush -> started.");
-            int currentSize = queue.size();
-            while (currentSize > 0) {
-                if (isCancelled) {
+            while (!closed || !queue.isEmpty()) {
+                Unit first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                queued.addAndGet(-batch.size());
+                if (!overlaid && isCancelled) {
                     LogUtil.logger.info(name + "::flush -> canceled");
-                    break;
+                    batch.clear();
+                    continue;
+                }
+                LogUtil.logger.info(name + "::flush -> queue size [%d].".formatted(queue.size()));
+                for (Unit unit : batch) {
+                    if (unit.entities().get(0) instanceof Page page) {
+                        snapshots.invalidate(page.getSite().getId(), page.getGeneration(), overlaid);
+                    }
+                }
+                Set<Word> unused = LemmaFactory.evictUnused(batch.stream()
+                        .flatMap(unit -> unit.entities().stream())
+                        .filter(Word.class::isInstance)
+                        .map(Word.class::cast)
+                        .toList());
+                Map<SiteStatistics.Key, long[]> added = new HashMap<>();
+                try (Session session = sessionFactory.openSession()) {
+                    session.beginTransaction();
+                    for (Unit unit : batch) {
+                        if (unit.replaced() != null) {
+                            session.createQuery("delete from Index where page = :page")
+                                    .setParameter("page", unit.replaced())
+                                    .executeUpdate();
+                            session.createQuery("delete from PageContent where page = :page")
+                                    .setParameter("page", unit.replaced())
+                                    .executeUpdate();
+                        }
+                        for (Object entity : unit.entities()) {
+                            if (entity instanceof Word word && unused.contains(word)) {
+                                continue;
+                            }
+                            LogUtil.logger.trace(name + "::flush -> persisting entity " + entity);
+                            count(added, entity);
+                            if (entity instanceof Index) {
+                                // прежние индексы страницы уже удалены: новый ключ вставляется без проверки
+                                session.persist(entity);
+                            } else {
+                                session.saveOrUpdate(entity);
+                            }
+                        }
+                    }
+                    List<Integer> deleted = new ArrayList<>();
+                    for (Word word : unused) {
+                        // лемма без id ещё не записана или уже удалена прежней пачкой
+                        if (word.getId() != 0) {
+                            deleted.add(word.getId());
+                            delta(added, word.getSite().getId(), word.getGeneration())[1]--;
+                        }
+                    }
+                    if (!deleted.isEmpty()) {
+                        session.createQuery("delete from Word where id in :ids")
+                                .setParameterList("ids", deleted)
+                                .executeUpdate();
+                    }
+                    added.forEach((key, delta) -> session.createNativeQuery(SiteStatisticsRepository.ADD)
+                            .setParameter("site", key.getSiteId())
+                            .setParameter("generation", key.getGeneration())
+                            .setParameter("pages", delta[0])
+                            .setParameter("lemmas", delta[1])
+                            .executeUpdate());
+                    session.getTransaction().commit();
                 }
-                LogUtil.logger.info(name + "::flush -> queue size [%d].".formatted(currentSize));
-                LogUtil.logger.info(name + "::flush -> opening session.");
-                Session session = sessionFactory.openSession();
-                LogUtil.logger.info(name + "::flush -> begin transaction.");
-                session.beginTransaction();
-                for (int i = 0; i < currentSize; i++) {
-                    if (isCancelled) {
-                        LogUtil.logger.info(name + "::flush -> canceled");
-                        break;
+                unused.forEach(word -> word.setId(0));
+                added.forEach((key, delta) -> statistics.add(key.getSiteId(), key.getGeneration(), delta[0], delta[1]));
+                committed.add(batch.size());
+                // раньше SnapshotService#committed: сегмент в памяти узнаёт о записи страницы до того,
+                // как снимок сможет её записать
+                batch.forEach(unit -> unit.committed().run());
+                long now = System.currentTimeMillis();
+                for (Unit unit : batch) {
+                    if (unit.entities().get(0) instanceof Page page) {
+                        snapshots.committed(page.getSite().getId(), page.getGeneration(), page.getId());
+                        if (searchEngine.isTextIndexed()) {
+                            searchEngine.index(page, unit.fields());
+                        }
+                        if (page.getFetchTime() != null) {
+                            commitLatency.record(now - page.getFetchTime().getTime());
+                        }
                     }
-                    Object entity = queue.poll();
-                    LogUtil.logger.trace(name + "::flush -> persisting entity " + entity);
-                    session.saveOrUpdate(entity);
                 }
-                LogUtil.logger.info(name + "::flush -> committing transaction.");
-                session.getTransaction().commit();
-                LogUtil.logger.info(name + "::flush -> closing session.");
-                session.close();
-                currentSize = queue.size();
+                searchEngine.refresh();
+                batch.clear();
             }
-            LogUtil.logger.info(name + "::flush -> ended.");
-            threadIsActive = false;
         } catch (Exception e) {
-            e.printStackTrace();
+            LogUtil.logger.fatal(name + "::flush -> failed.", e);
             System.exit(1);
         }
+        LogUtil.logger.info(name + "::flush -> ended.");
     }
 
+    /**
+     * Учитывает ещё не сохранённые страницы и леммы: у них нет id
+     */
+    private static void count(Map<SiteStatistics.Key, long[]> added, Object entity) {
+        if (entity instanceof Page page && page.getId() == 0) {
+            delta(added, page.getSite().getId(), page.getGeneration())[0]++;
+        } else if (entity instanceof Word word && word.getId() == 0) {
+            delta(added, word.getSite().getId(), word.getGeneration())[1]++;
+        }
+    }
+
+    private static long[] delta(Map<SiteStatistics.Key, long[]> added, int siteId, int generation) {
+        return added.computeIfAbsent(new SiteStatistics.Key(siteId, generation), key -> new long[2]);
+    }
+
+    /**
+     * Дожидается записи всех поставленных в очередь страниц
+     */
     public void close() {
         LogUtil.logger.info(name + "::close -> started.");
-        while (threadIsActive) {
-            Thread.onSpinWait();
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         LogUtil.logger.info(name + "::close -> ended.");
     }
 
+    /**
+     * Сущности одной страницы и действие после их записи
+     *
+     * @param replaced страница из базы, индексы которой заменяются, null - если страница новая
+     * @param fields   имя поля из _field -> текст страницы для движка поиска
+     */
+    private record Unit(List<Object> entities, Page replaced, Map<String, String> fields, Runnable committed) {
+    }
+
+    /**
+     * @return количество страниц в очередях на запись всех сайтов
+     */
+    public static int getQueueSize() {
+        return queued.get();
+    }
+
+    /**
+     * @return количество страниц, отброшенных как почти дубликаты
+     */
+    public static long getDuplicates() {
+        return duplicates.sum();
+    }
 
+    /**
+     * @return размер HTML страниц, поставленных на запись, байт
+     */
+    public static long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * @return размер того же HTML после сжатия, байт
+     */
+    public static long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    /**
+     * @return время от загрузки страницы до фиксации транзакции с ней
+     */
+    public static LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * @return количество записанных страниц
+     */
+    public static long getCommitted() {
+        return committed.sum();
+    }
 }
@@ -0,0 +1,359 @@
+package main.service.indexer;
+
+import lombok.Getter;
+import main.utilities.CrawlerProperties;
+import main.utilities.LogUtil;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик запросов с учётом вежливости к каждому хосту.
+ * <p>
+ * Частота запросов к хосту ограничена корзиной токенов, число одновременных запросов подстраивается
+ * по AIMD: медленно растёт, пока хост отвечает быстро, и уменьшается вдвое при 429/5xx или росте задержки.
+ * Retry-After останавливает хост на указанное время. Ожидание выполняет таймер планировщика,
+ * потоки обхода не спят.
+ */
+@Component
+public class PolitenessScheduler {
+    private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(10);
+    private final Fetcher fetcher;
+    private final CrawlerProperties properties;
+    private final Semaphore global;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    public PolitenessScheduler(Fetcher fetcher, CrawlerProperties properties) {
+        this.fetcher = fetcher;
+        this.properties = properties;
+        global = new Semaphore(properties.getMaxInFlight());
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("politeness-");
+        threadFactory.setDaemon(true);
+        timer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Ставит запрос в очередь хоста
+     *
+     * @param url адрес страницы
+     * @return будущий ответ сервера
+     */
+    public CompletableFuture<FetchResult> fetch(String url) {
+        return fetch(url, Map.of());
+    }
+
+    /**
+     * Ставит запрос с дополнительными заголовками в очередь хоста
+     *
+     * @param url     адрес страницы
+     * @param headers заголовки запроса
+     * @return будущий ответ сервера
+     */
+    public CompletableFuture<FetchResult> fetch(String url, Map<String, String> headers) {
+        String name = URI.create(url).getHost().toLowerCase(Locale.ROOT);
+        Host host = hosts.computeIfAbsent(name, Host::new);
+        Request request = new Request(url, headers);
+        host.offer(request);
+        return request.result;
+    }
+
+    /**
+     * Занимает место в очереди хоста так же, как запрос, но запрос выполняет вызывающий. Нужно для ответов,
+     * которые читаются потоком и не помещаются в {@link FetchResult}, например для sitemap
+     *
+     * @param url адрес, по хосту которого учитывается запрос
+     * @return разрешение, его нужно закрыть после чтения ответа
+     */
+    public CompletableFuture<Permit> acquire(String url) {
+        String name = URI.create(url).getHost().toLowerCase(Locale.ROOT);
+        Host host = hosts.computeIfAbsent(name, Host::new);
+        Request request = new Request(url, Map.of(), new CompletableFuture<>());
+        host.offer(request);
+        return request.permit;
+    }
+
+    /**
+     * Ограничивает частоту запросов к хосту, например по Crawl-delay из robots.txt
+     *
+     * @param name  хост
+     * @param delay наименьшая пауза между запросами
+     */
+    public void limitRate(String name, Duration delay) {
+        hosts.computeIfAbsent(name.toLowerCase(Locale.ROOT), Host::new).limitRate(delay);
+    }
+
+    public Collection<Host> getHosts() {
+        return hosts.values();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void dispatchAll() {
+        hosts.values().forEach(Host::dispatch);
+    }
+
+    /**
+     * Разбирает Retry-After: число секунд или дата в формате RFC 1123
+     *
+     * @return пауза, null - если заголовка нет или он не разобран
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        Duration delay;
+        try {
+            delay = Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                delay = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+            } catch (DateTimeParseException ex) {
+                return null;
+            }
+        }
+        if (delay.isNegative()) {
+            return Duration.ZERO;
+        }
+        return delay.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : delay;
+    }
+
+    private static class Request {
+        private final String url;
+        private final Map<String, String> headers;
+        private final CompletableFuture<FetchResult> result = new CompletableFuture<>();
+        /**
+         * Не null - если запрос выполняет вызывающий ({@link #acquire})
+         */
+        private final CompletableFuture<Permit> permit;
+        private int attempts;
+
+        Request(String url, Map<String, String> headers) {
+            this(url, headers, null);
+        }
+
+        Request(String url, Map<String, String> headers, CompletableFuture<Permit> permit) {
+            this.url = url;
+            this.headers = headers;
+            this.permit = permit;
+        }
+    }
+
+    /**
+     * Место запроса в ограничениях хоста, занятое через {@link #acquire}. Повторов и подстройки
+     * одновременности нет: время чтения потока не говорит о задержке хоста
+     */
+    public class Permit implements AutoCloseable {
+        private final Host host;
+        private boolean closed;
+
+        private Permit(Host host) {
+            this.host = host;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            global.release();
+            synchronized (host) {
+                host.active--;
+            }
+            dispatchAll();
+        }
+    }
+
+    /**
+     * Очередь и ограничения одного хоста
+     */
+    public class Host {
+        @Getter
+        private final String name;
+        private final Deque<Request> queue = new ArrayDeque<>();
+        private double rate;
+        private int burst;
+        private double tokens;
+        private long refilled = System.nanoTime();
+        private double limit;
+        private int active;
+        private long blockedUntil;
+        private long decreased;
+        private boolean timerIsSet;
+
+        Host(String name) {
+            this.name = name;
+            rate = properties.getHostRate();
+            burst = properties.getHostBurst();
+            tokens = burst;
+            limit = Math.min(2, properties.getHostMaxConcurrency());
+        }
+
+        void offer(Request request) {
+            synchronized (this) {
+                queue.add(request);
+            }
+            dispatch();
+        }
+
+        /**
+         * Отправляет запросы, которые разрешено отправить сейчас. Запросы стартуют вне блокировки хоста
+         */
+        void dispatch() {
+            List<Request> ready = new ArrayList<>();
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                while (!queue.isEmpty()) {
+                    if (now < blockedUntil) {
+                        schedule(blockedUntil - now);
+                        break;
+                    }
+                    if (active >= (int) limit) {
+                        break;
+                    }
+                    if (tokens < 1) {
+                        schedule((long) ((1 - tokens) / rate * 1e9));
+                        break;
+                    }
+                    if (!global.tryAcquire()) {
+                        break;
+                    }
+                    tokens--;
+                    active++;
+                    ready.add(queue.poll());
+                }
+            }
+            ready.forEach(this::start);
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilled) / 1e9 * rate);
+            refilled = now;
+        }
+
+        private synchronized void limitRate(Duration delay) {
+            rate = Math.min(rate, 1e9 / delay.toNanos());
+            burst = 1;
+            tokens = Math.min(tokens, burst);
+            LogUtil.logger.info("PolitenessScheduler -> host [%s] rate is limited to %.3f".formatted(name, rate));
+        }
+
+        private void schedule(long delayNanos) {
+            if (timerIsSet) {
+                return;
+            }
+            timerIsSet = true;
+            timer.schedule(() -> {
+                synchronized (this) {
+                    timerIsSet = false;
+                }
+                dispatch();
+            }, Math.max(delayNanos, 0), TimeUnit.NANOSECONDS);
+        }
+
+        private void start(Request request) {
+            if (request.permit != null) {
+                request.permit.complete(new Permit(this));
+                return;
+            }
+            long started = System.nanoTime();
+            CompletableFuture<FetchResult> future;
+            try {
+                future = fetcher.fetch(request.url, request.headers);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((result, e) -> {
+                global.release();
+                boolean retry = complete(request, result, e, System.nanoTime() - started);
+                if (!retry) {
+                    if (e != null) {
+                        request.result.completeExceptionally(e);
+                    } else {
+                        request.result.complete(result);
+                    }
+                }
+                dispatchAll();
+            });
+        }
+
+        /**
+         * Подстраивает ограничения хоста по результату запроса
+         *
+         * @return true - если запрос возвращён в очередь для повтора
+         */
+        private synchronized boolean complete(Request request, FetchResult result, Throwable e, long latency) {
+            active--;
+            long now = System.nanoTime();
+            int status = result == null ? 0 : result.getStatusCode();
+            boolean overloaded = e != null || status == 429 || status >= 500;
+            if (overloaded || latency > properties.getTargetLatency().toNanos()) {
+                if (now - decreased > properties.getTargetLatency().toNanos()) {
+                    limit = Math.max(1, limit / 2);
+                    decreased = now;
+                    LogUtil.logger.info("PolitenessScheduler -> host [%s] concurrency is decreased to %d".formatted(name, (int) limit));
+                }
+            } else {
+                limit = Math.min(properties.getHostMaxConcurrency(), limit + 1 / limit);
+            }
+            if (status != 429 && status != 503) {
+                return false;
+            }
+            Duration retryAfter = parseRetryAfter(result.getHeaders().firstValue("Retry-After").orElse(null));
+            if (retryAfter == null) {
+                retryAfter = Duration.ofSeconds(1L << Math.min(request.attempts, 6));
+            }
+            blockedUntil = Math.max(blockedUntil, now + retryAfter.toNanos());
+            LogUtil.logger.info("PolitenessScheduler -> host [%s] is paused for %s".formatted(name, retryAfter));
+            if (request.attempts >= properties.getMaxRetries()) {
+                return false;
+            }
+            request.attempts++;
+            queue.addFirst(request);
+            return true;
+        }
+
+        public synchronized int getQueueSize() {
+            return queue.size();
+        }
+
+        public synchronized int getActive() {
+            return active;
+        }
+
+        public synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        public synchronized double getRate() {
+            return rate;
+        }
+    }
+}
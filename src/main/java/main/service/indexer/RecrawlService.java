@@ -0,0 +1,321 @@
+package main.service.indexer;
+
+import main.dao.PageRepository;
+import main.dao.SiteRepository;
+import main.dao.WordRepository;
+import main.model.PageVersion;
+import main.model.Site;
+import main.model.Site.Status;
+import main.service.indexer.factory.LemmaFactory;
+import main.service.indexer.factory.PageFactory;
+import main.utilities.CrawlerProperties;
+import main.utilities.LogUtil;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Фоновый переобход проиндексированных сайтов.
+ * <p>
+ * Раз в crawler.recrawl-interval для каждого сайта выбираются страницы с наибольшей вероятностью
+ * изменения с последней загрузки (см. {@link ChangeRate}) и запрашиваются условным GET. Загрузки
+ * ограничены бюджетом crawler.recrawl-host-budget на хост в час, поэтому часто меняющиеся страницы
+ * обновляются часто, а статичные - редко. У изменившихся страниц проверяются ссылки: новые страницы
+ * сайта загружаются из того же бюджета. Страницы и ссылки, запрещённые robots.txt сайта, не загружаются:
+ * он читается через {@link SiteDiscovery} и перечитывается раз в сутки. Пока идёт полная индексация,
+ * переобход приостановлен.
+ */
+@Service
+public class RecrawlService {
+    private static final long ROBOTS_TTL = TimeUnit.DAYS.toNanos(1);
+    private final CrawlerProperties properties;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final WordRepository wordRepository;
+    private final CrawlExecutor executor;
+    private final Fetcher fetcher;
+    private final PolitenessScheduler scheduler;
+    private final ScheduledExecutorService timer;
+    /**
+     * robots.txt сайтов по id сайта
+     */
+    private final Map<Integer, Rules> robots = new ConcurrentHashMap<>();
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    /**
+     * Загружаемые сейчас ссылки: одна страница не загружается дважды одновременно
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final LongAdder revisited = new LongAdder();
+    private final LongAdder discovered = new LongAdder();
+    private Pipeline pipeline;
+    private volatile boolean paused;
+
+    public RecrawlService(CrawlerProperties properties,
+                          SiteRepository siteRepository,
+                          PageRepository pageRepository,
+                          WordRepository wordRepository,
+                          CrawlExecutor executor,
+                          Fetcher fetcher,
+                          PolitenessScheduler scheduler) {
+        this.properties = properties;
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.wordRepository = wordRepository;
+        this.executor = executor;
+        this.fetcher = fetcher;
+        this.scheduler = scheduler;
+        timer = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("recrawl-"));
+        if (properties.isRecrawl()) {
+            long interval = properties.getRecrawlInterval().toMillis();
+            timer.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Останавливает выбор новых страниц и ждёт записи уже загружаемых
+     */
+    public void pause() throws InterruptedException {
+        paused = true;
+        long deadline = System.nanoTime() + properties.getTimeout().multipliedBy(2).toNanos();
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    private void tick() {
+        if (paused) {
+            return;
+        }
+        double threshold = -Math.log(1 - properties.getRecrawlMinChangeProbability());
+        try {
+            for (Site site : siteRepository.findAll()) {
+                if (site.getStatus() != Status.INDEXED || paused) {
+                    continue;
+                }
+                Budget budget = budgets.computeIfAbsent(host(site.getUrl()), x -> new Budget(properties.getRecrawlHostBudget()));
+                int limit = budget.available();
+                if (limit == 0) {
+                    continue;
+                }
+                List<Integer> ids = pageRepository.findStaleIds(site.getId(), site.getGeneration(), threshold, limit);
+                if (ids.isEmpty()) {
+                    continue;
+                }
+                RobotsTxt rules = robots(site);
+                if (!LemmaFactory.isLoaded(site)) {
+                    LemmaFactory.load(site, wordRepository.findBySiteAndGeneration(site, site.getGeneration()));
+                }
+                if (!NearDuplicates.isLoaded(site)) {
+                    NearDuplicates.load(site, pageRepository.findSimhashesBySite(site, site.getGeneration()));
+                }
+                LogUtil.logger.info("RecrawlService::tick -> [%s] %d stale pages.".formatted(site.getUrl(), ids.size()));
+                LinkManager linkManager = new LinkManager(site, properties);
+                ContentTypeFilter contentTypes = new ContentTypeFilter(properties);
+                for (PageVersion version : pageRepository.findVersionsByIds(ids)) {
+                    String url = site.getUrl() + version.url();
+                    if (rules.isAllowed(RobotsTxt.target(url)) && budget.tryAcquire()) {
+                        revisit(site, linkManager, contentTypes, budget, url, version);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LogUtil.logger.error("RecrawlService::tick -> failed.", e);
+        }
+    }
+
+    /**
+     * Загружает страницу
+     *
+     * @param version сохранённая версия, null - если страница новая
+     */
+    private void revisit(Site site, LinkManager linkManager, ContentTypeFilter contentTypes, Budget budget,
+                         String url, PageVersion version) {
+        if (!pending.add(url)) {
+            return;
+        }
+        PageFactory.fetch(url, version).whenComplete((response, e) -> {
+            if (e != null) {
+                LogUtil.logger.error("RecrawlService::revisit -> %s -> %s".formatted(url, e.getMessage()));
+                pending.remove(url);
+                return;
+            }
+            // загрузок не больше бюджета хоста, поэтому очередь передачи ограничена им
+            executor.getParse().handOff(() -> parse(site, linkManager, contentTypes, budget, url, version, response),
+                    () -> pending.remove(url));
+        });
+    }
+
+    private void parse(Site site, LinkManager linkManager, ContentTypeFilter contentTypes, Budget budget, String url,
+                       PageVersion version, FetchResult response) {
+        boolean handedOver = false;
+        try {
+            if (response.getStatusCode() == 200) {
+                contentTypes.record(url, response.isHtml());
+            }
+            if (version == null) {
+                discovered.increment();
+            } else {
+                revisited.increment();
+            }
+            PageContext context = version == null
+                    ? PageFactory.create(url, site, response)
+                    : PageFactory.revise(url, site, version, response);
+            if (context == null) {
+                return;
+            }
+            if (version != null) {
+                discover(site, linkManager, contentTypes, budget, context.getLinks());
+            }
+            executor.getAnalyze().submit(() -> analyze(url, context));
+            handedOver = true;
+        } catch (Exception e) {
+            LogUtil.logger.error("RecrawlService::parse -> %s -> %s".formatted(url, e.getMessage()));
+        } finally {
+            if (!handedOver) {
+                pending.remove(url);
+            }
+        }
+    }
+
+    private void analyze(String url, PageContext context) {
+        boolean queued = false;
+        try {
+            pipeline().run(context, () -> pending.remove(url));
+            queued = true;
+        } finally {
+            if (!queued) {
+                pending.remove(url);
+            }
+        }
+    }
+
+    /**
+     * Загружает новые страницы сайта, на которые ссылается изменившаяся страница. Ссылки, запрещённые
+     * robots.txt, пропускаются так же, как при полном обходе
+     */
+    private void discover(Site site, LinkManager linkManager, ContentTypeFilter contentTypes, Budget budget,
+                          Collection<String> links) {
+        Rules rules = robots.get(site.getId());
+        if (rules == null) {
+            return;
+        }
+        for (String link : links) {
+            if (paused || budget.available() == 0) {
+                return;
+            }
+            String path = linkManager.key(link);
+            // ссылки одной страницы сводятся к одному адресу, иначе её загрузили бы дважды
+            String url = path == null ? null : site.getUrl() + path;
+            if (url != null && rules.robots().isAllowed(RobotsTxt.target(url)) && !contentTypes.isSkipped(link) && !pending.contains(url)
+                    && !pageRepository.existsByUrlAndSiteAndGeneration(path, site, site.getGeneration()) && budget.tryAcquire()) {
+                revisit(site, linkManager, contentTypes, budget, url, null);
+            }
+        }
+    }
+
+    /**
+     * @return robots.txt сайта, прочитанный не раньше чем сутки назад
+     */
+    private RobotsTxt robots(Site site) throws InterruptedException {
+        Rules rules = robots.get(site.getId());
+        if (rules == null || System.nanoTime() - rules.loaded() > ROBOTS_TTL) {
+            rules = new Rules(new SiteDiscovery(site, fetcher, scheduler).robots(), System.nanoTime());
+            robots.put(site.getId(), rules);
+        }
+        return rules.robots();
+    }
+
+    private synchronized Pipeline pipeline() {
+        if (pipeline == null) {
+            pipeline = new Pipeline();
+        }
+        return pipeline;
+    }
+
+    private static String host(String url) {
+        String host = URI.create(url).getHost().toLowerCase(Locale.ROOT);
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    /**
+     * @return количество повторно загруженных страниц
+     */
+    public long getRevisited() {
+        return revisited.sum();
+    }
+
+    /**
+     * @return количество новых страниц, найденных при переобходе
+     */
+    public long getDiscovered() {
+        return discovered.sum();
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        synchronized (this) {
+            if (pipeline != null) {
+                pipeline.close();
+            }
+        }
+    }
+
+    private record Rules(RobotsTxt robots, long loaded) {
+    }
+
+    /**
+     * Бюджет загрузок хоста: пополняется равномерно, за час - не больше crawler.recrawl-host-budget
+     */
+    private static class Budget {
+        private final double perNano;
+        private final int capacity;
+        private double tokens;
+        private long updated = System.nanoTime();
+
+        Budget(int perHour) {
+            capacity = perHour;
+            perNano = perHour / (double) TimeUnit.HOURS.toNanos(1);
+        }
+
+        synchronized int available() {
+            refill();
+            return (int) tokens;
+        }
+
+        synchronized boolean tryAcquire() {
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - updated) * perNano);
+            updated = now;
+        }
+    }
+}
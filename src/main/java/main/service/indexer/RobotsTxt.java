@@ -0,0 +1,171 @@
+package main.service.indexer;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для нашего робота (RFC 9309).
+ * <p>
+ * Берётся группа, в user-agent которой указан наш робот, а если такой нет - группа "*". Из правил
+ * Allow/Disallow действует самое длинное совпавшее, при равной длине - Allow. Поддерживаются
+ * шаблоны "*" и "$". Sitemap и Crawl-delay тоже читаются.
+ */
+public class RobotsTxt {
+    /**
+     * robots.txt нет или он недоступен: разрешено всё
+     */
+    public static final RobotsTxt ALLOW_ALL = new RobotsTxt(List.of(), null, List.of());
+    private final List<Rule> rules;
+    @Getter
+    private final Duration crawlDelay;
+    @Getter
+    private final List<String> sitemaps;
+
+    private RobotsTxt(List<Rule> rules, Duration crawlDelay, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * Разбирает robots.txt
+     *
+     * @param text      содержимое файла
+     * @param userAgent User-Agent робота, сравнивается его название до "/"
+     */
+    public static RobotsTxt parse(String text, String userAgent) {
+        String product = userAgent.split("[/ ]", 2)[0].toLowerCase(Locale.ROOT);
+        List<Rule> own = new ArrayList<>();
+        List<Rule> common = new ArrayList<>();
+        Duration ownDelay = null;
+        Duration commonDelay = null;
+        boolean ownFound = false;
+        List<String> sitemaps = new ArrayList<>();
+        List<String> agents = new ArrayList<>();
+        boolean inRules = false;
+        for (String line : text.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent" -> {
+                    if (inRules) {
+                        agents.clear();
+                        inRules = false;
+                    }
+                    agents.add(value.toLowerCase(Locale.ROOT));
+                }
+                case "allow", "disallow" -> {
+                    inRules = true;
+                    if (value.isEmpty()) {
+                        continue;
+                    }
+                    Rule rule = new Rule(value, key.equals("allow"));
+                    if (matches(agents, product)) {
+                        own.add(rule);
+                        ownFound = true;
+                    } else if (agents.contains("*")) {
+                        common.add(rule);
+                    }
+                }
+                case "crawl-delay" -> {
+                    inRules = true;
+                    Duration delay = parseDelay(value);
+                    if (matches(agents, product)) {
+                        ownDelay = delay;
+                        ownFound = true;
+                    } else if (agents.contains("*")) {
+                        commonDelay = delay;
+                    }
+                }
+                case "sitemap" -> {
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return ownFound
+                ? new RobotsTxt(own, ownDelay, sitemaps)
+                : new RobotsTxt(common, commonDelay, sitemaps);
+    }
+
+    /**
+     * @param target путь и строка запроса ссылки
+     * @return true - если роботу можно загрузить ссылку
+     */
+    public boolean isAllowed(String target) {
+        if (target.equals("/robots.txt")) {
+            return true;
+        }
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (rule.pattern.matcher(target).lookingAt()
+                    && (best == null || rule.length > best.length || rule.length == best.length && rule.allow)) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow;
+    }
+
+    /**
+     * @return путь и строка запроса ссылки - то, с чем сравниваются правила
+     */
+    public static String target(String url) {
+        URI uri = URI.create(url);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+    }
+
+    private static boolean matches(List<String> agents, String product) {
+        return agents.stream().anyMatch(agent -> !agent.equals("*") && product.contains(agent));
+    }
+
+    private static Duration parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds > 0 ? Duration.ofMillis((long) (seconds * 1000)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final int length;
+        private final boolean allow;
+
+        Rule(String value, boolean allow) {
+            this.allow = allow;
+            length = value.length();
+            boolean anchored = value.endsWith("$");
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            StringBuilder regex = new StringBuilder();
+            for (String part : body.split("\\*", -1)) {
+                if (!regex.isEmpty()) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(part));
+            }
+            if (anchored) {
+                regex.append("$");
+            }
+            pattern = Pattern.compile(regex.toString());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package main.service.indexer;
+
+import main.model.Site;
+import main.utilities.LogUtil;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Читает robots.txt и sitemap сайта.
+ * <p>
+ * robots.txt задаёт запрещённые пути, паузу между запросами и адреса sitemap. Sitemap и sitemap index
+ * читаются потоком, ссылки отдаются пачками, поэтому обход может начинаться с тысяч страниц сразу,
+ * а не ждать, пока ссылки найдутся по одной на каждом уровне вложенности. Запросы sitemap идут
+ * через ограничения хоста в {@link PolitenessScheduler}, вместе с запросами обхода.
+ */
+public class SiteDiscovery {
+    private static final int MAX_SITEMAPS = 1000;
+    private static final int BATCH_SIZE = 1000;
+    private final Site site;
+    private final Fetcher fetcher;
+    private final PolitenessScheduler scheduler;
+
+    public SiteDiscovery(Site site, Fetcher fetcher, PolitenessScheduler scheduler) {
+        this.site = site;
+        this.fetcher = fetcher;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Загружает robots.txt. Crawl-delay сразу передаётся планировщику для хоста сайта с www и без
+     *
+     * @return правила, {@link RobotsTxt#ALLOW_ALL} - если файла нет или он недоступен
+     */
+    public RobotsTxt robots() throws InterruptedException {
+        String url = root() + "/robots.txt";
+        RobotsTxt robots = RobotsTxt.ALLOW_ALL;
+        try {
+            FetchResult response = scheduler.fetch(url).get();
+            if (response.getStatusCode() == 200) {
+                Charset charset = response.getCharset() == null || !Charset.isSupported(response.getCharset())
+                        ? StandardCharsets.UTF_8 : Charset.forName(response.getCharset());
+                robots = RobotsTxt.parse(new String(response.getBody(), charset), LinkManager.USER_AGENT);
+            } else {
+                LogUtil.logger.info("SiteDiscovery::robots -> [%s] status code %d, everything is allowed.".formatted(url, response.getStatusCode()));
+            }
+        } catch (ExecutionException e) {
+            LogUtil.logger.warn("SiteDiscovery::robots -> [%s] is unavailable: %s".formatted(url, e.getMessage()));
+        }
+        if (robots.getCrawlDelay() != null) {
+            String host = URI.create(site.getUrl()).getHost();
+            String bare = host.startsWith("www.") ? host.substring(4) : host;
+            scheduler.limitRate(bare, robots.getCrawlDelay());
+            scheduler.limitRate("www." + bare, robots.getCrawlDelay());
+        }
+        return robots;
+    }
+
+    /**
+     * Читает sitemap из robots.txt, а если их там нет - /sitemap.xml
+     *
+     * @param robots    правила сайта
+     * @param batches   получает ссылки пачками
+     * @param cancelled проверяется между sitemap
+     * @return количество прочитанных ссылок
+     */
+    public long sitemaps(RobotsTxt robots, Consumer<List<SitemapReader.Entry>> batches, BooleanSupplier cancelled)
+            throws InterruptedException {
+        Deque<String> queue = new ArrayDeque<>(robots.getSitemaps().isEmpty()
+                ? List.of(root() + "/sitemap.xml") : robots.getSitemaps());
+        Set<String> visited = new HashSet<>();
+        long total = 0;
+        while (!queue.isEmpty() && visited.size() < MAX_SITEMAPS && !cancelled.getAsBoolean()) {
+            String url = queue.poll();
+            if (!visited.add(url)) {
+                continue;
+            }
+            List<SitemapReader.Entry> batch = new ArrayList<>();
+            long[] count = {0};
+            try (PolitenessScheduler.Permit permit = scheduler.acquire(url).get();
+                 InputStream in = fetcher.open(url)) {
+                SitemapReader.read(in, entry -> {
+                    batch.add(entry);
+                    count[0]++;
+                    if (batch.size() >= BATCH_SIZE) {
+                        batches.accept(List.copyOf(batch));
+                        batch.clear();
+                    }
+                }, queue::add);
+            } catch (IOException | XMLStreamException | ExecutionException e) {
+                LogUtil.logger.warn("SiteDiscovery::sitemaps -> [%s] is not read: %s".formatted(url, e.getMessage()));
+            }
+            if (!batch.isEmpty()) {
+                batches.accept(batch);
+            }
+            total += count[0];
+            LogUtil.logger.info("SiteDiscovery::sitemaps -> [%s] %d links.".formatted(url, count[0]));
+        }
+        return total;
+    }
+
+    private String root() {
+        URI uri = URI.create(site.getUrl());
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+}
@@ -0,0 +1,106 @@
+package main.service.indexer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Потоковое чтение sitemap и sitemap index (в том числе .xml.gz).
+ * <p>
+ * Файл не загружается в память целиком: StAX выдаёт элементы по мере чтения, поэтому и файл
+ * на 50 000 ссылок читается с постоянным расходом памяти.
+ */
+public final class SitemapReader {
+    private static final XMLInputFactory factory = XMLInputFactory.newFactory();
+
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private SitemapReader() {
+    }
+
+    /**
+     * Ссылка из sitemap
+     *
+     * @param loc     адрес страницы
+     * @param lastmod время последнего изменения, null - если не указано
+     */
+    public record Entry(String loc, Instant lastmod) {
+    }
+
+    /**
+     * Читает sitemap
+     *
+     * @param in       содержимое, сжатое gzip или нет
+     * @param urls     получает ссылки на страницы из urlset
+     * @param sitemaps получает ссылки на вложенные sitemap из sitemapindex
+     */
+    public static void read(InputStream in, Consumer<Entry> urls, Consumer<String> sitemaps)
+            throws IOException, XMLStreamException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        InputStream content = first == 0x1f && second == 0x8b ? new GZIPInputStream(buffered) : buffered;
+        XMLStreamReader reader = factory.createXMLStreamReader(content);
+        try {
+            String loc = null;
+            String lastmod = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "url", "sitemap" -> {
+                            loc = null;
+                            lastmod = null;
+                        }
+                        case "loc" -> loc = reader.getElementText().trim();
+                        case "lastmod" -> lastmod = reader.getElementText().trim();
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && loc != null && !loc.isEmpty()) {
+                    if (reader.getLocalName().equals("url")) {
+                        urls.accept(new Entry(loc, parseLastmod(lastmod)));
+                    } else if (reader.getLocalName().equals("sitemap")) {
+                        sitemaps.accept(loc);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Разбирает дату в формате W3C: "2024-01-31" или "2024-01-31T10:00:00+03:00"
+     */
+    static Instant parseLastmod(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+            } catch (DateTimeParseException ex) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package main.service.indexer;
+
+import lombok.Getter;
+import main.utilities.LogUtil;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Стадия обработки: пул потоков фиксированного размера с ограниченной очередью.
+ * <p>
+ * Когда очередь заполнена, отправитель ждёт освобождения места - так медленная стадия
+ * притормаживает предыдущие, а не копит задачи в памяти. Потокам, которые ждать не могут (потоки
+ * HttpClient общие для всех сайтов), задачи передаются через {@link #handOff}: ждёт поток передачи стадии.
+ */
+public class Stage {
+    @Getter
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService handOff;
+    private final LongAdder completed = new LongAdder();
+    private final long startTime = System.nanoTime();
+
+    public Stage(String name, int threads, int capacity) {
+        this.name = name;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(name + "-");
+        threadFactory.setDaemon(true);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), threadFactory, Stage::block);
+        CustomizableThreadFactory handOffFactory = new CustomizableThreadFactory(name + "-hand-off-");
+        handOffFactory.setDaemon(true);
+        handOff = Executors.newSingleThreadExecutor(handOffFactory);
+        LogUtil.logger.info("Stage [%s] is created with %d threads.".formatted(name, threads));
+    }
+
+    /**
+     * Ставит задачу в очередь стадии, ожидая свободного места
+     *
+     * @param task задача
+     */
+    public void submit(Runnable task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LogUtil.logger.error("Stage [%s] task failed.".formatted(name), e);
+            } finally {
+                completed.increment();
+            }
+        });
+    }
+
+    /**
+     * Передаёт задачу стадии, не дожидаясь места в очереди. Очередь передачи не ограничена:
+     * число переданных, но не начатых задач ограничивает вызывающий
+     *
+     * @param task     задача
+     * @param rejected вызывается вместо задачи, если стадия остановлена
+     */
+    public void handOff(Runnable task, Runnable rejected) {
+        try {
+            handOff.execute(() -> {
+                try {
+                    submit(task);
+                } catch (RejectedExecutionException e) {
+                    rejected.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.run();
+        }
+    }
+
+    private static void block(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Stage is shut down.");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * @return среднее количество выполненных задач в секунду с момента создания стадии
+     */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds == 0 ? 0 : completed.sum() / seconds;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        // задачи, не дошедшие до стадии, получают отказ
+        handOff.shutdownNow().forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,123 @@
+package main.service.indexer;
+
+import main.utilities.CrawlerProperties;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Приводит ссылки к каноническому виду, чтобы варианты одной страницы считались одной ссылкой.
+ * <p>
+ * Фрагмент отбрасывается, схема и хост приводятся к нижнему регистру, порт по умолчанию убирается,
+ * в пути убираются "." и "..", повторные "/", завершающие "/" и index.html, %-коды - к верхнему
+ * регистру. Параметры из crawler.ignored-query-parameters удаляются, остальные сортируются.
+ * С crawler.drop-query строка запроса отбрасывается целиком.
+ */
+public class UrlCanonicalizer {
+    private static final Set<String> INDEX_FILES = Set.of("index.html", "index.htm", "index.php", "default.aspx");
+    private static final Pattern ESCAPE = Pattern.compile("%[0-9a-fA-F]{2}");
+    private final List<String> ignoredParameters;
+    private final boolean dropQuery;
+    private final boolean lowercasePath;
+
+    public UrlCanonicalizer(CrawlerProperties properties) {
+        ignoredParameters = properties.getIgnoredQueryParameters().stream()
+                .map(parameter -> parameter.toLowerCase(Locale.ROOT)).toList();
+        dropQuery = properties.isDropQuery();
+        lowercasePath = properties.isLowercasePath();
+    }
+
+    /**
+     * @param url абсолютная ссылка
+     * @return каноническая ссылка, null - если это не http(s) или ссылка некорректна
+     */
+    public String canonicalize(String url) {
+        URI uri;
+        try {
+            uri = new URI(url.trim());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(scheme).append("://").append(uri.getHost().toLowerCase(Locale.ROOT));
+        int port = uri.getPort();
+        if (port != -1 && !(port == 80 && scheme.equals("http")) && !(port == 443 && scheme.equals("https"))) {
+            result.append(':').append(port);
+        }
+        return result.append(target(uri)).toString();
+    }
+
+    /**
+     * @param url абсолютная ссылка
+     * @return канонические путь и строка запроса - ключ страницы, null - если ссылка некорректна
+     */
+    public String key(String url) {
+        try {
+            return target(new URI(url.trim()));
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private String target(URI uri) {
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        path = path.replaceAll("/{2,}", "/");
+        if (!path.isEmpty()) {
+            path = URI.create("http://h" + (path.startsWith("/") ? "" : "/") + path).normalize().getRawPath();
+            path = path.replaceAll("^(/\\.\\.)+", "");
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash >= 0 && INDEX_FILES.contains(path.substring(slash + 1).toLowerCase(Locale.ROOT))) {
+            path = path.substring(0, slash + 1);
+        }
+        while (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        path = upperEscapes(lowercasePath ? path.toLowerCase(Locale.ROOT) : path);
+        String query = dropQuery ? null : query(uri.getRawQuery());
+        return query == null ? path : path + "?" + query;
+    }
+
+    private String query(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return null;
+        }
+        List<String> kept = new ArrayList<>();
+        for (String parameter : raw.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            String name = parameter.split("=", 2)[0].toLowerCase(Locale.ROOT);
+            if (ignoredParameters.stream().noneMatch(ignored -> ignored.endsWith("*")
+                    ? name.startsWith(ignored.substring(0, ignored.length() - 1)) : name.equals(ignored))) {
+                kept.add(upperEscapes(parameter));
+            }
+        }
+        if (kept.isEmpty()) {
+            return null;
+        }
+        kept.sort(null);
+        return String.join("&", kept);
+    }
+
+    private static String upperEscapes(String value) {
+        Matcher matcher = ESCAPE.matcher(value);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(result, matcher.group().toUpperCase(Locale.ROOT));
+        }
+        return matcher.appendTail(result).toString();
+    }
+}
@@ -1,100 +1,293 @@
 package main.service.indexer;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.RecursiveAction;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import main.dao.PageRepository;
 import main.dao.WordRepository;
-import main.model.Page;
+import main.model.PageVersion;
 import main.model.Site;
+import main.service.indexer.factory.LemmaFactory;
 import main.service.indexer.factory.PageFactory;
+import main.service.indexer.factory.SiteFactory;
 import main.utilities.BeanUtil;
+import main.utilities.CrawlerProperties;
 import main.utilities.LogUtil;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import main.utilities.ScalableBloomFilter;
 
-public class WebCrawler extends RecursiveAction {
+/**
+ * Обход сайта: асинхронная загрузка -> разбор -> лемматизация -> запись.
+ * <p>
+ * Найденные ссылки складываются в очередь сайта, из которой их забирает поток, вызвавший crawl().
+ * Очередь ссылок не ограничена, поэтому стадии не могут заблокировать друг друга по кругу.
+ * <p>
+ * Обход с нуля строит новое поколение индекса сайта ({@link Site#getBuilding()}), поиск тем временем
+ * отвечает из прежнего. Прежнее поколение удаляется в фоне после переключения ({@link GenerationCollector}).
+ * <p>
+ * Если у сайта осталась контрольная точка прерванного обхода, обход продолжается с неё в то же
+ * поколение, а уже записанные страницы повторно не загружаются.
+ * <p>
+ * В режиме crawler.incremental проиндексированный сайт обновляется на месте: все известные страницы
+ * запрашиваются условным GET, и разбираются заново только те, чьё содержимое изменилось.
+ * <p>
+ * Перед обходом читается robots.txt: запрещённые ссылки отбрасываются, Crawl-delay ограничивает
+ * частоту запросов. Sitemap читается в отдельном потоке параллельно с обходом и сразу наполняет
+ * очередь. Известные страницы, которые по lastmod не менялись с прошлой загрузки, не запрашиваются.
+ * <p>
+ * Ссылки сравниваются в каноническом виде ({@link UrlCanonicalizer}). Страница, у которой
+ * link rel=canonical указывает на другую страницу сайта, не индексируется: вместо неё в очередь
+ * ставится каноническая.
+ */
+public class WebCrawler {
 
-    private Pipeline pipeline;
-    private LinkManager linkManager;
-    private Site site;
-    private final String url;
+    private final Pipeline pipeline;
+    private final Site site;
+    private final CrawlExecutor executor;
+    private final Frontier frontier;
+    /**
+     * Ссылки, отправленные на загрузку и ещё не прошедшие все стадии
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * Сколько запросов сайта может одновременно ждать в планировщике или разбора в очереди стадии.
+     * Место освобождается при начале разбора, этим ограничена очередь передачи {@link Stage#handOff}
+     */
+    private final Semaphore window;
+    /**
+     * Пути страниц, записанных до прерывания обхода. null - если обход начат с нуля
+     */
+    private final ScalableBloomFilter stored;
+    /**
+     * Сохранённые версии страниц сайта по путям
+     */
+    private final Map<String, PageVersion> known = new HashMap<>();
+    /**
+     * Пути известных страниц, которые по lastmod из sitemap не менялись с прошлой загрузки
+     */
+    private final Set<String> fresh = ConcurrentHashMap.newKeySet();
+    private final SiteDiscovery discovery;
+    private final RobotsTxt robots;
+    private Thread seeder;
     public static volatile boolean isCancelled;
 
-    private WebCrawler(String url) {
-        this.url = url;
-    }
-
-    public WebCrawler(Site site, Pipeline pipeline) {
+    public WebCrawler(Site site, Pipeline pipeline) throws IOException, InterruptedException {
         PageRepository pageRepository = BeanUtil.getBean(PageRepository.class);
-        pageRepository.deleteBySite(site);
         WordRepository wordRepository = BeanUtil.getBean(WordRepository.class);
-        wordRepository.deleteBySite(site);
         this.site = site;
-        linkManager = new LinkManager(site);
-        this.url = site.getUrl();
         this.pipeline = pipeline;
+        executor = BeanUtil.getBean(CrawlExecutor.class);
+        CrawlerProperties properties = BeanUtil.getBean(CrawlerProperties.class);
+        window = new Semaphore(properties.getSiteMaxInFlight());
+        frontier = new Frontier(site, properties);
+        discovery = new SiteDiscovery(site, BeanUtil.getBean(Fetcher.class), BeanUtil.getBean(PolitenessScheduler.class));
+        robots = discovery.robots();
+        frontier.setRobots(robots);
+        // недостроенное поколение без контрольной точки не продолжить: строится следующее
+        boolean abandoned = !frontier.isResumed() && site.getBuilding() != null;
+        if (!abandoned && (frontier.isResumed() || properties.isIncremental())) {
+            pageRepository.findVersionsBySite(site, site.getTargetGeneration())
+                    .forEach(version -> known.put(version.url(), version));
+        }
+        if (frontier.isResumed()) {
+            long startedAt = frontier.getStartedAt();
+            stored = new ScalableBloomFilter(known.size(), properties.getSeenFalsePositiveRate());
+            known.values().stream()
+                    .filter(version -> version.fetchTime() != null && version.fetchTime().getTime() >= startedAt)
+                    .forEach(version -> stored.add(version.url()));
+            LemmaFactory.load(site, wordRepository.findBySiteAndGeneration(site, site.getTargetGeneration()));
+            NearDuplicates.load(site, pageRepository.findSimhashesBySite(site, site.getTargetGeneration()));
+        } else if (!known.isEmpty()) {
+            stored = null;
+            LemmaFactory.load(site, wordRepository.findBySiteAndGeneration(site, site.getGeneration()));
+            NearDuplicates.load(site, pageRepository.findSimhashesBySite(site, site.getGeneration()));
+            frontier.offer(List.of(site.getUrl()));
+            seeder = new Thread(this::seed, "seeder-" + site.getId());
+        } else {
+            stored = null;
+            SiteFactory.build(site);
+            BeanUtil.getBean(GenerationCollector.class).collect(site);
+            LemmaFactory.reset(site);
+            NearDuplicates.reset(site);
+            frontier.offer(List.of(site.getUrl()));
+            seeder = new Thread(this::seed, "seeder-" + site.getId());
+        }
     }
 
-    @Override
-    protected void compute() {
-        if (isCancelled) {
-            return;
+    /**
+     * Обходит сайт. Возвращает управление, когда все найденные страницы обработаны или обход отменён
+     */
+    public void crawl() throws InterruptedException, IOException {
+        if (seeder != null) {
+            seeder.start();
+        }
+        while (true) {
+            if (isCancelled) {
+                if (inFlight.get() == 0) {
+                    return;
+                }
+                TimeUnit.MILLISECONDS.sleep(50);
+                continue;
+            }
+            String url = frontier.poll(50, TimeUnit.MILLISECONDS);
+            if (url != null) {
+                String key = frontier.key(url);
+                if (stored != null && stored.mightContain(key) || fresh.contains(key)) {
+                    frontier.done(url);
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                fetch(url);
+            } else if (inFlight.get() == 0 && frontier.isEmpty() && (seeder == null || !seeder.isAlive())) {
+                return;
+            }
         }
-        Page page;
+    }
+
+    /**
+     * Наполняет очередь ссылками из sitemap, затем - известными страницами сайта
+     */
+    private void seed() {
         try {
-            page = PageFactory.create(url, site);
-        } catch (Exception e) {
-            Throwable rootCause = LogUtil.getRootCause(e);
-            LogUtil.logger.fatal("%s -> %s".formatted(url, rootCause == null ? e.getMessage() : rootCause.getMessage()));
+            long total = discovery.sitemaps(robots, this::seed, () -> isCancelled);
+            LogUtil.logger.info("WebCrawler::seed -> [%s] %d links from sitemaps, %d are not modified.".formatted(site.getUrl(), total, fresh.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return;
         }
-        if (page == null) {
+        if (isCancelled) {
             return;
         }
-        pipeline.run(page);
-        Collection<WebCrawler> subtasks = createSubtasks(page);
-        ForkJoinTask.invokeAll(subtasks);
+        List<String> urls = new ArrayList<>(known.size());
+        known.keySet().forEach(path -> urls.add(site.getUrl() + path));
+        frontier.offer(urls);
+    }
+
+    private void seed(List<SitemapReader.Entry> entries) {
+        List<String> urls = new ArrayList<>(entries.size());
+        for (SitemapReader.Entry entry : entries) {
+            PageVersion version = known.get(frontier.key(entry.loc()));
+            if (version != null && version.fetchTime() != null && entry.lastmod() != null
+                    && !entry.lastmod().isAfter(version.fetchTime().toInstant())) {
+                fresh.add(version.url());
+            }
+            urls.add(entry.loc());
+        }
+        frontier.offer(urls);
     }
 
     /**
-     * Создаёт список задач из внутренних ссылок документа
-     *
-     * @param page текущая страница
-     * @return список main.application.WebCrawler
+     * Сохраняет состояние остановленного обхода, чтобы следующий запуск продолжил его
      */
-    private Collection<WebCrawler> createSubtasks(Page page) {
-        Collection<String> urls = extractUrls(page);
-        return urls.stream().map(url -> {
-            WebCrawler webCrawler = new WebCrawler(url);
-            webCrawler.site = this.site;
-            webCrawler.linkManager = this.linkManager;
-            webCrawler.pipeline = this.pipeline;
-            return webCrawler;
-        }).collect(Collectors.toList());
+    public void suspend() throws IOException {
+        frontier.checkpoint();
+        frontier.close();
     }
 
     /**
-     * Метод получения ссылок из документа, которые раньше не встречались
-     *
-     * @param page текущая страница
-     * @return список ссылок
+     * Удаляет журнал обхода, дошедшего до конца
      */
-    private Collection<String> extractUrls(Page page) {
-        Elements elements = Jsoup.parse(page.getContent(), site.getUrl()).select("a[href]");
-        HashSet<String> result = new HashSet<>();
-        for (Element e : elements) {
-            String href = e.attr("abs:href");
-            result.add(href);
+    public void complete() throws IOException {
+        frontier.complete();
+    }
+
+    /**
+     * Ставит загрузку страницы в очередь планировщика. Ждёт, только если у сайта заняты все места
+     */
+    private void fetch(String url) throws InterruptedException {
+        window.acquire();
+        CompletableFuture<FetchResult> future;
+        try {
+            future = PageFactory.fetch(url, known.get(frontier.key(url)));
+        } catch (IllegalArgumentException e) {
+            LogUtil.logger.error("%s -> %s".formatted(url, e.getMessage()));
+            window.release();
+            finish(url);
+            return;
         }
-        linkManager.lock();
-        linkManager.filter(result);
-        linkManager.add(result);
-        linkManager.unlock();
+        future.whenComplete((response, e) -> {
+            if (e != null) {
+                window.release();
+                Throwable rootCause = LogUtil.getRootCause(e);
+                LogUtil.logger.fatal("%s -> %s".formatted(url, rootCause == null ? e.getMessage() : rootCause.getMessage()));
+                finish(url);
+                return;
+            }
+            // поток HttpClient общий для всех сайтов и не ждёт места в очереди разбора
+            executor.getParse().handOff(() -> {
+                window.release();
+                parse(url, response);
+            }, () -> {
+                window.release();
+                finish(url);
+            });
+        });
+    }
 
-        return result;
+    private void parse(String url, FetchResult response) {
+        boolean handedOver = false;
+        try {
+            if (isCancelled) {
+                inFlight.decrementAndGet();
+                handedOver = true;
+                return;
+            }
+            frontier.record(url, response);
+            PageVersion version = known.get(frontier.key(url));
+            PageContext context = version == null
+                    ? PageFactory.create(url, site, response)
+                    : PageFactory.revise(url, site, version, response);
+            if (context == null) {
+                return;
+            }
+            frontier.offer(context.getLinks());
+            String canonical = context.getCanonical();
+            String canonicalKey = canonical == null ? null : frontier.key(canonical);
+            if (canonicalKey != null && !canonicalKey.equals(frontier.key(url))) {
+                LogUtil.logger.info("WebCrawler::parse -> [%s] is indexed as [%s].".formatted(url, canonical));
+                context.release();
+                frontier.offer(List.of(canonical));
+                return;
+            }
+            executor.getAnalyze().submit(() -> analyze(url, context));
+            handedOver = true;
+        } catch (Exception e) {
+            Throwable rootCause = LogUtil.getRootCause(e);
+            LogUtil.logger.fatal("%s -> %s".formatted(url, rootCause == null ? e.getMessage() : rootCause.getMessage()));
+        } finally {
+            if (!handedOver) {
+                finish(url);
+            }
+        }
+    }
+
+    private void analyze(String url, PageContext context) {
+        boolean handedOver = false;
+        try {
+            pipeline.run(context, () -> frontier.done(url));
+            handedOver = true;
+        } finally {
+            if (handedOver) {
+                inFlight.decrementAndGet();
+            } else {
+                // страница не дошла до записи: без done она повторялась бы при каждом возобновлении
+                finish(url);
+            }
+        }
+    }
+
+    /**
+     * Страница отброшена и записи не ждёт
+     */
+    private void finish(String url) {
+        frontier.done(url);
+        inFlight.decrementAndGet();
     }
 }
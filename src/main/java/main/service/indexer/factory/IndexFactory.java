@@ -1,6 +1,7 @@
 package main.service.indexer.factory;
 
 import java.util.Collection;
+import java.util.Map;
 import main.model.Index;
 import main.model.Page;
 import main.model.Word;
@@ -8,13 +9,13 @@ import main.utilities.LogUtil;
 
 public class IndexFactory {
 
-    public synchronized static Collection<Index> create(Page page, Collection<Word> words) {
+    public static Collection<Index> create(Page page, Map<Word, Float> words) {
         LogUtil.logger.info("IndexFactory::create -> start page [%s]".formatted(page));
-        Collection<Index> indices = words.parallelStream().map(word -> {
+        Collection<Index> indices = words.entrySet().stream().map(entry -> {
             Index index = new Index();
             index.setPage(page);
-            index.setWord(word);
-            index.setRank(word.getRank());
+            index.setWord(entry.getKey());
+            index.setRank(entry.getValue());
             return index;
         }).toList();
         LogUtil.logger.info("IndexFactory::create -> end page [%s]".formatted(page));
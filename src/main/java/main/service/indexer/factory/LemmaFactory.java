@@ -1,70 +1,187 @@
 package main.service.indexer.factory;
 
 import main.model.Page;
+import main.model.Site;
 import main.model.Word;
 import main.service.indexer.FieldManager;
+import main.service.indexer.PageContext;
 import main.utilities.LogUtil;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 public class LemmaFactory {
 
     private static final Map<String, HashSet<Word>> cachedWords = new ConcurrentHashMap<>();
-    private static final FieldManager fieldManager = new FieldManager();
+    /**
+     * Сайты, леммы которых в кэше совпадают с базой
+     */
+    private static final Set<Integer> loadedSites = ConcurrentHashMap.newKeySet();
 
-    public static Collection<Word> create(Page page) {
+    /**
+     * Выделяет леммы страницы
+     *
+     * @param context страница с разобранным документом
+     * @return леммы и их ранг на этой странице. Ранг не хранится в Word, так как одна и та же
+     * сущность одновременно используется на разных страницах
+     */
+    public static Map<Word, Float> create(PageContext context) {
+        return create(context, Fields.fieldManager);
+    }
+
+    /**
+     * Выделяет леммы страницы по заданным полям
+     *
+     * @param context      страница с разобранным документом
+     * @param fieldManager поля страницы и их веса
+     * @return леммы и их ранг на этой странице
+     */
+    public static Map<Word, Float> create(PageContext context, FieldManager fieldManager) {
+        Page page = context.getPage();
         LogUtil.logger.info("LemmaFactory::create -> start page [%s]".formatted(page));
-        Map<String, Float> stats = fieldManager.parse(page);
-        Collection<Word> words = create(stats, page);
+        Map<String, Float> stats = fieldManager.parse(context);
+        Map<Word, Float> words = create(stats, page);
         LogUtil.logger.info("LemmaFactory::create -> end page [%s]".formatted(page));
         return words;
     }
 
-    private synchronized static Collection<Word> create(Map<String, Float> stats, Page page) {
-        return stats.keySet().stream().map(lemma -> {
-            Word word = getFromCache(lemma, page);
+    /**
+     * Выделяет леммы страницы, не трогая кэш лемм
+     *
+     * @return лемма -> её ранг на странице
+     */
+    public static Map<String, Float> parse(PageContext context) {
+        return Fields.fieldManager.parse(context);
+    }
+
+    /**
+     * @return текст полей страницы, из которого выделяются леммы
+     */
+    public static String text(PageContext context) {
+        return Fields.fieldManager.text(context);
+    }
+
+    /**
+     * Находит или создаёт в кэше сущности лемм, выделенных {@link #parse}, и увеличивает их частоту
+     *
+     * @return леммы и их ранг на этой странице
+     */
+    public synchronized static Map<Word, Float> create(Map<String, Float> stats, Page page) {
+        Map<Word, Float> result = new LinkedHashMap<>();
+        stats.forEach((lemma, rank) -> {
+            Word word = getFromCache(lemma, page.getSite());
             if (word == null) {
                 word = new Word();
                 word.setName(lemma);
                 word.setSite(page.getSite());
+                word.setGeneration(page.getGeneration());
                 cachedWords.get(lemma).add(word);
             }
             word.setFrequency(word.getFrequency() + 1);
-            word.setRank(stats.get(lemma));
-            return word;
-        }).collect(Collectors.toList());
+            result.put(word, rank);
+        });
+        return result;
     }
 
-    public static Collection<Word> update(Collection<Word> toUpdate, Page page) {
-        Collection<Word> newWords = create(page);
-        Collection<Word> result = new ArrayList<>();
-        Map<String, Word> oldWords = toUpdate.stream().collect(Collectors.toMap(Word::getName, x -> x));
-        for (Word newWord : newWords) {
-            Word word = oldWords.getOrDefault(newWord.getName(), newWord);
-            word.setRank(newWord.getRank());
-            word.setFrequency(newWord.getFrequency());
-            result.add(word);
+    /**
+     * Убирает вклад прежней версии страницы в частоты лемм. Вместе с create() для новой версии
+     * частоты меняются на разницу между версиями
+     *
+     * @param previous леммы, которые были на странице
+     * @param site     сайт страницы
+     * @return экземпляры лемм из кэша с уменьшенной частотой, их нужно сохранить или, если частота
+     * дошла до нуля, удалить (см. {@link #evictUnused})
+     */
+    public synchronized static List<Word> release(Collection<Word> previous, Site site) {
+        List<Word> released = new ArrayList<>();
+        for (Word old : previous) {
+            Word word = getFromCache(old.getName(), site);
+            if (word == null) {
+                word = old;
+                cachedWords.get(old.getName()).add(word);
+            }
+            word.setFrequency(Math.max(0, word.getFrequency() - 1));
+            released.add(word);
         }
-        return result;
+        return released;
     }
 
-    private static Word getFromCache(String lemma, Page page) {
+    /**
+     * Убирает из кэша леммы, которые больше не встречаются ни на одной странице. Решение принимается под той же
+     * блокировкой, что и create(), поэтому удалённая лемма не может тут же получить новую страницу:
+     * create() создаст для неё новую сущность
+     *
+     * @param words леммы, поставленные на запись
+     * @return леммы с нулевой частотой, без повторов
+     */
+    public synchronized static Set<Word> evictUnused(Collection<Word> words) {
+        Set<Word> unused = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Word word : words) {
+            if (word.getFrequency() == 0 && unused.add(word)) {
+                HashSet<Word> cached = cachedWords.get(word.getName());
+                if (cached != null) {
+                    cached.remove(word);
+                }
+            }
+        }
+        return unused;
+    }
+
+    /**
+     * Забывает леммы сайта, например перед обходом с нуля
+     */
+    public synchronized static void reset(Site site) {
+        cachedWords.values().forEach(words -> words.removeIf(x -> x.getSite().getId() == site.getId()));
+        loadedSites.add(site.getId());
+    }
+
+    /**
+     * Забывает леммы сайта так, что перед следующим использованием их нужно загрузить заново
+     */
+    public synchronized static void unload(Site site) {
+        reset(site);
+        loadedSites.remove(site.getId());
+    }
+
+    /**
+     * Заменяет леммы сайта в кэше сохранёнными в базе, чтобы продолженный обход не создавал их заново
+     *
+     * @param site  сайт
+     * @param words леммы сайта из базы
+     */
+    public synchronized static void load(Site site, Collection<Word> words) {
+        reset(site);
+        words.forEach(word -> cachedWords.computeIfAbsent(word.getName(), x -> new HashSet<>()).add(word));
+    }
+
+    /**
+     * @return true - если леммы сайта уже загружены в кэш или сайт обходится с нуля
+     */
+    public static boolean isLoaded(Site site) {
+        return loadedSites.contains(site.getId());
+    }
+
+    private static Word getFromCache(String lemma, Site site) {
         HashSet<Word> cached = LemmaFactory.cachedWords.get(lemma);
         if (cached == null) {
             cachedWords.put(lemma, new HashSet<>());
             return null;
         }
-        List<Word> matches = cached.stream().filter(x -> x.getSite().getId() == page.getSite().getId()).toList();
+        List<Word> matches = cached.stream().filter(x -> x.getSite().getId() == site.getId()).toList();
         if (matches.size() == 0) {
             return null;
         } else if (matches.size() == 1) {
             return matches.get(0);
         }
-        LogUtil.logger.error("LemmaManager::getFromCache -> [%s] is cached multiple times for site_id [%s]".formatted(lemma, page.getSite().getId()));
+        LogUtil.logger.error("LemmaManager::getFromCache -> [%s] is cached multiple times for site_id [%s]".formatted(lemma, site.getId()));
         System.exit(2);
         return null;
     }
 
+    /**
+     * Поля из базы читаются при первом использовании, а не при загрузке класса
+     */
+    private static class Fields {
+        private static final FieldManager fieldManager = new FieldManager();
+    }
 }
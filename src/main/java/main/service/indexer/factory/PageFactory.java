@@ -1,70 +1,162 @@
 package main.service.indexer.factory;
 
-import java.net.URL;
-import java.util.Random;
+import java.io.ByteArrayInputStream;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import main.dao.PageRepository;
 import main.model.Page;
+import main.model.PageVersion;
 import main.model.Site;
-import main.service.indexer.LinkManager;
+import main.service.indexer.ChangeRate;
+import main.service.indexer.FetchResult;
+import main.service.indexer.PageContext;
+import main.service.indexer.PolitenessScheduler;
+import main.service.indexer.UrlCanonicalizer;
+import main.utilities.BeanUtil;
+import main.utilities.CrawlerProperties;
 import main.utilities.LogUtil;
-import org.jsoup.Connection;
-import org.jsoup.Connection.Response;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
 public final class PageFactory {
+  private static final PolitenessScheduler scheduler = BeanUtil.getBean(PolitenessScheduler.class);
+  private static final PageRepository pageRepository = BeanUtil.getBean(PageRepository.class);
+  private static final CrawlerProperties properties = BeanUtil.getBean(CrawlerProperties.class);
+  private static final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(properties);
+  private static final LongAdder unchanged = new LongAdder();
+  /**
+   * Ответ другого типа Fetcher не дочитывает, а обрывает после заголовков
+   */
+  private static final String ACCEPT = "text/html,application/xhtml+xml";
 
   /**
    * Создаёт страницу
    *
    * @param url url адрес страницы
-   * @return созданная страница
+   * @return контекст созданной страницы с разобранным документом
+   */
+  public static PageContext create(String url, Site site) throws Exception {
+    return create(url, site, fetch(url).get());
+  }
+
+  /**
+   * Создаёт страницу из уже загруженного ответа
+   *
+   * @param url      url адрес страницы
+   * @param site     сайт страницы
+   * @param response ответ сервера
+   * @return контекст созданной страницы с разобранным документом, null - если это не text/html
    */
-  public static Page create(String url, Site site) throws Exception {
+  public static PageContext create(String url, Site site, FetchResult response) throws Exception {
     LogUtil.logger.info("PageFactory::create -> start url: [%s]".formatted(url));
-    String path = new URL(url).getPath();
-    Response response = getResponse(url);
-    if (!response.contentType().contains("text/html")) {
+    if (!response.isHtml()) {
       LogUtil.logger.info("PageFactory::create -> url [%s] is declined, because it does not contain text/html".formatted(url));
       return null;
     }
+    String path = canonicalizer.key(url);
     Page page = new Page();
     page.setUrl(path);
     page.setSite(site);
-    Document document = response.parse();
-    page.setCode(response.statusCode());
-    page.setContent(document.outerHtml());
+    page.setGeneration(site.getTargetGeneration());
+    Document document = parse(response);
+    fill(page, response, document);
+    ChangeRate.changed(page, null, properties);
     LogUtil.logger.info("PageFactory::create -> created url: [%s]".formatted(url));
-    return page;
+    return new PageContext(page, document);
   }
 
   /**
-   * Метод получения http ответа на GET запрос
+   * Метод получения http ответа на GET запрос. Запрос ждёт своей очереди у хоста, ответ приходит асинхронно
    *
    * @param url адрес страницы, к которой совершается запрос
-   * @return возвращает ответ сервера
+   * @return будущий ответ сервера
+   */
+  public static CompletableFuture<FetchResult> fetch(String url) {
+    return scheduler.fetch(url, Map.of("Accept", ACCEPT));
+  }
+
+  /**
+   * Создаёт новую версию уже сохранённой страницы из ответа на повторный запрос
+   *
+   * @param url      url адрес страницы
+   * @param site     сайт страницы
+   * @param version  сохранённая версия страницы
+   * @param response ответ на условный запрос
+   * @return контекст новой версии, null - если страница не изменилась (история загрузок при этом
+   * обновляется в базе) или это не text/html
    */
-  private static Response getResponse(String url) throws Exception {
-    Connection connection = Jsoup.connect(url)
-        .userAgent(LinkManager.USER_AGENT)
-        .referrer(LinkManager.REFERRER);
-    Thread.sleep(new Random().nextLong(500, 5000));
-    return connection
-        .ignoreContentType(true)
-        .ignoreHttpErrors(true)
-        .execute();
+  public static PageContext revise(String url, Site site, PageVersion version, FetchResult response) throws Exception {
+    if (response.isNotModified() || response.getContentHash() == version.contentHash()) {
+      LogUtil.logger.info("PageFactory::revise -> [%s] is not modified.".formatted(url));
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+      pageRepository.touch(version.id(), now, ChangeRate.unchanged(version, now, properties),
+          response.getEtag(), response.getLastModified());
+      unchanged.increment();
+      return null;
+    }
+    PageContext context = create(url, site, response);
+    if (context != null) {
+      context.getPage().setId(version.id());
+      ChangeRate.changed(context.getPage(), version, properties);
+    }
+    return context;
+  }
+
+  /**
+   * @return количество повторных загрузок, не заставших изменений
+   */
+  public static long getUnchanged() {
+    return unchanged.sum();
+  }
+
+  /**
+   * Условный GET: если страница не менялась с прошлой загрузки, сервер ответит 304 без тела
+   *
+   * @param url   адрес страницы
+   * @param known сохранённая версия страницы, null - если страница новая
+   * @return будущий ответ сервера
+   */
+  public static CompletableFuture<FetchResult> fetch(String url, PageVersion known) {
+    if (known == null) {
+      return fetch(url);
+    }
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Accept", ACCEPT);
+    if (known.etag() != null) {
+      headers.put("If-None-Match", known.etag());
+    }
+    if (known.lastModified() != null) {
+      headers.put("If-Modified-Since", known.lastModified());
+    }
+    return scheduler.fetch(url, headers);
+  }
+
+  private static void fill(Page page, FetchResult response, Document document) {
+    page.setCode(response.getStatusCode());
+    page.setEtag(response.getEtag());
+    page.setLastModified(response.getLastModified());
+    page.setContentHash(response.getContentHash());
+    page.setFetchTime(new Timestamp(System.currentTimeMillis()));
+  }
+
+  private static Document parse(FetchResult response) throws Exception {
+    return Jsoup.parse(new ByteArrayInputStream(response.getBody()), response.getCharset(),
+        response.getUri().toString());
   }
 
-  public static Page update(Page page) throws Exception {
+  public static PageContext update(Page page) throws Exception {
     LogUtil.logger.info("PageFactory::update -> start page [%s]".formatted(page));
-    Response response = getResponse(page.getSite().getUrl() + page.getUrl());
-    if (!response.contentType().contains("text/html")) {
+    FetchResult response = fetch(page.getSite().getUrl() + page.getUrl()).get();
+    if (!response.isHtml()) {
       LogUtil.logger.info("PageFactory::update -> url [%s] is declined, because it does not contain text/html".formatted(page.getUrl()));
       return null;
     }
-    Document document = response.parse();
-    page.setCode(response.statusCode());
-    page.setContent(document.outerHtml());
+    Document document = parse(response);
+    fill(page, response, document);
     LogUtil.logger.info("PageFactory::update -> updated page [%s]".formatted(page));
-    return page;
+    return new PageContext(page, document);
   }
 }
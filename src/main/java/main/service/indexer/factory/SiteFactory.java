@@ -36,6 +36,26 @@ public class SiteFactory {
     siteRepository.save(site);
   }
 
+  /**
+   * Начинает новое поколение индекса сайта. Поиск продолжает отвечать из прежнего
+   */
+  public static void build(Site site) {
+    int newest = Math.max(site.getGeneration(), site.getBuilding() == null ? 0 : site.getBuilding());
+    site.setBuilding(newest + 1);
+    siteRepository.save(site);
+  }
+
+  /**
+   * Переключает поиск на построенное поколение одной записью строки _site и отмечает сайт проиндексированным
+   */
+  public static void publish(Site site) {
+    if (site.getBuilding() != null) {
+      site.setGeneration(site.getBuilding());
+      site.setBuilding(null);
+    }
+    update(site, Status.INDEXED);
+  }
+
   public static Site create(String s) throws IllegalArgumentException {
     Optional<Site> optionalSite = applicationProperties.getSites().stream()
         .filter(x -> x.getUrl().equals(s))
@@ -0,0 +1,90 @@
+package main.service.searcher;
+
+import main.model.Page;
+import main.model.PageContent;
+import main.model.Site;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сегменты в памяти ({@link DeltaSegment}) поколений сайтов: страница видна поиску сразу после
+ * лемматизации, а не после фиксации её транзакции. Если поиск отвечает из снимка индекса, записанная
+ * страница остаётся в сегменте, пока {@link SnapshotService} не запишет её в следующий сегмент снимка
+ * (через snapshot-delay после записи), иначе уходит сразу после фиксации и дальше её отдаёт база.
+ * <p>
+ * Писатели заменяют сегмент целиком в ConcurrentHashMap.compute, читатели берут текущий сегмент
+ * через get() без блокировок.
+ */
+@Service
+public class DeltaIndex {
+    private final Map<Key, DeltaSegment> segments = new ConcurrentHashMap<>();
+    private final AtomicInteger newPages = new AtomicInteger();
+
+    /**
+     * Добавляет версию страницы до её записи в базу. Более старая версия той же страницы заменяется
+     *
+     * @param ranks леммы страницы и их rank, пустые - если у страницы нет лемм
+     */
+    public void add(Page page, PageContent content, Map<String, Float> ranks) {
+        segments.compute(key(page), (key, segment) -> {
+            DeltaSegment current = segment == null ? DeltaSegment.EMPTY : segment;
+            Integer pageKey = page.getId() != 0 ? Integer.valueOf(page.getId()) : current.findNewKey(page.getUrl());
+            return current.with(pageKey != null ? pageKey : newPages.decrementAndGet(), page, content, ranks);
+        });
+    }
+
+    /**
+     * Вызывается после фиксации транзакции с версией страницы
+     *
+     * @param snapshot поиск отвечает из снимка поколения страницы: она остаётся в сегменте до записи
+     *                 снимком ({@link #flushed}), иначе уходит сразу
+     */
+    public void committed(Page page, boolean snapshot) {
+        segments.computeIfPresent(key(page), (key, segment) -> {
+            Integer pageKey = segment.findKey(page);
+            DeltaSegment result = pageKey == null ? segment
+                    : snapshot ? segment.committed(pageKey, page) : segment.without(pageKey, page);
+            return result.isEmpty() ? null : result;
+        });
+    }
+
+    /**
+     * Вызывается после установки снимка поколения: записанные до него страницы этого и прежних поколений
+     * сайта уже есть в снимке или не нужны поиску
+     */
+    public void flushed(int siteId, int generation) {
+        for (Key key : segments.keySet()) {
+            if (key.siteId() == siteId && key.generation() <= generation) {
+                segments.computeIfPresent(key, (x, segment) -> {
+                    DeltaSegment result = segment.flushed();
+                    return result.isEmpty() ? null : result;
+                });
+            }
+        }
+    }
+
+    /**
+     * @return сегмент поколения, из которого отвечает поиск, если в нём есть страницы
+     */
+    public Optional<DeltaSegment> find(Site site) {
+        return Optional.ofNullable(segments.get(new Key(site.getId(), site.getGeneration())));
+    }
+
+    /**
+     * @return количество страниц во всех сегментах, ещё не записанных в базу или снимок
+     */
+    public int getPages() {
+        return segments.values().stream().mapToInt(DeltaSegment::getPageCount).sum();
+    }
+
+    private static Key key(Page page) {
+        return new Key(page.getSite().getId(), page.getGeneration());
+    }
+
+    private record Key(int siteId, int generation) {
+    }
+}
@@ -0,0 +1,231 @@
+package main.service.searcher;
+
+import main.model.Page;
+import main.model.PageContent;
+import main.model.Site;
+import main.model.Word;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Часть индекса поколения сайта в памяти: страницы, переиндексированные через indexPage, пока
+ * они не попали в снимок индекса. Страница сегмента - надгробие для её вхождений в снимке и базе:
+ * они не учитываются, даже если у новой версии страницы нет ни одной леммы.
+ * <p>
+ * Неизменяем: добавление и удаление страницы дают новый сегмент ({@link DeltaIndex}), поэтому
+ * читатель работает с полученным сегментом и не ждёт писателей. Копирование при записи дёшево,
+ * пока сегмент мал: записанные страницы уходят из него со следующим сегментом снимка.
+ */
+public class DeltaSegment {
+    static final DeltaSegment EMPTY = new DeltaSegment(Map.of(), Map.of());
+    /**
+     * Ключ страницы - её id, у новой страницы до записи - отрицательный временный номер
+     */
+    private final Map<Integer, Entry> pages;
+    private final Map<String, Map<Integer, Float>> postings;
+
+    private DeltaSegment(Map<Integer, Entry> pages, Map<String, Map<Integer, Float>> postings) {
+        this.pages = pages;
+        this.postings = postings;
+    }
+
+    /**
+     * @param key   id страницы или временный номер новой страницы
+     * @param ranks леммы страницы и их rank
+     * @return сегмент, в котором страница заменена новой версией
+     */
+    DeltaSegment with(int key, Page page, PageContent content, Map<String, Float> ranks) {
+        DeltaSegment result = copy();
+        result.remove(key);
+        result.put(key, new Entry(page, page.getUrl(), content, Map.copyOf(ranks), false));
+        return result;
+    }
+
+    /**
+     * Отмечает версию страницы записанной в базу. Новая страница получает ключ по своему id,
+     * если под ним нет более новой версии, иначе уходит из сегмента
+     *
+     * @return сегмент с отмеченной страницей; этот же сегмент, если такой версии в нём нет
+     */
+    DeltaSegment committed(int key, Page page) {
+        Entry entry = pages.get(key);
+        if (entry == null || entry.page() != page) {
+            return this;
+        }
+        DeltaSegment result = copy();
+        result.remove(key);
+        if (key == page.getId() || !result.pages.containsKey(page.getId())) {
+            result.put(page.getId(), new Entry(page, entry.path(), entry.content(), entry.ranks(), true));
+        }
+        return result;
+    }
+
+    /**
+     * @return сегмент без записанных страниц: они уже есть в снимке индекса
+     */
+    DeltaSegment flushed() {
+        DeltaSegment result = copy();
+        pages.forEach((key, entry) -> {
+            if (entry.committed()) {
+                result.remove(key);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @param page версия страницы, которую нужно удалить: более новая версия остаётся
+     * @return сегмент без страницы; этот же сегмент, если такой версии в нём нет
+     */
+    DeltaSegment without(int key, Page page) {
+        Entry entry = pages.get(key);
+        if (entry == null || entry.page() != page) {
+            return this;
+        }
+        DeltaSegment result = copy();
+        result.remove(key);
+        return result;
+    }
+
+    private DeltaSegment copy() {
+        return new DeltaSegment(new HashMap<>(pages), new HashMap<>(postings));
+    }
+
+    /**
+     * Добавляет страницу в копию, копируя затронутые списки вхождений
+     */
+    private void put(int key, Entry entry) {
+        entry.ranks().forEach((lemma, rank) -> {
+            Map<Integer, Float> list = postings.get(lemma);
+            list = list == null ? new HashMap<>() : new HashMap<>(list);
+            list.put(key, rank);
+            postings.put(lemma, list);
+        });
+        pages.put(key, entry);
+    }
+
+    /**
+     * Удаляет страницу из копии, копируя затронутые списки вхождений
+     */
+    private void remove(int key) {
+        Entry entry = pages.remove(key);
+        if (entry == null) {
+            return;
+        }
+        for (String lemma : entry.ranks().keySet()) {
+            Map<Integer, Float> list = new HashMap<>(postings.get(lemma));
+            list.remove(key);
+            if (list.isEmpty()) {
+                postings.remove(lemma);
+            } else {
+                postings.put(lemma, list);
+            }
+        }
+    }
+
+    /**
+     * @return ключ страницы с этой версией, null - если её нет
+     */
+    Integer findKey(Page page) {
+        for (Map.Entry<Integer, Entry> entry : pages.entrySet()) {
+            if (entry.getValue().page() == page) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return ключ новой страницы с этим путём, null - если её нет
+     */
+    Integer findNewKey(String path) {
+        for (Map.Entry<Integer, Entry> entry : pages.entrySet()) {
+            if (entry.getKey() < 0 && entry.getValue().path().equals(path)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return pages.isEmpty();
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return есть ли страница в сегменте: её вхождения в снимке и базе устарели
+     */
+    public boolean contains(int pageId) {
+        return pages.containsKey(pageId);
+    }
+
+    /**
+     * @return сущность Word леммы, которой нет в снимке и базе, не связанная с сессией: id - 0,
+     * частота - количество страниц сегмента с леммой
+     */
+    public Optional<Word> findWord(String lemma, Site site) {
+        Map<Integer, Float> list = postings.get(lemma);
+        if (list == null) {
+            return Optional.empty();
+        }
+        Word word = new Word();
+        word.setName(lemma);
+        word.setFrequency(list.size());
+        word.setGeneration(site.getGeneration());
+        word.setSite(site);
+        return Optional.of(word);
+    }
+
+    /**
+     * Накладывает сегмент на релевантность страниц из снимка или базы: убирает страницы сегмента
+     * и добавляет его страницы, содержащие все леммы
+     *
+     * @param relevance id страницы -> абсолютная релевантность, изменяется
+     * @param lemmas    леммы запроса, от редких к частым
+     */
+    public void overlay(Map<Integer, Float> relevance, List<String> lemmas) {
+        relevance.keySet().removeIf(pages::containsKey);
+        Map<Integer, Float> first = postings.getOrDefault(lemmas.get(0), Collections.emptyMap());
+        for (Map.Entry<Integer, Float> posting : first.entrySet()) {
+            Map<String, Float> ranks = pages.get(posting.getKey()).ranks();
+            if (ranks.keySet().containsAll(lemmas)) {
+                float sum = 0;
+                for (String lemma : lemmas) {
+                    sum += ranks.get(lemma);
+                }
+                relevance.put(posting.getKey(), sum);
+            }
+        }
+    }
+
+    /**
+     * @return путь страницы, null - если её нет в сегменте
+     */
+    public String findPath(int pageId) {
+        Entry entry = pages.get(pageId);
+        return entry == null ? null : entry.path();
+    }
+
+    /**
+     * @return HTML новой версии страницы, null - если её нет в сегменте
+     */
+    public String findHtml(int pageId) {
+        Entry entry = pages.get(pageId);
+        return entry == null ? null : entry.content().getHtml();
+    }
+
+    /**
+     * Страница сегмента: версия, по которой она отмечается записанной, путь, содержимое, rank лемм
+     * и записана ли эта версия в базу
+     */
+    private record Entry(Page page, String path, PageContent content, Map<String, Float> ranks,
+                         boolean committed) {
+    }
+}
@@ -0,0 +1,488 @@
+package main.service.searcher;
+
+import main.model.Posting;
+import main.model.Word;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Неизменяемый сегмент индекса поколения сайта: словарь лемм, сжатые списки вхождений и пути страниц
+ * в одном файле, отображённом в память. Вхождения декодируются прямо из отображения ({@link Postings}),
+ * без копирования в кучу, читатели не блокируются.
+ * <p>
+ * Формат (версия 2), числа - big-endian, смещения - int от начала файла:
+ * <pre>
+ * заголовок   MAGIC, VERSION, id сайта, поколение, число лемм, число страниц, смещения словаря,
+ *             строк лемм, страниц, путей и окончания
+ * вхождения   по каждой лемме в порядке словаря: таблица пропусков - по каждому блоку последний id
+ *             страницы и смещение блока, - затем блоки по BLOCK вхождений. Вхождение - разница id
+ *             страницы с предыдущим (varint, для первого в блоке - с последним id прошлого блока)
+ *             и rank (float)
+ * словарь     по возрастанию UTF-8 байтов леммы: смещение и длина строки, id леммы, frequency,
+ *             количество вхождений, смещение таблицы пропусков
+ * строки      UTF-8 байты лемм
+ * страницы    по возрастанию id: id, смещение и длина пути
+ * пути        UTF-8 байты путей
+ * окончание   CRC32 всего, что до него (long), MAGIC
+ * </pre>
+ * Страницы сегмента заменяют вхождения тех же страниц в более старых сегментах ({@link IndexSnapshot}),
+ * даже если у страницы больше нет ни одной леммы. Смещения - int, поэтому сегмент меньше 2 Гб.
+ */
+public class IndexSegment {
+    /**
+     * Вхождений в блоке
+     */
+    static final int BLOCK = 128;
+    private static final int MAGIC = 0x4C534E50;
+    private static final int VERSION = 2;
+    private static final int HEADER = 48;
+    private static final int TRAILER = Long.BYTES + Integer.BYTES;
+    private static final int SKIP_ENTRY = 8;
+    private static final int DICTIONARY_ENTRY = 24;
+    private static final int PAGE_ENTRY = 12;
+    private static final Comparator<byte[]> UTF8_ORDER = Arrays::compareUnsigned;
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int siteId;
+    private final int generation;
+    private final int lemmaCount;
+    private final int pageCount;
+    private final int dictionaryOffset;
+    private final int termsOffset;
+    private final int pagesOffset;
+    private final int pathsOffset;
+
+    private IndexSegment(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an index segment.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported index segment version " + buffer.getInt(4) + ".");
+        }
+        siteId = buffer.getInt(8);
+        generation = buffer.getInt(12);
+        lemmaCount = buffer.getInt(16);
+        pageCount = buffer.getInt(20);
+        dictionaryOffset = buffer.getInt(24);
+        termsOffset = buffer.getInt(28);
+        pagesOffset = buffer.getInt(32);
+        pathsOffset = buffer.getInt(36);
+        int end = buffer.getInt(40);
+        if (end + TRAILER != buffer.capacity() || buffer.getInt(end + Long.BYTES) != MAGIC) {
+            throw new IOException("Index segment is truncated.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, end));
+        if (crc.getValue() != buffer.getLong(end)) {
+            throw new IOException("Index segment checksum mismatch.");
+        }
+    }
+
+    /**
+     * Отображает сегмент в память и проверяет версию и контрольную сумму
+     *
+     * @throws IOException если файл не сегмент, другой версии или повреждён
+     */
+    public static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER + TRAILER || size > Integer.MAX_VALUE) {
+                throw new IOException("Index segment has invalid size " + size + ".");
+            }
+            return new IndexSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Записывает сегмент
+     *
+     * @param words    леммы сегмента
+     * @param postings вхождения леммы, в любом порядке
+     * @param paths    id страницы -> путь; все страницы сегмента, в том числе без вхождений
+     */
+    public static void write(Path file, int siteId, int generation, List<Word> words,
+                             Function<Word, List<Posting>> postings, Map<Integer, String> paths) throws IOException {
+        Map<byte[], Word> byTerm = new TreeMap<>(UTF8_ORDER);
+        for (Word word : words) {
+            byTerm.put(word.getName().getBytes(StandardCharsets.UTF_8), word);
+        }
+        List<byte[]> terms = new ArrayList<>(byTerm.keySet());
+        List<Word> sorted = new ArrayList<>(byTerm.values());
+        int[] postingOffsets = new int[sorted.size()];
+        int[] postingCounts = new int[sorted.size()];
+        Map<Integer, String> pages = new TreeMap<>(paths);
+        int[] header = new int[HEADER / Integer.BYTES];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.write(new byte[HEADER]);
+            for (int i = 0; i < sorted.size(); i++) {
+                List<Posting> list = new ArrayList<>(postings.apply(sorted.get(i)));
+                list.sort(Comparator.comparingInt(Posting::pageId));
+                postingOffsets[i] = offset(out);
+                postingCounts[i] = list.size();
+                writePostings(out, list);
+            }
+            header[6] = offset(out);
+            int termOffset = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                Word word = sorted.get(i);
+                out.writeInt(termOffset);
+                out.writeInt(terms.get(i).length);
+                out.writeInt(word.getId());
+                out.writeInt(word.getFrequency());
+                out.writeInt(postingCounts[i]);
+                out.writeInt(postingOffsets[i]);
+                termOffset += terms.get(i).length;
+            }
+            header[7] = offset(out);
+            for (byte[] term : terms) {
+                out.write(term);
+            }
+            header[8] = offset(out);
+            List<byte[]> pathBytes = new ArrayList<>(pages.size());
+            int pathOffset = 0;
+            for (Map.Entry<Integer, String> page : pages.entrySet()) {
+                byte[] path = page.getValue().getBytes(StandardCharsets.UTF_8);
+                pathBytes.add(path);
+                out.writeInt(page.getKey());
+                out.writeInt(pathOffset);
+                out.writeInt(path.length);
+                pathOffset += path.length;
+            }
+            header[9] = offset(out);
+            for (byte[] path : pathBytes) {
+                out.write(path);
+            }
+            header[10] = offset(out);
+        }
+        header[0] = MAGIC;
+        header[1] = VERSION;
+        header[2] = siteId;
+        header[3] = generation;
+        header[4] = sorted.size();
+        header[5] = pages.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER);
+            head.asIntBuffer().put(header);
+            channel.write(head, 0);
+            CRC32 crc = new CRC32();
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, header[10]));
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER).putLong(crc.getValue()).putInt(MAGIC).flip();
+            channel.write(trailer, header[10]);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Таблица пропусков и блоки вхождений одной леммы. Размер блоков заранее неизвестен,
+     * поэтому они собираются в памяти, а таблица пишется перед ними
+     */
+    private static void writePostings(DataOutputStream out, List<Posting> postings) throws IOException {
+        int blocks = (postings.size() + BLOCK - 1) / BLOCK;
+        int start = offset(out) + blocks * SKIP_ENTRY;
+        ByteBuffer data = ByteBuffer.allocate(Math.min(postings.size(), BLOCK) * (5 + Float.BYTES));
+        List<byte[]> encoded = new ArrayList<>(blocks);
+        int previous = 0;
+        for (int block = 0; block < blocks; block++) {
+            data.clear();
+            int to = Math.min(postings.size(), (block + 1) * BLOCK);
+            for (int i = block * BLOCK; i < to; i++) {
+                Posting posting = postings.get(i);
+                int delta = posting.pageId() - previous;
+                while ((delta & ~0x7F) != 0) {
+                    data.put((byte) (delta & 0x7F | 0x80));
+                    delta >>>= 7;
+                }
+                data.put((byte) delta);
+                data.putFloat(posting.rank());
+                previous = posting.pageId();
+            }
+            out.writeInt(previous);
+            out.writeInt(start);
+            byte[] bytes = Arrays.copyOf(data.array(), data.position());
+            encoded.add(bytes);
+            start += bytes.length;
+        }
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @return текущая длина записанного; DataOutputStream перестаёт считать на Integer.MAX_VALUE
+     */
+    private static int offset(DataOutputStream out) throws IOException {
+        if (out.size() > Integer.MAX_VALUE - TRAILER - 1) {
+            throw new IOException("Index segment exceeds 2 GB.");
+        }
+        return out.size();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSiteId() {
+        return siteId;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int getLemmaCount() {
+        return lemmaCount;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return размер файла, байт
+     */
+    public long getSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Ищет лемму в словаре
+     *
+     * @return номер леммы в словаре, -1 - если её нет
+     */
+    public int find(String lemma) {
+        byte[] key = lemma.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = entry(middle);
+            int compared = compare(termsOffset + buffer.getInt(entry), buffer.getInt(entry + 4), key);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param term номер леммы в словаре
+     */
+    public String getLemma(int term) {
+        int entry = entry(term);
+        byte[] bytes = new byte[buffer.getInt(entry + 4)];
+        buffer.get(termsOffset + buffer.getInt(entry), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getLemmaId(int term) {
+        return buffer.getInt(entry(term) + 8);
+    }
+
+    public int getFrequency(int term) {
+        return buffer.getInt(entry(term) + 12);
+    }
+
+    /**
+     * @return курсор по вхождениям леммы в порядке возрастания id страницы
+     */
+    public Postings postings(int term) {
+        int entry = entry(term);
+        return new Postings(buffer.getInt(entry + 20), buffer.getInt(entry + 16));
+    }
+
+    /**
+     * @return есть ли страница в сегменте
+     */
+    public boolean contains(int pageId) {
+        return findPage(pageId) >= 0;
+    }
+
+    /**
+     * @return путь страницы, null - если страницы нет в сегменте
+     */
+    public String findPath(int pageId) {
+        int page = findPage(pageId);
+        return page < 0 ? null : getPath(page);
+    }
+
+    /**
+     * @param page номер страницы в сегменте
+     */
+    public int getPageId(int page) {
+        return buffer.getInt(pagesOffset + page * PAGE_ENTRY);
+    }
+
+    /**
+     * @param page номер страницы в сегменте
+     */
+    public String getPath(int page) {
+        int entry = pagesOffset + page * PAGE_ENTRY;
+        byte[] path = new byte[buffer.getInt(entry + 8)];
+        buffer.get(pathsOffset + buffer.getInt(entry + 4), path);
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    private int findPage(int pageId) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = getPageId(middle);
+            if (id < pageId) {
+                low = middle + 1;
+            } else if (id > pageId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int entry(int term) {
+        return dictionaryOffset + term * DICTIONARY_ENTRY;
+    }
+
+    /**
+     * Сравнение строки словаря с ключом по UTF-8 байтам, без декодирования
+     */
+    private int compare(int offset, int length, byte[] key) {
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int compared = Byte.compareUnsigned(buffer.get(offset + i), key[i]);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * Курсор по вхождениям одной леммы. Читает отображённую память напрямую; advance() пропускает
+     * целые блоки по таблице пропусков, не декодируя их
+     */
+    public class Postings {
+        public static final int NO_MORE = Integer.MAX_VALUE;
+        private final int skip;
+        private final int count;
+        private final int blocks;
+        private int block = -1;
+        private int remaining;
+        private int position;
+        private int page = -1;
+        private float rank;
+
+        private Postings(int skip, int count) {
+            this.skip = skip;
+            this.count = count;
+            blocks = (count + BLOCK - 1) / BLOCK;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return id текущей страницы, -1 - до первого вызова nextPage(), NO_MORE - после последнего вхождения
+         */
+        public int getPage() {
+            return page;
+        }
+
+        public float getRank() {
+            return rank;
+        }
+
+        /**
+         * @return id следующей страницы, NO_MORE - если вхождения кончились
+         */
+        public int nextPage() {
+            if (remaining == 0) {
+                if (block + 1 >= blocks) {
+                    block = blocks;
+                    return page = NO_MORE;
+                }
+                enter(block + 1);
+            }
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            page += delta;
+            rank = buffer.getFloat(position);
+            position += Float.BYTES;
+            remaining--;
+            return page;
+        }
+
+        /**
+         * @return id первой страницы не меньше target, NO_MORE - если такой нет
+         */
+        public int advance(int target) {
+            if (page >= target) {
+                return page;
+            }
+            if (block < 0 || lastPage(block) < target) {
+                int low = Math.max(block + 1, 0);
+                int high = blocks - 1;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (lastPage(middle) < target) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                if (low >= blocks || lastPage(low) < target) {
+                    block = blocks;
+                    remaining = 0;
+                    return page = NO_MORE;
+                }
+                enter(low);
+                nextPage();
+            }
+            while (page < target) {
+                nextPage();
+            }
+            return page;
+        }
+
+        private void enter(int next) {
+            block = next;
+            position = buffer.getInt(skip + block * SKIP_ENTRY + Integer.BYTES);
+            remaining = block < blocks - 1 ? BLOCK : count - BLOCK * (blocks - 1);
+            page = block == 0 ? 0 : lastPage(block - 1);
+        }
+
+        private int lastPage(int block) {
+            return buffer.getInt(skip + block * SKIP_ENTRY);
+        }
+    }
+}
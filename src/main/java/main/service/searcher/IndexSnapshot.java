@@ -0,0 +1,133 @@
+package main.service.searcher;
+
+import main.model.Site;
+import main.model.Word;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Индекс поколения сайта для поиска: сегменты ({@link IndexSegment}) от старых к новым. Страница
+ * берётся из самого нового сегмента, в котором она есть: её вхождения в более старых сегментах
+ * не учитываются. Неизменяем: новый сегмент или слияние дают новый снимок.
+ */
+public class IndexSnapshot {
+    private final int generation;
+    private final List<IndexSegment> segments;
+
+    public IndexSnapshot(int generation, List<IndexSegment> segments) {
+        this.generation = generation;
+        this.segments = List.copyOf(segments);
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return сегменты от старых к новым
+     */
+    public List<IndexSegment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return суммарный размер сегментов, байт
+     */
+    public long getSize() {
+        return segments.stream().mapToLong(IndexSegment::getSize).sum();
+    }
+
+    /**
+     * Ищет лемму в словарях сегментов, начиная с нового: в нём частота свежее
+     *
+     * @return сущность Word с id, частотой и поколением из снимка, не связанная с сессией
+     */
+    public Optional<Word> findWord(String lemma, Site site) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            IndexSegment segment = segments.get(i);
+            int term = segment.find(lemma);
+            if (term >= 0) {
+                Word word = new Word();
+                word.setId(segment.getLemmaId(term));
+                word.setName(lemma);
+                word.setFrequency(segment.getFrequency(term));
+                word.setGeneration(generation);
+                word.setSite(site);
+                return Optional.of(word);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Страницы, содержащие все леммы, и их абсолютная релевантность - сумма rank лемм. В каждом
+     * сегменте курсор самой редкой леммы задаёт кандидатов, остальные курсоры догоняют его через advance()
+     *
+     * @param lemmas леммы от редких к частым
+     * @return id страницы -> абсолютная релевантность
+     */
+    public Map<Integer, Float> match(List<String> lemmas) {
+        Map<Integer, Float> relevance = new HashMap<>();
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            IndexSegment.Postings[] cursors = new IndexSegment.Postings[lemmas.size()];
+            boolean missing = false;
+            for (int i = 0; i < cursors.length && !missing; i++) {
+                int term = segment.find(lemmas.get(i));
+                missing = term < 0;
+                cursors[i] = missing ? null : segment.postings(term);
+            }
+            if (missing) {
+                continue;
+            }
+            int page = cursors[0].nextPage();
+            while (page != IndexSegment.Postings.NO_MORE) {
+                int next = page;
+                for (int i = 1; i < cursors.length && next == page; i++) {
+                    next = cursors[i].advance(page);
+                }
+                if (next != page) {
+                    page = cursors[0].advance(next);
+                    continue;
+                }
+                if (!isReplaced(page, s)) {
+                    float sum = 0;
+                    for (IndexSegment.Postings cursor : cursors) {
+                        sum += cursor.getRank();
+                    }
+                    relevance.put(page, sum);
+                }
+                page = cursors[0].nextPage();
+            }
+        }
+        return relevance;
+    }
+
+    /**
+     * @return путь страницы из самого нового сегмента с ней, null - если её нет
+     */
+    public String findPath(int pageId) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            String path = segments.get(i).findPath(pageId);
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return есть ли страница в сегменте новее segment
+     */
+    boolean isReplaced(int pageId, int segment) {
+        for (int i = segment + 1; i < segments.size(); i++) {
+            if (segments.get(i).contains(pageId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
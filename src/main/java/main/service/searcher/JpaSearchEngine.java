@@ -0,0 +1,185 @@
+package main.service.searcher;
+
+import main.dao.IndexRepository;
+import main.dao.PageContentRepository;
+import main.dao.PageRepository;
+import main.dao.WordRepository;
+import main.model.PageContent;
+import main.model.Posting;
+import main.model.Site;
+import main.model.Word;
+import main.service.indexer.IndexStatistics;
+import main.utilities.WordCounter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Поиск по индексу в таблицах _lemma и _index: из снимков индекса ({@link SnapshotService}), если они
+ * загружены, иначе из базы, с наложенными страницами из памяти ({@link DeltaIndex}).
+ * Находит все страницы запроса, поэтому количество найденных точное
+ */
+@Service
+@ConditionalOnProperty(prefix = "crawler", name = "search-engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaSearchEngine implements SearchEngine {
+
+    private static final int MAX_OCCURRENCE_PERCENT = 90;
+    private final PageRepository pageRepository;
+    private final WordRepository wordRepository;
+    private final IndexRepository indexRepository;
+    private final PageContentRepository pageContentRepository;
+    private final IndexStatistics indexStatistics;
+    private final SnapshotService snapshotService;
+    private final DeltaIndex deltaIndex;
+
+    public JpaSearchEngine(PageRepository pageRepository,
+                           WordRepository wordRepository,
+                           IndexRepository indexRepository,
+                           PageContentRepository pageContentRepository,
+                           IndexStatistics indexStatistics,
+                           SnapshotService snapshotService,
+                           DeltaIndex deltaIndex) {
+        this.pageRepository = pageRepository;
+        this.wordRepository = wordRepository;
+        this.indexRepository = indexRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.indexStatistics = indexStatistics;
+        this.snapshotService = snapshotService;
+        this.deltaIndex = deltaIndex;
+    }
+
+    /**
+     * Ищет страницы сайта, не загружая их
+     */
+    @Override
+    public Result search(String query, Site site, int limit) {
+        Set<String> lemmas = WordCounter.getStats(query).keySet();
+        // сегмент в памяти берётся первым: страница уходит из него только после записи в базу
+        Optional<DeltaSegment> delta = deltaIndex.find(site);
+        List<Word> words = mapToWords(lemmas, site, delta);
+        if (words.isEmpty()) {
+            return Result.EMPTY;
+        }
+        Map<Integer, Float> relevance = mapToPages(words);
+        delta.ifPresent(segment -> segment.overlay(relevance, words.stream().map(Word::getName).toList()));
+        if (relevance.isEmpty()) {
+            return Result.EMPTY;
+        }
+        List<Hit> hits = setRelativeRelevance(site, words, relevance);
+        return new Result(hits.subList(0, Math.min(Math.max(limit, 0), hits.size())), hits.size());
+    }
+
+    /**
+     * Пути берутся из сегмента в памяти или снимка индекса, если страница в них есть, иначе из базы
+     */
+    @Override
+    public Map<Integer, String> findPaths(List<Hit> hits) {
+        Map<Integer, String> paths = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Hit hit : hits) {
+            String path = deltaIndex.find(hit.site()).map(x -> x.findPath(hit.pageId()))
+                    .or(() -> snapshotService.find(hit.site()).map(x -> x.findPath(hit.pageId())))
+                    .orElse(null);
+            if (path == null) {
+                missing.add(hit.pageId());
+            } else {
+                paths.put(hit.pageId(), path);
+            }
+        }
+        if (!missing.isEmpty()) {
+            pageRepository.findAllById(missing).forEach(page -> paths.put(page.getId(), page.getUrl()));
+        }
+        return paths;
+    }
+
+    @Override
+    public String findHtml(Hit hit) {
+        return deltaIndex.find(hit.site()).map(x -> x.findHtml(hit.pageId()))
+                .or(() -> pageContentRepository.findById(hit.pageId()).map(PageContent::getHtml))
+                .orElse("");
+    }
+
+    /**
+     * Переводит абсолютную релевантность страниц в относительную: делит на наибольшую
+     *
+     * @param relevance id страницы -> абсолютная релевантность
+     * @return найденные страницы по убыванию релевантности
+     */
+    private List<Hit> setRelativeRelevance(Site site, List<Word> words, Map<Integer, Float> relevance) {
+        float maxRelevance = relevance.values().stream().max(Float::compareTo).orElseThrow();
+        List<String> lemmas = words.stream().map(Word::getName).toList();
+        return relevance.entrySet().stream()
+                .map(x -> new Hit(site, lemmas, x.getKey(), x.getValue() / maxRelevance))
+                .sorted(Hit.ORDER)
+                .toList();
+    }
+
+    /**
+     * Собирает страницы, содержащие все леммы, и их абсолютную релевантность - сумму rank лемм.
+     * Из снимка индекса списки вхождений пересекаются с пропуском блоков ({@link IndexSnapshot#match}),
+     * из базы читаются только пары (id страницы, rank), сами страницы не загружаются
+     *
+     * @param words сущности Word, от редких к частым
+     * @return id страницы -> абсолютная релевантность
+     */
+    private Map<Integer, Float> mapToPages(List<Word> words) {
+        Optional<IndexSnapshot> snapshot = snapshotService.find(words.get(0).getSite());
+        if (snapshot.isPresent()) {
+            return snapshot.get().match(words.stream().map(Word::getName).toList());
+        }
+        Map<Integer, Float> relevance = new HashMap<>();
+        if (words.stream().anyMatch(word -> word.getId() == 0)) {
+            // лемма пока есть только в сегменте в памяти
+            return relevance;
+        }
+        for (Posting posting : indexRepository.findPostingsByWord(words.get(0))) {
+            relevance.merge(posting.pageId(), posting.rank(), Float::sum);
+        }
+        for (Word word : words.subList(1, words.size())) {
+            if (relevance.isEmpty()) {
+                break;
+            }
+            Map<Integer, Float> matched = new HashMap<>();
+            for (Posting posting : indexRepository.findPostingsByWord(word)) {
+                Float sum = relevance.get(posting.pageId());
+                if (sum != null) {
+                    matched.put(posting.pageId(), sum + posting.rank());
+                }
+            }
+            relevance = matched;
+        }
+        return relevance;
+    }
+
+    /**
+     * Получает совпадающие леммы из снимка индекса или базы данных, а леммы, которых там ещё нет, -
+     * из сегмента в памяти
+     *
+     * @param lemmas набор слов
+     * @return список сущностей Word из таблицы _lemma
+     */
+    private List<Word> mapToWords(Set<String> lemmas, Site site, Optional<DeltaSegment> delta) {
+        List<Word> words = new ArrayList<>();
+        long pagesCount = indexStatistics.getPages(site);
+        Optional<IndexSnapshot> snapshot = snapshotService.find(site);
+        for (String lemma : lemmas) {
+            Optional<Word> optional = snapshot.isPresent()
+                    ? snapshot.get().findWord(lemma, site)
+                    : wordRepository.findByNameAndSiteAndGeneration(lemma, site, site.getGeneration());
+            if (optional.isEmpty() && delta.isPresent()) {
+                optional = delta.get().findWord(lemma, site);
+            }
+            if (optional.isEmpty()) {
+                return Collections.emptyList();
+            }
+            Word word = optional.get();
+            float percent = word.getFrequency() / (float) pagesCount * 100;
+            if (pagesCount < 3 || percent < MAX_OCCURRENCE_PERCENT) {
+                words.add(word);
+            }
+        }
+        words.sort(Comparator.comparingInt(Word::getFrequency));
+        return words;
+    }
+}
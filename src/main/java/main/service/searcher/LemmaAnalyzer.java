@@ -0,0 +1,60 @@
+package main.service.searcher;
+
+import main.utilities.LemmaCache;
+import main.utilities.WordCounter;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+
+/**
+ * Анализатор Lucene на той же лемматизации, что и индекс в базе: слова выделяются
+ * {@link WordCounter#selectWords}, приводятся к начальной форме через {@link LemmaCache}, служебные
+ * части речи и неизвестные слова пропускаются. Токен - лемма, омонимы через "|", как в _lemma
+ */
+public class LemmaAnalyzer extends Analyzer {
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        return new TokenStreamComponents(new LemmaTokenizer());
+    }
+
+    private static class LemmaTokenizer extends Tokenizer {
+        private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+        private Iterator<String> words;
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            clearAttributes();
+            if (words == null) {
+                words = WordCounter.selectWords(read(input)).iterator();
+            }
+            while (words.hasNext()) {
+                String lemma = LemmaCache.lemmatize(words.next());
+                if (lemma != null) {
+                    term.setEmpty().append(lemma);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            words = null;
+        }
+
+        private static String read(Reader reader) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+                sb.append(buffer, 0, n);
+            }
+            return sb.toString();
+        }
+    }
+}
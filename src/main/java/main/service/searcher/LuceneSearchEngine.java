@@ -0,0 +1,378 @@
+package main.service.searcher;
+
+import main.dao.FieldRepository;
+import main.dao.PageContentRepository;
+import main.dao.PageRepository;
+import main.dao.SiteRepository;
+import main.model.Field;
+import main.model.Page;
+import main.model.PageContent;
+import main.model.PageVersion;
+import main.model.Site;
+import main.utilities.CrawlerProperties;
+import main.utilities.LogUtil;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.MMapDirectory;
+import org.jsoup.Jsoup;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Поиск по встроенному индексу Lucene: каталог data-dir/lucene/site-{id}/{поколение} на поколение сайта,
+ * отображённый в память (MMapDirectory).
+ * <p>
+ * Pipeline после фиксации транзакции передаёт текст полей из _field, {@link LemmaAnalyzer} разбирает его
+ * на леммы. Запрос - все леммы обязательны, каждая ищется во всех полях с весом поля (BM25). Lucene
+ * отбирает лучшие limit страниц с пропуском блоков, которые не могут в них попасть (block-max WAND),
+ * поэтому количество найденных точное только до тысячи, дальше - нижняя граница.
+ * <p>
+ * Новые страницы видны поиску после записи пачки, на диск индекс фиксируется раз в checkpoint-interval,
+ * после переключения поколения и при остановке. Если при запуске в индексе поколения не столько страниц,
+ * сколько в базе, он перестраивается из _page_content.
+ */
+@Service
+@ConditionalOnProperty(prefix = "crawler", name = "search-engine", havingValue = "lucene")
+public class LuceneSearchEngine implements SearchEngine {
+    private static final String PAGE = "_page";
+    private static final int BATCH_SIZE = 100;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final FieldRepository fieldRepository;
+    private final CrawlerProperties properties;
+    private final Path directory;
+    private final Analyzer analyzer = new LemmaAnalyzer();
+    private final Map<Key, Generation> generations = new ConcurrentHashMap<>();
+    private volatile List<Field> fields = List.of();
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("lucene-commit-"));
+
+    public LuceneSearchEngine(SiteRepository siteRepository,
+                              PageRepository pageRepository,
+                              PageContentRepository pageContentRepository,
+                              FieldRepository fieldRepository,
+                              CrawlerProperties properties) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.fieldRepository = fieldRepository;
+        this.properties = properties;
+        directory = Path.of(properties.getDataDir(), "lucene");
+    }
+
+    /**
+     * Открывает индексы поколений, из которых отвечает поиск, и перестраивает отставшие
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        fields = fieldRepository.findAll();
+        for (Site site : siteRepository.findAll()) {
+            if (site.getGeneration() == 0) {
+                continue;
+            }
+            try {
+                int pages = pageRepository.findVersionsBySite(site, site.getGeneration()).size();
+                if (open(site.getId(), site.getGeneration()).writer.getDocStats().numDocs != pages) {
+                    rebuild(site.getId());
+                }
+            } catch (Exception e) {
+                LogUtil.logger.error("LuceneSearchEngine::load -> [%s] failed.".formatted(site.getUrl()), e);
+            }
+        }
+        long interval = properties.getCheckpointInterval().toMillis();
+        executor.scheduleWithFixedDelay(this::commit, interval, interval, TimeUnit.MILLISECONDS);
+        LogUtil.logger.info("LuceneSearchEngine::load -> %d indexes ready in %d ms.".formatted(generations.size(),
+                System.currentTimeMillis() - start));
+    }
+
+    @Override
+    public Result search(String query, Site site, int limit) {
+        List<String> lemmas = analyze(query);
+        if (lemmas.isEmpty()) {
+            return Result.EMPTY;
+        }
+        BooleanQuery.Builder all = new BooleanQuery.Builder();
+        for (String lemma : lemmas) {
+            BooleanQuery.Builder any = new BooleanQuery.Builder();
+            for (Field field : fields) {
+                any.add(new BoostQuery(new TermQuery(new Term(field.getName(), lemma)), field.getWeight()),
+                        BooleanClause.Occur.SHOULD);
+            }
+            all.add(any.build(), BooleanClause.Occur.MUST);
+        }
+        SearcherManager searchers = open(site.getId(), site.getGeneration()).searchers;
+        try {
+            IndexSearcher searcher = searchers.acquire();
+            try {
+                TopDocs top = searcher.search(all.build(), Math.max(limit, 1));
+                List<Hit> hits = new ArrayList<>();
+                StoredFields stored = searcher.storedFields();
+                for (ScoreDoc doc : top.scoreDocs) {
+                    if (hits.size() == limit) {
+                        break;
+                    }
+                    int pageId = Integer.parseInt(stored.document(doc.doc, Set.of(PAGE)).get(PAGE));
+                    hits.add(new Hit(site, lemmas, pageId, doc.score / top.scoreDocs[0].score));
+                }
+                return new Result(hits, top.totalHits.value);
+            } finally {
+                searchers.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Map<Integer, String> findPaths(List<Hit> hits) {
+        Map<Integer, String> paths = new HashMap<>();
+        pageRepository.findAllById(hits.stream().map(Hit::pageId).toList())
+                .forEach(page -> paths.put(page.getId(), page.getUrl()));
+        return paths;
+    }
+
+    @Override
+    public String findHtml(Hit hit) {
+        return pageContentRepository.findById(hit.pageId()).map(PageContent::getHtml).orElse("");
+    }
+
+    @Override
+    public boolean isTextIndexed() {
+        return true;
+    }
+
+    /**
+     * Заменяет документ страницы. Ошибка индекса не останавливает запись в базу: отставший индекс
+     * перестроится при следующем запуске
+     */
+    @Override
+    public void index(Page page, Map<String, String> fields) {
+        try {
+            open(page.getSite().getId(), page.getGeneration()).writer
+                    .updateDocument(new Term(PAGE, String.valueOf(page.getId())), document(page.getId(), fields));
+        } catch (IOException | AlreadyClosedException e) {
+            LogUtil.logger.error("LuceneSearchEngine::index -> [%s] is not indexed.".formatted(page), e);
+        }
+    }
+
+    @Override
+    public void refresh() {
+        for (Generation generation : generations.values()) {
+            try {
+                generation.searchers.maybeRefresh();
+            } catch (IOException | AlreadyClosedException e) {
+                LogUtil.logger.error("LuceneSearchEngine::refresh -> failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Фиксирует индекс нового поколения и удаляет индексы поколений, из которых поиск уже не отвечает
+     */
+    @Override
+    public void publish(Site site) {
+        try {
+            Generation generation = open(site.getId(), site.getGeneration());
+            generation.writer.commit();
+            generation.searchers.maybeRefresh();
+            Path siteDirectory = directory(site.getId());
+            List<String> keep = Stream.of(site.getGeneration(), site.getBuilding())
+                    .filter(x -> x != null).map(String::valueOf).toList();
+            generations.entrySet().removeIf(entry -> {
+                if (entry.getKey().siteId() != site.getId() || keep.contains(String.valueOf(entry.getKey().generation()))) {
+                    return false;
+                }
+                entry.getValue().close();
+                return true;
+            });
+            try (Stream<Path> files = Files.list(siteDirectory)) {
+                for (Path old : files.filter(x -> !keep.contains(x.getFileName().toString())).toList()) {
+                    delete(old);
+                }
+            }
+        } catch (IOException e) {
+            LogUtil.logger.error("LuceneSearchEngine::publish -> [%s] failed.".formatted(site.getUrl()), e);
+        }
+    }
+
+    /**
+     * Перестраивает индекс поколения, из которого отвечает поиск, из страниц в базе
+     *
+     * @return true - если индекс перестроен
+     */
+    boolean rebuild(int siteId) {
+        Optional<Site> found = siteRepository.findById(siteId);
+        if (found.isEmpty() || found.get().getGeneration() == 0) {
+            return false;
+        }
+        Site site = found.get();
+        long start = System.currentTimeMillis();
+        fields = fieldRepository.findAll();
+        try {
+            Generation generation = open(siteId, site.getGeneration());
+            generation.writer.deleteAll();
+            List<Integer> ids = pageRepository.findVersionsBySite(site, site.getGeneration()).stream()
+                    .map(PageVersion::id).toList();
+            for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE));
+                Map<Integer, String> html = new HashMap<>();
+                pageContentRepository.findAllById(batch).forEach(content -> html.put(content.getPageId(), content.getHtml()));
+                for (int id : batch) {
+                    org.jsoup.nodes.Document document = Jsoup.parse(html.getOrDefault(id, ""));
+                    Map<String, String> texts = new HashMap<>();
+                    fields.forEach(field -> texts.put(field.getName(), document.select(field.getSelector()).text()));
+                    generation.writer.addDocument(document(id, texts));
+                }
+            }
+            generation.writer.commit();
+            generation.searchers.maybeRefresh();
+            LogUtil.logger.info("LuceneSearchEngine::rebuild -> [%s] generation %d, %d pages in %d ms.".formatted(
+                    site.getUrl(), site.getGeneration(), ids.size(), System.currentTimeMillis() - start));
+            return true;
+        } catch (Exception e) {
+            LogUtil.logger.error("LuceneSearchEngine::rebuild -> [%s] failed.".formatted(site.getUrl()), e);
+            return false;
+        }
+    }
+
+    /**
+     * @return леммы запроса без повторов, в порядке появления
+     */
+    private List<String> analyze(String query) {
+        List<String> lemmas = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream("", query)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                String lemma = term.toString();
+                if (!lemmas.contains(lemma)) {
+                    lemmas.add(lemma);
+                }
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lemmas;
+    }
+
+    private static Document document(int pageId, Map<String, String> fields) {
+        Document document = new Document();
+        document.add(new StringField(PAGE, String.valueOf(pageId), org.apache.lucene.document.Field.Store.YES));
+        fields.forEach((name, text) -> document.add(new TextField(name, text, org.apache.lucene.document.Field.Store.NO)));
+        return document;
+    }
+
+    private Generation open(int siteId, int generation) {
+        return generations.computeIfAbsent(new Key(siteId, generation), key -> {
+            try {
+                return new Generation(directory(siteId).resolve(String.valueOf(generation)), analyzer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path directory(int siteId) {
+        return directory.resolve("site-" + siteId);
+    }
+
+    private void commit() {
+        for (Generation generation : generations.values()) {
+            try {
+                if (generation.writer.hasUncommittedChanges()) {
+                    generation.writer.commit();
+                }
+            } catch (IOException | AlreadyClosedException e) {
+                LogUtil.logger.error("LuceneSearchEngine::commit -> failed.", e);
+            }
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        commit();
+        generations.values().forEach(Generation::close);
+        generations.clear();
+    }
+
+    private record Key(int siteId, int generation) {
+    }
+
+    /**
+     * Индекс поколения сайта: запись и поиск по последнему обновлению
+     */
+    private static class Generation implements Closeable {
+        private final MMapDirectory directory;
+        private final IndexWriter writer;
+        private final SearcherManager searchers;
+
+        private Generation(Path path, Analyzer analyzer) throws IOException {
+            Files.createDirectories(path);
+            directory = new MMapDirectory(path);
+            writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+            searchers = new SearcherManager(writer, null);
+        }
+
+        @Override
+        public void close() {
+            try {
+                searchers.close();
+                writer.close();
+                directory.close();
+            } catch (IOException e) {
+                LogUtil.logger.error("LuceneSearchEngine::close -> [%s] failed.".formatted(directory.getDirectory()), e);
+            }
+        }
+    }
+}
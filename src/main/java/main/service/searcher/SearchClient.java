@@ -3,207 +3,75 @@ package main.service.searcher;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import main.dao.IndexRepository;
-import main.dao.PageRepository;
 import main.dao.SiteRepository;
-import main.dao.WordRepository;
 import main.model.*;
-import main.model.Site.Status;
-import main.utilities.Lexeme;
+import main.service.searcher.SearchEngine.Hit;
+import main.service.searcher.SearchEngine.Result;
 import main.utilities.LogUtil;
-import main.utilities.WordCounter;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Service
 public class SearchClient {
 
-    private static final int MAX_OCCURRENCE_PERCENT = 90;
-    private static final Pattern WORD_PATTERN = Pattern.compile("[a-zA-Zа-яА-Я]+-?[a-zA-Zа-яА-Я]+");
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final WordRepository wordRepository;
-    private final IndexRepository indexRepository;
+    private final SearchEngine searchEngine;
 
-    public SearchClient(SiteRepository siteRepository,
-                        PageRepository pageRepository,
-                        WordRepository wordRepository,
-                        IndexRepository indexRepository) {
+    public SearchClient(SiteRepository siteRepository, SearchEngine searchEngine) {
         this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.wordRepository = wordRepository;
-        this.indexRepository = indexRepository;
-        ;
+        this.searchEngine = searchEngine;
     }
 
     /**
-     * Выделяет подходящее слово из текста
+     * Отображает найденные страницы на результаты поиска. Пути и содержимое страниц загружаются
+     * только здесь, поэтому вызывается для страниц, попавших в запрошенное окно
      *
-     * @param text содеражимое страницы
-     * @param word слово, для поиска
-     * @return индекс начала и конца слова в тексте
+     * @param hits найденные страницы с относительной релевантностью
+     * @return результаты поиска в порядке hits, без страниц, которые уже исчезли
      */
-    private int[] getSnippet(String text, String word) {
-        String token = word;
-        if (text.contains(token)) {
-            int i = text.indexOf(word);
-            int j = i + word.length();
-            return new int[]{i, j};
-        }
-        String content = text;
-        if (token.contains("|")) {
-            token = token.split("\\|")[0];
-        }
-        token = token.substring(0, token.length() / 2);
-        while (true) {
-            int i = content.indexOf(token);
-            if (i == -1) {
-                LogUtil.logger.error("Something went wrong while parsing snippet.");
-                System.exit(2);
-            }
-            int j = content.substring(i).indexOf(" ") + i;
-            String other = content.substring(i, j);
-            Matcher matcher = WORD_PATTERN.matcher(other);
-            matcher.find();
-            other = matcher.group();
-            Lexeme lexeme = new Lexeme(other, WordCounter.russianMorph);
-            if (word.equals(lexeme.getWord())) {
-                return new int[]{i, j};
-            }
-            content = content.substring(j);
-        }
-
-    }
-
-    /**
-     * Отображает наборы слов и страниц на результат поиска.
-     *
-     * @param words набор слов запроса
-     * @param pages набор подходящих страниц
-     * @return набор результатов поиска
-     */
-    private List<MatchedPage> mapToMatchedPages(List<Word> words, Set<Page> pages) {
-        List<MatchedPage> resultList = pages.parallelStream()
-                .map(x -> createMatchedPage(words, x))
-                .collect(Collectors.toList());
-        setRelativeRelevance(resultList);
-        resultList.sort(Comparator.comparingDouble(MatchedPage::getRelevance).reversed());
-        return resultList;
-    }
-
-    /**
-     * Устанавливает относительную релевантность каждого результата поиска. Для этого требуется
-     * определить наиболее релевантный результат
-     *
-     * @param resultList все результаты поиска
-     */
-    private void setRelativeRelevance(List<MatchedPage> resultList) {
-        float maxRelevance = resultList.parallelStream()
-                .map(MatchedPage::getRelevance)
-                .max(Float::compareTo).orElseThrow();
-        resultList.parallelStream()
-                .forEach(x -> x.setRelevance(x.getRelevance() / maxRelevance));
+    private List<MatchedPage> mapToMatchedPages(List<Hit> hits) {
+        Map<Integer, String> paths = searchEngine.findPaths(hits);
+        return hits.parallelStream()
+                .filter(hit -> paths.containsKey(hit.pageId()))
+                .map(hit -> createMatchedPage(hit, paths.get(hit.pageId())))
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     /**
-     * Создает результат поиска с абсолютной релевантностью
+     * Создает результат поиска: заголовок и сниппет из содержимого страницы
      *
-     * @param words список слов запроса
-     * @param page  совпадающая страница
-     * @return результат поиска
+     * @param hit  найденная страница
+     * @param path путь страницы
+     * @return результат поиска, null - если содержимого страницы уже нет: её запись из сегмента в памяти
+     * или снимка могла смениться между поиском и загрузкой
      */
-    private MatchedPage createMatchedPage(List<Word> words, Page page) {
+    private MatchedPage createMatchedPage(Hit hit, String path) {
+        String html = searchEngine.findHtml(hit);
+        if (html.isEmpty()) {
+            return null;
+        }
         MatchedPage matchedPage = new MatchedPage();
-        matchedPage.setSite(page.getSite().getUrl());
-        matchedPage.setSiteName(page.getSite().getName());
-        matchedPage.setUrl(page.getUrl());
-        Element element = Jsoup.parse(page.getContent()).selectFirst("title");
+        matchedPage.setSite(hit.site().getUrl());
+        matchedPage.setSiteName(hit.site().getName());
+        matchedPage.setUrl(path);
+        matchedPage.setRelevance(hit.relevance());
+        Document document = Jsoup.parse(html);
+        Element element = document.selectFirst("title");
         String title = Objects.nonNull(element) ? element.text() : "";
         matchedPage.setTitle(title);
-        String content = Jsoup.parse(page.getContent()).text().toLowerCase();
-        StringJoiner snippet = new StringJoiner("...", " ... ", "...");
-        words.stream()
-                .map(word -> {
-                    float rank = indexRepository.findByPageAndWord(page, word).getRank();
-                    matchedPage.setRelevance(matchedPage.getRelevance() + rank);
-                    return word.getName();
-                })
-                .forEach(x -> {
-                    // выделение фрагментов
-                    int[] wordIndices = getSnippet(content, x);
-                    if (snippet.toString().contains(content.substring(wordIndices[0], wordIndices[1]))) {
-                        return;
-                    }
-                    int snippetStart = Math.max(wordIndices[0] - 20, 0);
-                    int snippetEnd = Math.min(wordIndices[1] + 20, content.length());
-                    snippet.add(content.substring(snippetStart, snippetEnd));
-                });
-        matchedPage.setSnippet(snippet.toString());
+        String content = document.text().toLowerCase();
+        matchedPage.setSnippet(SnippetExtractor.extract(content, hit.lemmas()));
         return matchedPage;
     }
 
-    /**
-     * Собирает страницы, подходящие по набору лемм
-     *
-     * @param words сущности Word
-     * @return страницы, содержащие все леммы
-     */
-    private Set<Page> mapToPages(List<Word> words) {
-        HashSet<Index> indexSet = new HashSet<>();
-        for (Word word : words) {
-            List<Index> matchingIndices = indexRepository.findByWord(word);
-            if (indexSet.isEmpty()) {
-                indexSet.addAll(matchingIndices);
-            }
-            else {
-                indexSet.retainAll(matchingIndices);
-            }
-        }
-        return indexSet.parallelStream().map(Index::getPage).collect(Collectors.toSet());
-    }
-
-    /**
-     * Получает совпадающие леммы из базы данных
-     *
-     * @param lemmas набор слов
-     * @return список сущностей Word из таблицы _lemma
-     */
-    private List<Word> mapToWords(Set<String> lemmas, Site site) {
-        List<Word> words = new ArrayList<>();
-        long pagesCount = pageRepository.countBySiteId(site);
-        for (String lemma : lemmas) {
-            Optional<Word> optional = wordRepository.findByNameAndSite(lemma, site);
-            if (optional.isEmpty()) {
-                return Collections.emptyList();
-            }
-            Word word = optional.get();
-            float percent = word.getFrequency() / (float) pagesCount * 100;
-            if (pagesCount < 3 || percent < MAX_OCCURRENCE_PERCENT) {
-                words.add(word);
-            }
-        }
-        words.sort(Comparator.comparingInt(Word::getFrequency));
-        return words;
-    }
-
     public List<MatchedPage> search(String searchQuery, Site site) {
-        Set<String> lemmas = WordCounter.getStats(searchQuery).keySet();
-        List<Word> words = mapToWords(lemmas, site);
-        if (words.isEmpty()) {
-            return Collections.emptyList();
-        }
-        Set<Page> pages = mapToPages(words);
-        if (pages.isEmpty()) {
-            return Collections.emptyList();
-        }
-        return mapToMatchedPages(words, pages);
+        return mapToMatchedPages(searchEngine.search(searchQuery, site, Integer.MAX_VALUE).hits());
     }
 
     public ResponseEntity<?> search(String searchQuery, String site, int offset, int limit) {
@@ -217,22 +85,25 @@ public class SearchClient {
                         "error", "Такой сайт не содержится в индексе."));
             }
         }
-        if (!sites.stream().allMatch(x -> x.getStatus().equals(Status.INDEXED))) {
+        // пока сайт переиндексируется, поиск отвечает из прежнего поколения его индекса
+        sites.removeIf(x -> x.getGeneration() == 0);
+        if (sites.isEmpty()) {
             return ResponseEntity.status(409).body(Map.of("result", false,
                     "error", "Не все сайты проиндексированы."));
         }
-        List<MatchedPage> searchResults = new ArrayList<>();
+        // окно целиком может прийтись на один сайт, поэтому от каждого нужны первые offset + limit страниц
+        int window = (int) Math.min((long) Math.max(offset, 0) + Math.max(limit, 0), Integer.MAX_VALUE);
+        List<Hit> hits = new ArrayList<>();
+        long count = 0;
         for (Site s : sites) {
-            List<MatchedPage> siteMatches = search(searchQuery, s);
-            searchResults.addAll(siteMatches);
+            Result result = searchEngine.search(searchQuery, s, window);
+            hits.addAll(result.hits());
+            count += result.count();
         }
-        int count = searchResults.size();
-        if (count > offset) {
-            searchResults = searchResults.subList(offset, count);
-        }
-        searchResults = searchResults.stream()
-                .limit(limit)
-                .toList();
+        hits.sort(Hit.ORDER);
+        int from = Math.min(Math.max(offset, 0), hits.size());
+        int to = (int) Math.min((long) from + Math.max(limit, 0), hits.size());
+        List<MatchedPage> searchResults = mapToMatchedPages(hits.subList(from, to));
         ObjectMapper mapper = new ObjectMapper();
         ObjectNode root = mapper.createObjectNode();
         root.put("result", true);
@@ -0,0 +1,80 @@
+package main.service.searcher;
+
+import main.model.Page;
+import main.model.Site;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Движок поиска за {@link SearchClient}: находит страницы сайта и отдаёт их пути и содержимое.
+ * Выбирается настройкой crawler.search-engine: jpa - индекс в таблицах _lemma и _index
+ * ({@link JpaSearchEngine}), lucene - встроенный индекс Lucene ({@link LuceneSearchEngine}).
+ * <p>
+ * Pipeline сообщает движку записанные страницы: движок, которому нужен текст полей, получает его
+ * после фиксации транзакции.
+ */
+public interface SearchEngine {
+
+    /**
+     * Ищет страницы сайта, содержащие все леммы запроса
+     *
+     * @param limit сколько лучших страниц нужно; остальные движок может не возвращать
+     * @return лучшие страницы по убыванию относительной релевантности и количество найденных
+     */
+    Result search(String query, Site site, int limit);
+
+    /**
+     * @return id страницы -> путь; страниц, которых уже нет, в ответе нет
+     */
+    Map<Integer, String> findPaths(List<Hit> hits);
+
+    /**
+     * @return HTML страницы для заголовка и сниппета, пустая строка - если его нет
+     */
+    String findHtml(Hit hit);
+
+    /**
+     * @return нужен ли движку текст полей записанных страниц ({@link #index})
+     */
+    default boolean isTextIndexed() {
+        return false;
+    }
+
+    /**
+     * Вызывается в потоке записи после фиксации транзакции со страницей
+     *
+     * @param fields имя поля из _field -> текст, пустое - если страница отклонена по коду ответа
+     */
+    default void index(Page page, Map<String, String> fields) {
+    }
+
+    /**
+     * Вызывается после записи пачки страниц: они должны стать видны поиску
+     */
+    default void refresh() {
+    }
+
+    /**
+     * Вызывается после переключения сайта на новое поколение
+     */
+    default void publish(Site site) {
+    }
+
+    /**
+     * Найденная страница до загрузки: сайт, леммы запроса для сниппета, id страницы и относительная релевантность
+     */
+    record Hit(Site site, List<String> lemmas, int pageId, float relevance) {
+        public static final Comparator<Hit> ORDER = Comparator.comparingDouble(Hit::relevance).reversed()
+                .thenComparingInt(Hit::pageId);
+    }
+
+    /**
+     * @param hits  лучшие страницы по убыванию релевантности
+     * @param count количество найденных страниц; больше hits, если движок вернул не все
+     */
+    record Result(List<Hit> hits, long count) {
+        public static final Result EMPTY = new Result(List.of(), 0);
+    }
+}
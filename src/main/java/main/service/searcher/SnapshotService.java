@@ -0,0 +1,590 @@
+package main.service.searcher;
+
+import main.dao.IndexRepository;
+import main.dao.PageRepository;
+import main.dao.SiteRepository;
+import main.dao.WordRepository;
+import main.model.LemmaPosting;
+import main.model.PageVersion;
+import main.model.Posting;
+import main.model.Site;
+import main.model.Word;
+import main.utilities.CrawlerProperties;
+import main.utilities.LogUtil;
+import main.utilities.WordCounter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Снимки индекса ({@link IndexSnapshot}) поколений сайтов, из которых отвечает поиск. Сегменты снимка
+ * лежат в data-dir/snapshots/site-{id}, их список - в файле manifest того же каталога.
+ * <p>
+ * При запуске сегменты отображаются в память и прогревается морфология. Это делается в обработчике
+ * ApplicationReadyEvent, поэтому Spring переводит приложение в ReadinessState.ACCEPTING_TRAFFIC
+ * только после загрузки. После переключения на новое поколение оно пишется одним сегментом.
+ * <p>
+ * Запись страниц в поколение снимка сначала удаляет manifest, и поиск идёт по базе. Через snapshot-delay
+ * изменившиеся страницы пишутся новым небольшим сегментом, и поиск возвращается к снимку. Подряд идущие
+ * сегменты одного размерного яруса сливаются по MERGE_FACTOR штук.
+ * <p>
+ * Страницы из indexPage поиск уже видит из сегмента в памяти ({@link DeltaIndex}), поэтому их запись
+ * не переводит поиск на базу. Сегмент снимка с ними убирает их из сегмента в памяти.
+ */
+@Service
+public class SnapshotService {
+    private static final String WARM_UP = "Прогрев морфологии: проверка словарей warm up dictionaries";
+    private static final String MANIFEST = "manifest";
+    private static final String SEGMENT = ".segment";
+    /**
+     * Столько подряд идущих сегментов одного яруса сливаются в один. Ярус - порядок размера сегмента
+     * по основанию MERGE_FACTOR, считая от TIER_FLOOR
+     */
+    static final int MERGE_FACTOR = 10;
+    private static final long TIER_FLOOR = 1 << 20;
+    /**
+     * Сегменты, слияние которых больше, не сливаются: смещения в сегменте - int
+     */
+    private static final long MAX_MERGED_SIZE = 1L << 30;
+    private static final int PAGE_BATCH = 1000;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final WordRepository wordRepository;
+    private final IndexRepository indexRepository;
+    private final CrawlerProperties properties;
+    private final DeltaIndex deltaIndex;
+    private final Path directory;
+    /**
+     * Последний снимок сайта; пока сайт в dirty, поиск его не использует
+     */
+    private final Map<Integer, IndexSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    /**
+     * Сайты, снимок которых отстаёт от базы; их manifest удалён
+     */
+    private final Set<Integer> outdated = ConcurrentHashMap.newKeySet();
+    /**
+     * Страницы, записанные в поколение снимка после его записи
+     */
+    private final Map<Integer, Set<Integer>> changedPages = new ConcurrentHashMap<>();
+    /**
+     * Записи в поколения сайтов, под блокировкой this: снимок, во время записи которого они были, устарел
+     */
+    private final Map<Key, Activity> activities = new HashMap<>();
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("index-snapshot-"));
+
+    public SnapshotService(SiteRepository siteRepository,
+                           PageRepository pageRepository,
+                           WordRepository wordRepository,
+                           IndexRepository indexRepository,
+                           CrawlerProperties properties,
+                           DeltaIndex deltaIndex) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.wordRepository = wordRepository;
+        this.indexRepository = indexRepository;
+        this.properties = properties;
+        this.deltaIndex = deltaIndex;
+        directory = Path.of(properties.getDataDir(), "snapshots");
+    }
+
+    /**
+     * Отображает сохранённые снимки и прогревает морфологию. Снимки, которых нет или которые
+     * не совпадают с поколением сайта, пишутся в фоне
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        if (properties.isSnapshot()) {
+            for (Site site : siteRepository.findAll()) {
+                if (site.getGeneration() == 0) {
+                    continue;
+                }
+                try {
+                    IndexSnapshot snapshot = read(site);
+                    if (snapshot != null) {
+                        snapshots.put(site.getId(), snapshot);
+                        cleanup(site.getId(), snapshot);
+                    } else {
+                        schedule(site.getId(), 0);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LogUtil.logger.warn("SnapshotService::load -> [%s] %s".formatted(site.getUrl(), e.getMessage()));
+                    schedule(site.getId(), 0);
+                }
+            }
+        }
+        WordCounter.getStats(WARM_UP);
+        LogUtil.logger.info("SnapshotService::load -> %d snapshots, %d segments, %d MB, ready in %d ms.".formatted(
+                getCount(), getSegments(), getSize() / (1024 * 1024), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @return снимок сайта из manifest, null - если manifest нет или снимок другого поколения
+     */
+    private IndexSnapshot read(Site site) throws IOException {
+        Path manifest = directory(site.getId()).resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return null;
+        }
+        Properties values = new Properties();
+        try (Reader reader = Files.newBufferedReader(manifest)) {
+            values.load(reader);
+        }
+        if (Integer.parseInt(values.getProperty("generation", "0")) != site.getGeneration()) {
+            return null;
+        }
+        List<IndexSegment> segments = new ArrayList<>();
+        for (String name : values.getProperty("segments", "").split(",")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            IndexSegment segment = IndexSegment.open(manifest.resolveSibling(name));
+            if (segment.getSiteId() != site.getId() || segment.getGeneration() != site.getGeneration()) {
+                return null;
+            }
+            sequence.accumulateAndGet(number(name) + 1, Math::max);
+            segments.add(segment);
+        }
+        return segments.isEmpty() ? null : new IndexSnapshot(site.getGeneration(), segments);
+    }
+
+    /**
+     * @return снимок поколения, из которого отвечает поиск, если он загружен и не устарел
+     */
+    public Optional<IndexSnapshot> find(Site site) {
+        IndexSnapshot snapshot = snapshots.get(site.getId());
+        return snapshot != null && snapshot.getGeneration() == site.getGeneration() && !dirty.contains(site.getId())
+                ? Optional.of(snapshot)
+                : Optional.empty();
+    }
+
+    /**
+     * @return поиск отвечает из снимка этого поколения сайта
+     */
+    public boolean isUsed(int siteId, int generation) {
+        IndexSnapshot snapshot = snapshots.get(siteId);
+        return snapshot != null && snapshot.getGeneration() == generation && !dirty.contains(siteId);
+    }
+
+    /**
+     * Ставит запись снимка сайта в очередь, например после переключения на новое поколение
+     */
+    public void schedule(Site site) {
+        schedule(site.getId(), 0);
+    }
+
+    /**
+     * Вызывается до записи страницы в поколение сайта. Снимок этого поколения устаревает, а его manifest
+     * удаляется, чтобы после падения процесса не загрузить устаревший снимок
+     *
+     * @param overlaid страница уже видна поиску из сегмента в памяти: поиск остаётся на снимке
+     */
+    public void invalidate(int siteId, int generation, boolean overlaid) {
+        if (!properties.isSnapshot()) {
+            return;
+        }
+        boolean stale;
+        synchronized (this) {
+            Activity activity = activities.computeIfAbsent(new Key(siteId, generation), key -> new Activity());
+            activity.version++;
+            activity.inFlight++;
+            IndexSnapshot snapshot = snapshots.get(siteId);
+            stale = snapshot != null && snapshot.getGeneration() == generation;
+            if (stale && !overlaid) {
+                dirty.add(siteId);
+            }
+            if (stale && outdated.add(siteId)) {
+                try {
+                    Files.deleteIfExists(directory(siteId).resolve(MANIFEST));
+                } catch (IOException e) {
+                    LogUtil.logger.error("SnapshotService::invalidate -> [%d] manifest is not deleted.".formatted(siteId), e);
+                }
+            }
+        }
+        if (stale) {
+            schedule(siteId, properties.getSnapshotDelay().toMillis());
+        }
+    }
+
+    /**
+     * Вызывается после фиксации транзакции со страницей, перед записью которой вызывался {@link #invalidate}
+     */
+    public void committed(int siteId, int generation, int pageId) {
+        if (!properties.isSnapshot()) {
+            return;
+        }
+        synchronized (this) {
+            Activity activity = activities.computeIfAbsent(new Key(siteId, generation), key -> new Activity());
+            activity.version++;
+            activity.inFlight--;
+            IndexSnapshot snapshot = snapshots.get(siteId);
+            if (snapshot != null && snapshot.getGeneration() == generation) {
+                changedPages.computeIfAbsent(siteId, key -> ConcurrentHashMap.newKeySet()).add(pageId);
+            }
+        }
+    }
+
+    private void schedule(int siteId, long delay) {
+        if (properties.isSnapshot() && pending.add(siteId)) {
+            executor.schedule(() -> {
+                pending.remove(siteId);
+                refresh(siteId);
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Приводит снимок сайта в соответствие с базой: пишет поколение целиком, если снимка этого поколения нет,
+     * или сегмент изменившихся страниц, затем сливает сегменты. Если во время записи в поколение
+     * записывались страницы, сегмент выбрасывается и запись повторяется позже
+     *
+     * @return true - если снимок актуален
+     */
+    boolean refresh(int siteId) {
+        Optional<Site> found = siteRepository.findById(siteId);
+        if (found.isEmpty() || found.get().getGeneration() == 0) {
+            return false;
+        }
+        Site site = found.get();
+        try {
+            IndexSnapshot snapshot = snapshots.get(siteId);
+            boolean current;
+            if (snapshot == null || snapshot.getGeneration() != site.getGeneration()) {
+                current = writeAll(site);
+            } else if (outdated.contains(siteId)) {
+                current = writeChanges(site, snapshot);
+            } else {
+                current = true;
+            }
+            if (current) {
+                merge(site);
+            }
+            return current;
+        } catch (Exception e) {
+            LogUtil.logger.error("SnapshotService::refresh -> [%s] failed.".formatted(site.getUrl()), e);
+            return false;
+        }
+    }
+
+    /**
+     * Пишет поколение сайта одним сегментом
+     */
+    private boolean writeAll(Site site) throws IOException {
+        long start = System.currentTimeMillis();
+        long version = version(site);
+        Map<Integer, String> paths = pageRepository.findVersionsBySite(site, site.getGeneration()).stream()
+                .collect(Collectors.toMap(PageVersion::id, PageVersion::url));
+        IndexSegment segment = write(site, wordRepository.findBySiteAndGeneration(site, site.getGeneration()),
+                indexRepository::findPostingsByWord, paths);
+        if (!install(site, version, new IndexSnapshot(site.getGeneration(), List.of(segment)), segment)) {
+            return false;
+        }
+        LogUtil.logger.info("SnapshotService::writeAll -> [%s] generation %d, %d lemmas, %d pages in %d ms."
+                .formatted(site.getUrl(), site.getGeneration(), segment.getLemmaCount(), segment.getPageCount(),
+                        System.currentTimeMillis() - start));
+        return true;
+    }
+
+    /**
+     * Пишет сегмент страниц, изменившихся после записи снимка: он заменяет их вхождения в прежних сегментах
+     */
+    private boolean writeChanges(Site site, IndexSnapshot snapshot) throws IOException {
+        long start = System.currentTimeMillis();
+        long version = version(site);
+        List<Integer> ids = new ArrayList<>(changedPages.getOrDefault(site.getId(), Set.of()));
+        if (ids.isEmpty()) {
+            return install(site, version, snapshot, null);
+        }
+        Map<String, Word> words = new HashMap<>();
+        Map<Integer, List<Posting>> postings = new HashMap<>();
+        Map<Integer, String> paths = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += PAGE_BATCH) {
+            List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + PAGE_BATCH));
+            for (LemmaPosting posting : indexRepository.findLemmaPostingsByPageIds(batch)) {
+                words.computeIfAbsent(posting.lemma(), lemma -> word(posting.lemmaId(), lemma, posting.frequency()));
+                postings.computeIfAbsent(posting.lemmaId(), id -> new ArrayList<>())
+                        .add(new Posting(posting.pageId(), posting.rank()));
+            }
+            pageRepository.findVersionsByIds(batch).forEach(page -> paths.put(page.id(), page.url()));
+        }
+        // страница, которой уже нет в базе, всё равно заменяет свои вхождения в прежних сегментах
+        ids.forEach(id -> paths.putIfAbsent(id, ""));
+        IndexSegment segment = write(site, new ArrayList<>(words.values()),
+                word -> postings.getOrDefault(word.getId(), List.of()), paths);
+        List<IndexSegment> segments = new ArrayList<>(snapshot.getSegments());
+        segments.add(segment);
+        if (!install(site, version, new IndexSnapshot(site.getGeneration(), segments), segment)) {
+            return false;
+        }
+        LogUtil.logger.info("SnapshotService::writeChanges -> [%s] %d pages, %d lemmas in %d ms.".formatted(
+                site.getUrl(), segment.getPageCount(), segment.getLemmaCount(), System.currentTimeMillis() - start));
+        return true;
+    }
+
+    /**
+     * Сливает подряд идущие сегменты одного яруса, пока такие есть
+     */
+    private void merge(Site site) throws IOException {
+        int[] run;
+        while ((run = findMerge(snapshots.get(site.getId()).getSegments())) != null) {
+            long start = System.currentTimeMillis();
+            IndexSnapshot snapshot = snapshots.get(site.getId());
+            List<IndexSegment> segments = snapshot.getSegments();
+            IndexSegment merged = merge(site, segments.subList(run[0], run[1]));
+            List<IndexSegment> result = new ArrayList<>(segments.subList(0, run[0]));
+            result.add(merged);
+            result.addAll(segments.subList(run[1], segments.size()));
+            IndexSnapshot next = new IndexSnapshot(snapshot.getGeneration(), result);
+            synchronized (this) {
+                if (snapshots.get(site.getId()) != snapshot) {
+                    // снимок сменился, пока шло слияние: новый сегмент не нужен
+                    Files.deleteIfExists(merged.getFile());
+                    return;
+                }
+                snapshots.put(site.getId(), next);
+                if (!outdated.contains(site.getId())) {
+                    writeManifest(site.getId(), next);
+                }
+            }
+            cleanup(site.getId(), next);
+            LogUtil.logger.info("SnapshotService::merge -> [%s] %d segments into %d KB in %d ms.".formatted(
+                    site.getUrl(), run[1] - run[0], merged.getSize() / 1024, System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Ищет MERGE_FACTOR подряд идущих сегментов одного яруса, слияние которых не больше MAX_MERGED_SIZE
+     *
+     * @return [начало, конец) слияния, null - если сливать нечего
+     */
+    static int[] findMerge(List<IndexSegment> segments) {
+        int from = 0;
+        while (from + MERGE_FACTOR <= segments.size()) {
+            int tier = tier(segments.get(from).getSize());
+            int to = from;
+            long size = 0;
+            while (to < segments.size() && to - from < MERGE_FACTOR && tier(segments.get(to).getSize()) == tier
+                    && size + segments.get(to).getSize() <= MAX_MERGED_SIZE) {
+                size += segments.get(to).getSize();
+                to++;
+            }
+            if (to - from == MERGE_FACTOR) {
+                return new int[]{from, to};
+            }
+            from++;
+        }
+        return null;
+    }
+
+    static int tier(long size) {
+        return (int) (Math.log((double) Math.max(size, TIER_FLOOR) / TIER_FLOOR) / Math.log(MERGE_FACTOR));
+    }
+
+    /**
+     * Сливает сегменты, отбрасывая вхождения страниц, которые есть в более новом из них.
+     * Id леммы, frequency и пути берутся из самого нового сегмента
+     *
+     * @param run сегменты от старых к новым
+     */
+    private IndexSegment merge(Site site, List<IndexSegment> run) throws IOException {
+        Map<String, Word> words = new HashMap<>();
+        Map<Integer, String> paths = new HashMap<>();
+        for (IndexSegment segment : run) {
+            for (int term = 0; term < segment.getLemmaCount(); term++) {
+                String lemma = segment.getLemma(term);
+                words.put(lemma, word(segment.getLemmaId(term), lemma, segment.getFrequency(term)));
+            }
+            for (int page = 0; page < segment.getPageCount(); page++) {
+                paths.put(segment.getPageId(page), segment.getPath(page));
+            }
+        }
+        IndexSnapshot view = new IndexSnapshot(site.getGeneration(), run);
+        return write(site, new ArrayList<>(words.values()), word -> {
+            List<Posting> postings = new ArrayList<>();
+            for (int s = 0; s < run.size(); s++) {
+                int term = run.get(s).find(word.getName());
+                if (term < 0) {
+                    continue;
+                }
+                IndexSegment.Postings cursor = run.get(s).postings(term);
+                for (int page = cursor.nextPage(); page != IndexSegment.Postings.NO_MORE; page = cursor.nextPage()) {
+                    if (!view.isReplaced(page, s)) {
+                        postings.add(new Posting(page, cursor.getRank()));
+                    }
+                }
+            }
+            return postings;
+        }, paths);
+    }
+
+    /**
+     * Пишет сегмент во временный файл, переименовывает его в {поколение}-{номер}.segment и отображает
+     */
+    private IndexSegment write(Site site, List<Word> words, Function<Word, List<Posting>> postings,
+                               Map<Integer, String> paths) throws IOException {
+        Path directory = directory(site.getId());
+        Files.createDirectories(directory);
+        Path file = directory.resolve(site.getGeneration() + "-" + sequence.getAndIncrement() + SEGMENT);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            IndexSegment.write(temporary, site.getId(), site.getGeneration(), words, postings, paths);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return IndexSegment.open(file);
+    }
+
+    /**
+     * Устанавливает снимок и пишет его manifest, если пока он писался, в поколение ничего не записывалось
+     *
+     * @param written новый сегмент снимка; удаляется, если снимок не установлен
+     */
+    private boolean install(Site site, long version, IndexSnapshot snapshot, IndexSegment written)
+            throws IOException {
+        boolean installed;
+        synchronized (this) {
+            Activity activity = activities.get(new Key(site.getId(), site.getGeneration()));
+            installed = activity == null || activity.version == version && activity.inFlight == 0;
+            if (installed) {
+                snapshots.put(site.getId(), snapshot);
+                dirty.remove(site.getId());
+                outdated.remove(site.getId());
+                changedPages.remove(site.getId());
+                writeManifest(site.getId(), snapshot);
+                // под той же блокировкой: страница, запись которой начнётся позже, останется в сегменте в памяти
+                deltaIndex.flushed(site.getId(), site.getGeneration());
+                activities.keySet().removeIf(key -> key.siteId() == site.getId()
+                        && key.generation() < site.getGeneration());
+            }
+        }
+        if (!installed) {
+            if (written != null) {
+                Files.deleteIfExists(written.getFile());
+            }
+            schedule(site.getId(), properties.getSnapshotDelay().toMillis());
+            return false;
+        }
+        cleanup(site.getId(), snapshot);
+        return true;
+    }
+
+    private void writeManifest(int siteId, IndexSnapshot snapshot) throws IOException {
+        Properties values = new Properties();
+        values.setProperty("generation", String.valueOf(snapshot.getGeneration()));
+        values.setProperty("segments", snapshot.getSegments().stream()
+                .map(segment -> segment.getFile().getFileName().toString())
+                .collect(Collectors.joining(",")));
+        Path manifest = directory(siteId).resolve(MANIFEST);
+        Path temporary = manifest.resolveSibling(MANIFEST + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary)) {
+            values.store(writer, null);
+        }
+        Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Удаляет файлы сегментов, которых нет в снимке. Читатели прежнего снимка дочитывают отображение
+     */
+    private void cleanup(int siteId, IndexSnapshot snapshot) {
+        Set<Path> live = snapshot.getSegments().stream().map(IndexSegment::getFile).collect(Collectors.toSet());
+        try (Stream<Path> files = Files.list(directory(siteId))) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(SEGMENT)).toList()) {
+                if (!live.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LogUtil.logger.warn("SnapshotService::cleanup -> [%d] %s".formatted(siteId, e.getMessage()));
+        }
+    }
+
+    private synchronized long version(Site site) {
+        Activity activity = activities.get(new Key(site.getId(), site.getGeneration()));
+        return activity == null ? 0 : activity.version;
+    }
+
+    private Path directory(int siteId) {
+        return directory.resolve("site-" + siteId);
+    }
+
+    /**
+     * @return номер из имени сегмента {поколение}-{номер}.segment
+     */
+    private static int number(String name) {
+        return Integer.parseInt(name.substring(name.indexOf('-') + 1, name.length() - SEGMENT.length()));
+    }
+
+    private static Word word(int id, String lemma, int frequency) {
+        Word word = new Word();
+        word.setId(id);
+        word.setName(lemma);
+        word.setFrequency(frequency);
+        return word;
+    }
+
+    /**
+     * @return количество загруженных снимков
+     */
+    public int getCount() {
+        return snapshots.size();
+    }
+
+    /**
+     * @return количество сегментов загруженных снимков
+     */
+    public int getSegments() {
+        return snapshots.values().stream().mapToInt(snapshot -> snapshot.getSegments().size()).sum();
+    }
+
+    /**
+     * @return суммарный размер загруженных снимков, байт
+     */
+    public long getSize() {
+        return snapshots.values().stream().mapToLong(IndexSnapshot::getSize).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Key(int siteId, int generation) {
+    }
+
+    /**
+     * version меняется при каждой записи в поколение, inFlight - записи, которые ещё не зафиксированы
+     */
+    private static class Activity {
+        private long version;
+        private int inFlight;
+    }
+}
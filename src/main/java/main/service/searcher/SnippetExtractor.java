@@ -0,0 +1,86 @@
+package main.service.searcher;
+
+import main.utilities.LemmaCache;
+
+import java.util.Collection;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Сниппет результата поиска: фрагменты текста страницы вокруг найденных лемм.
+ * Не хранит состояния, поэтому может вызываться из любого потока
+ */
+public final class SnippetExtractor {
+    private static final Pattern WORD_PATTERN = Pattern.compile("[a-zA-Zа-яА-Я]+-?[a-zA-Zа-яА-Я]+");
+    /**
+     * Количество символов по обе стороны от слова
+     */
+    private static final int MARGIN = 20;
+
+    private SnippetExtractor() {
+    }
+
+    /**
+     * Собирает сниппет
+     *
+     * @param content текст страницы в нижнем регистре
+     * @param lemmas  найденные леммы
+     * @return фрагменты текста через "...", начало текста - если ни одна лемма в нём не найдена
+     */
+    public static String extract(String content, Collection<String> lemmas) {
+        StringJoiner snippet = new StringJoiner("...", " ... ", "...");
+        snippet.setEmptyValue(content.substring(0, Math.min(2 * MARGIN, content.length())));
+        lemmas.forEach(x -> {
+            // выделение фрагментов
+            int[] wordIndices = getSnippet(content, x);
+            if (wordIndices == null) {
+                // текст мог смениться после поиска: страница переиндексирована или удалена
+                return;
+            }
+            if (snippet.toString().contains(content.substring(wordIndices[0], wordIndices[1]))) {
+                return;
+            }
+            int snippetStart = Math.max(wordIndices[0] - MARGIN, 0);
+            int snippetEnd = Math.min(wordIndices[1] + MARGIN, content.length());
+            snippet.add(content.substring(snippetStart, snippetEnd));
+        });
+        return snippet.toString();
+    }
+
+    /**
+     * Выделяет подходящее слово из текста
+     *
+     * @param text содеражимое страницы
+     * @param word слово, для поиска
+     * @return индекс начала и конца слова в тексте, null - если слова в тексте нет
+     */
+    private static int[] getSnippet(String text, String word) {
+        String token = word;
+        if (text.contains(token)) {
+            int i = text.indexOf(word);
+            int j = i + word.length();
+            return new int[]{i, j};
+        }
+        if (token.contains("|")) {
+            token = token.split("\\|")[0];
+        }
+        token = token.substring(0, token.length() / 2);
+        int from = 0;
+        while (true) {
+            int i = text.indexOf(token, from);
+            if (i == -1) {
+                return null;
+            }
+            int j = text.indexOf(' ', i);
+            if (j == -1) {
+                j = text.length();
+            }
+            Matcher matcher = WORD_PATTERN.matcher(text.substring(i, j));
+            if (matcher.find() && word.equals(LemmaCache.lemmatize(matcher.group()))) {
+                return new int[]{i, j};
+            }
+            from = Math.max(j, i + 1);
+        }
+    }
+}
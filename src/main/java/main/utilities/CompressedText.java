@@ -0,0 +1,90 @@
+package main.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие текста в формате функции COMPRESS() MySQL: 4 байта длины исходных данных (little-endian),
+ * затем поток zlib. Поэтому содержимое можно прочитать и в самой базе через UNCOMPRESS().
+ */
+public final class CompressedText {
+    private static final int HEADER = 4;
+
+    private CompressedText() {
+    }
+
+    /**
+     * @param text исходный текст
+     * @return сжатый UTF-8 текст, пустой массив - для пустой строки
+     */
+    public static byte[] compress(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        if (raw.length == 0) {
+            return new byte[0];
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            out.write(raw.length & 0xFF);
+            out.write(raw.length >>> 8 & 0xFF);
+            out.write(raw.length >>> 16 & 0xFF);
+            out.write(raw.length >>> 24 & 0x3F);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param data результат compress() или COMPRESS()
+     * @return размер исходного текста в UTF-8, байт
+     */
+    public static int length(byte[] data) {
+        if (data == null || data.length < HEADER) {
+            return 0;
+        }
+        return (data[0] & 0xFF) | (data[1] & 0xFF) << 8 | (data[2] & 0xFF) << 16 | (data[3] & 0x3F) << 24;
+    }
+
+    /**
+     * @param data результат compress() или COMPRESS()
+     * @return исходный текст
+     * @throws IllegalArgumentException если данные повреждены
+     */
+    public static String decompress(byte[] data) {
+        if (data == null || data.length == 0) {
+            return "";
+        }
+        int length = length(data);
+        byte[] raw = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER, data.length - HEADER);
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int n = inflater.inflate(raw, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                throw new IllegalArgumentException("Compressed text is truncated: %d of %d bytes.".formatted(read, length));
+            }
+            return new String(raw, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed text is corrupted.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package main.utilities;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Настройки обхода сайтов, секция crawler в application.yml
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler")
+public class CrawlerProperties {
+    /**
+     * Наибольшее число одновременных http запросов
+     */
+    private int maxInFlight = 256;
+    /**
+     * Наибольшее число запросов одного сайта, ожидающих в планировщике, выполняемых или ждущих разбора
+     */
+    private int siteMaxInFlight = 16;
+    /**
+     * Запускать обход сайтов в виртуальных потоках. Нужен JDK 21+, проект собирается под 17: на нём
+     * настройка только пишет предупреждение в журнал, обход идёт в обычных потоках
+     */
+    private boolean virtualThreads = false;
+    /**
+     * Сколько сайтов обходится одновременно в обычных потоках, остальные ждут очереди.
+     * С виртуальными потоками не ограничено
+     */
+    private int siteThreads = 4;
+    /**
+     * Запросов в секунду к одному хосту
+     */
+    private double hostRate = 2;
+    /**
+     * Сколько запросов подряд можно отправить хосту без паузы
+     */
+    private int hostBurst = 2;
+    /**
+     * Наибольшее число одновременных запросов к одному хосту
+     */
+    private int hostMaxConcurrency = 8;
+    /**
+     * Если ответ хоста дольше, число одновременных запросов к нему уменьшается
+     */
+    private Duration targetLatency = Duration.ofSeconds(2);
+    /**
+     * Сколько раз повторять запрос после ответа 429 или 503
+     */
+    private int maxRetries = 3;
+    /**
+     * Тело ответа длиннее этого размера обрезается, байт
+     */
+    private int maxBodySize = 2 * 1024 * 1024;
+    /**
+     * Тайм-аут соединения и ответа
+     */
+    private Duration timeout = Duration.ofSeconds(30);
+    /**
+     * Потоки стадии разбора документов и выделения ссылок
+     */
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Потоки стадии лемматизации
+     */
+    private int analyzeThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Допустимая вероятность принять новую ссылку за уже встреченную
+     */
+    private double seenFalsePositiveRate = 0.001;
+    /**
+     * Начальная ёмкость множества встреченных ссылок, дальше оно растёт само
+     */
+    private int seenInitialCapacity = 100_000;
+    /**
+     * Ёмкость очереди перед каждой стадией
+     */
+    private int queueCapacity = 256;
+    /**
+     * Количество страниц, записываемых в базу одной транзакцией
+     */
+    private int batchSize = 10;
+    /**
+     * Каталог для журналов и контрольных точек обхода
+     */
+    private String dataDir = "data";
+    /**
+     * Держать для поиска снимки индекса в data-dir/snapshots и отвечать из них, а не из базы
+     */
+    private boolean snapshot = true;
+    /**
+     * Через сколько после записи страниц в поколение, из которого отвечает поиск, переписывать его снимок.
+     * Записи за это время попадают в один снимок
+     */
+    private Duration snapshotDelay = Duration.ofSeconds(30);
+    /**
+     * Движок поиска: jpa - индекс в таблицах _lemma и _index со снимками, lucene - встроенный индекс Lucene
+     * в data-dir/lucene по полям из _field. С lucene снимки не нужны, их можно выключить (snapshot: false)
+     */
+    private String searchEngine = "jpa";
+    /**
+     * Как часто сохранять контрольную точку обхода
+     */
+    private Duration checkpointInterval = Duration.ofSeconds(10);
+    /**
+     * Переобходить проиндексированный сайт условными запросами, обновляя только изменившиеся страницы
+     */
+    private boolean incremental;
+    /**
+     * Переобходить проиндексированные сайты в фоне, начиная с чаще всего меняющихся страниц
+     */
+    private boolean recrawl;
+    /**
+     * Как часто планировщик переобхода выбирает страницы
+     */
+    private Duration recrawlInterval = Duration.ofMinutes(1);
+    /**
+     * Наибольшее число загрузок переобхода на один хост в час
+     */
+    private int recrawlHostBudget = 600;
+    /**
+     * Страница загружается повторно, только если вероятность её изменения не меньше этой
+     */
+    private double recrawlMinChangeProbability = 0.2;
+    /**
+     * Предполагаемый интервал изменений страницы, которую ещё не загружали повторно
+     */
+    private Duration initialChangeInterval = Duration.ofDays(1);
+    /**
+     * Даже неменяющаяся страница считается меняющейся не реже, чем раз в этот интервал
+     */
+    private Duration maxChangeInterval = Duration.ofDays(30);
+    /**
+     * Параметры запроса, не влияющие на содержимое страницы. "*" в конце - любое продолжение
+     */
+    private List<String> ignoredQueryParameters = List.of("utm_*", "gclid", "yclid", "fbclid", "_openstat");
+    /**
+     * Не различать ссылки по строке запроса
+     */
+    private boolean dropQuery;
+    /**
+     * Не различать ссылки по регистру пути, если сайт к нему не чувствителен
+     */
+    private boolean lowercasePath;
+    /**
+     * Расширения файлов, ссылки на которые не загружаются: это заведомо не HTML
+     */
+    private Set<String> skippedExtensions = Set.of("pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "odt", "rtf",
+            "txt", "csv", "djvu", "epub", "jpg", "jpeg", "png", "gif", "webp", "svg", "bmp", "ico", "tif", "tiff",
+            "mp3", "mp4", "avi", "mov", "wmv", "flv", "webm", "ogg", "wav", "zip", "rar", "7z", "gz", "tar", "bz2",
+            "exe", "msi", "dmg", "iso", "apk", "css", "js", "json", "xml", "woff", "woff2", "ttf", "eot");
+    /**
+     * После стольких ответов не-HTML без единого HTML ссылки с тем же каталогом и расширением
+     * больше не загружаются
+     */
+    private int nonHtmlThreshold = 3;
+}
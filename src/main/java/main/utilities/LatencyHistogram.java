@@ -0,0 +1,63 @@
+package main.utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек в миллисекундах с логарифмическими корзинами: четыре корзины на каждую
+ * степень двойки, погрешность процентиля - не больше 19%. Память постоянная, запись без блокировок
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS_PER_OCTAVE = 4;
+    /**
+     * 32 степени двойки: до ~25 суток
+     */
+    private static final int BUCKETS = 32 * BUCKETS_PER_OCTAVE;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param millis задержка, мс
+     */
+    public void record(long millis) {
+        counts.incrementAndGet(bucket(Math.max(0, millis)));
+    }
+
+    /**
+     * @return количество записанных задержек
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param quantile доля от 0 до 1, например 0.99
+     * @return верхняя граница корзины, в которую попадает процентиль, мс; 0 - если задержек не было
+     */
+    public long getPercentile(double quantile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private static int bucket(long millis) {
+        int bucket = (int) (Math.log(millis + 1) / Math.log(2) * BUCKETS_PER_OCTAVE);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return (long) Math.ceil(Math.pow(2, (double) (bucket + 1) / BUCKETS_PER_OCTAVE)) - 1;
+    }
+}
@@ -0,0 +1,78 @@
+package main.utilities;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.lucene.morphology.LuceneMorphology;
+
+/**
+ * Общий кэш лемматизации: словоформа -> начальная форма.
+ * <p>
+ * Используется и при индексации, и при поиске. Размер ограничен суммарной длиной хранимых строк,
+ * вытеснение - W-TinyLFU, поэтому в кэше остаются самые частые словоформы.
+ */
+public final class LemmaCache {
+    /**
+     * Ограничение на суммарное количество символов в ключах и значениях (~8 Мб строк)
+     */
+    private static final long MAXIMUM_WEIGHT = 4_000_000;
+    /**
+     * Словоформа отсутствует в словарях
+     */
+    private static final String UNKNOWN = "";
+    /**
+     * Служебная часть речи. Начальные формы объединяются через "|", поэтому сама черта формой быть не может
+     */
+    private static final String SERVICE = "|";
+
+    private static final Cache<String, String> cache = Caffeine.newBuilder()
+            .maximumWeight(MAXIMUM_WEIGHT)
+            .weigher((String word, String lemma) -> word.length() + lemma.length())
+            .recordStats()
+            .build();
+
+    private LemmaCache() {
+    }
+
+    /**
+     * Возвращает начальную форму слова
+     *
+     * @param word словоформа в нижнем регистре
+     * @return начальная форма (омонимы через "|"), null - если слово неизвестно или служебная часть речи
+     */
+    public static String lemmatize(String word) {
+        String lemma = cache.get(word, LemmaCache::resolve);
+        return UNKNOWN.equals(lemma) || SERVICE.equals(lemma) ? null : lemma;
+    }
+
+    /**
+     * Проверяет, есть ли словоформа в русском или английском словаре
+     *
+     * @param word словоформа в нижнем регистре
+     * @return true - если слово известно морфологии
+     */
+    public static boolean isKnown(String word) {
+        return !UNKNOWN.equals(cache.get(word, LemmaCache::resolve));
+    }
+
+    public static CacheStats stats() {
+        return cache.stats();
+    }
+
+    public static long size() {
+        return cache.estimatedSize();
+    }
+
+    private static String resolve(String word) {
+        LuceneMorphology morphology;
+        if (WordCounter.russianMorph.checkString(word)) {
+            morphology = WordCounter.russianMorph;
+        } else if (WordCounter.englishMorph.checkString(word)) {
+            morphology = WordCounter.englishMorph;
+        } else {
+            return UNKNOWN;
+        }
+        String lemma = new Lexeme(word, morphology).getWord();
+        return lemma == null ? SERVICE : lemma;
+    }
+}
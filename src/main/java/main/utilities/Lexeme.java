@@ -27,6 +27,19 @@ public class Lexeme {
         word = extractWord(originalWord);
     }
 
+    private Lexeme(String normalForm) {
+        word = normalForm;
+    }
+
+    /**
+     * Лексема по уже известной начальной форме, без обращения к морфологическому словарю
+     * @param normalForm начальная форма (омонимы через "|")
+     * @return лексема
+     */
+    public static Lexeme ofNormalForm(@NonNull final String normalForm) {
+        return new Lexeme(normalForm);
+    }
+
     /**
      * Выделение начальной формы слова из исходной формы слова
      * @param originalWord исходное слово
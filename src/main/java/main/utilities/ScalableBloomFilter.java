@@ -0,0 +1,223 @@
+package main.utilities;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Масштабируемый фильтр Блума: чтение без блокировок, добавление - под одной из {@value #STRIPES}
+ * блокировок, выбранной по хэшу элемента. Так два потока, добавляющие один и тот же элемент,
+ * не могут оба получить true, а разные элементы добавляются параллельно.
+ * <p>
+ * Когда текущий фильтр заполнен, добавляется следующий вдвое большей ёмкости с вдвое меньшей
+ * вероятностью ложного срабатывания, поэтому общая вероятность остаётся не больше заданной.
+ * На один элемент при вероятности 1% уходит ~1.2 байта, при 0.1% - ~1.8 байта.
+ */
+public class ScalableBloomFilter {
+    private static final double TIGHTENING_RATIO = 0.5;
+    private static final int STRIPES = 64;
+    private final Object[] locks = new Object[STRIPES];
+    private final double falsePositiveRate;
+    private volatile Filter[] filters;
+
+    /**
+     * @param initialCapacity   ожидаемое количество элементов в первом фильтре
+     * @param falsePositiveRate допустимая вероятность принять новый элемент за уже добавленный
+     */
+    public ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        Arrays.setAll(locks, i -> new Object());
+        filters = new Filter[]{new Filter(Math.max(initialCapacity, 64), falsePositiveRate * (1 - TIGHTENING_RATIO))};
+    }
+
+    private ScalableBloomFilter(double falsePositiveRate, Filter[] filters) {
+        this.falsePositiveRate = falsePositiveRate;
+        Arrays.setAll(locks, i -> new Object());
+        this.filters = filters;
+    }
+
+    /**
+     * Сохраняет снимок фильтра. Добавления во время записи могут попасть в снимок частично
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        Filter[] current = filters;
+        out.writeDouble(falsePositiveRate);
+        out.writeInt(current.length);
+        for (Filter filter : current) {
+            out.writeInt(filter.capacity);
+            out.writeDouble(filter.falsePositiveRate);
+            out.writeInt(filter.count.get());
+            out.writeInt(filter.bits.length());
+            for (int i = 0; i < filter.bits.length(); i++) {
+                out.writeLong(filter.bits.get(i));
+            }
+        }
+    }
+
+    /**
+     * Восстанавливает фильтр из снимка, сохранённого {@link #writeTo(DataOutputStream)}
+     */
+    public static ScalableBloomFilter readFrom(DataInputStream in) throws IOException {
+        double falsePositiveRate = in.readDouble();
+        Filter[] filters = new Filter[in.readInt()];
+        for (int i = 0; i < filters.length; i++) {
+            Filter filter = new Filter(in.readInt(), in.readDouble());
+            filter.count.set(in.readInt());
+            int words = in.readInt();
+            if (words != filter.bits.length()) {
+                throw new IOException("Corrupted bloom filter snapshot");
+            }
+            for (int j = 0; j < words; j++) {
+                filter.bits.set(j, in.readLong());
+            }
+            filters[i] = filter;
+        }
+        return new ScalableBloomFilter(falsePositiveRate, filters);
+    }
+
+    /**
+     * Добавляет элемент
+     *
+     * @param key элемент
+     * @return true - если элемента ещё не было (с точностью до ложных срабатываний)
+     */
+    public boolean add(String key) {
+        long hash = hash(key);
+        Filter last;
+        synchronized (locks[(int) (hash ^ hash >>> 32) & (STRIPES - 1)]) {
+            Filter[] current = filters;
+            for (int i = 0; i < current.length - 1; i++) {
+                if (current[i].mightContain(hash)) {
+                    return false;
+                }
+            }
+            last = current[current.length - 1];
+            if (!last.add(hash)) {
+                return false;
+            }
+        }
+        if (last.count.incrementAndGet() >= last.capacity) {
+            grow(last);
+        }
+        return true;
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        for (Filter filter : filters) {
+            if (filter.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void grow(Filter full) {
+        Filter[] current = filters;
+        if (current[current.length - 1] != full) {
+            return;
+        }
+        Filter[] next = new Filter[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new Filter(full.capacity * 2, full.falsePositiveRate * TIGHTENING_RATIO);
+        filters = next;
+    }
+
+    /**
+     * @return приблизительное количество добавленных элементов
+     */
+    public long size() {
+        long size = 0;
+        for (Filter filter : filters) {
+            size += filter.count.get();
+        }
+        return size;
+    }
+
+    /**
+     * @return объём битовых массивов в байтах
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (Filter filter : filters) {
+            bytes += filter.bits.length() * 8L;
+        }
+        return bytes;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * 64-битный хэш: FNV-1a по байтам UTF-8 и перемешивание из MurmurHash3
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Filter {
+        private final int capacity;
+        private final double falsePositiveRate;
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Filter(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+            bits = new AtomicLongArray(words);
+            bitCount = words * 64L;
+            hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        /**
+         * @return true - если хотя бы один бит был установлен этим вызовом
+         */
+        boolean add(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            boolean changed = false;
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old = bits.getAndAccumulate(index, mask, (a, b) -> a | b);
+                changed |= (old & mask) == 0;
+            }
+            return changed;
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package main.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 64-битный SimHash текста (Charikar) по шинглам из трёх слов.
+ * <p>
+ * У почти одинаковых текстов отпечатки отличаются в нескольких битах, поэтому близость текстов
+ * проверяется расстоянием Хэмминга между отпечатками.
+ */
+public final class SimHash {
+    /**
+     * У текста короче этого числа слов отпечаток не считается: на коротких страницах почти
+     * одинаковыми оказываются шаблоны сайта, а не содержимое
+     */
+    public static final int MIN_WORDS = 20;
+    private static final int SHINGLE = 3;
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    private SimHash() {
+    }
+
+    /**
+     * @param text текст страницы
+     * @return отпечаток, 0 - если текст слишком короткий
+     */
+    public static long of(String text) {
+        List<String> words = new ArrayList<>();
+        Matcher matcher = WORD.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            words.add(matcher.group());
+        }
+        if (words.size() < MIN_WORDS) {
+            return 0;
+        }
+        int[] weights = new int[64];
+        for (int i = 0; i + SHINGLE <= words.size(); i++) {
+            long hash = ScalableBloomFilter.hash(String.join(" ", words.subList(i, i + SHINGLE)));
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += (hash >>> bit & 1) == 1 ? 1 : -1;
+            }
+        }
+        long result = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                result |= 1L << bit;
+            }
+        }
+        return result == 0 ? 1 : result;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -6,7 +6,6 @@ import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -41,45 +40,33 @@ public class WordCounter {
         }
         matcher.reset();
         while (matcher.find()) {
-            String word = matcher.group();  // extract next word
-            if (word.contains("-")) {
-                if (!russianMorph.checkString(word) && !englishMorph.checkString(word)) {
-                    List<String> strings = Arrays.stream(word.split("-")).map(String::toLowerCase).toList();
-                    result.addAll(strings);
-                }
-                else
-                {
-                    result.add(word.toLowerCase());
-                }
+            String word = matcher.group().toLowerCase();  // extract next word
+            if (word.contains("-") && !LemmaCache.isKnown(word)) {
+                result.addAll(Arrays.asList(word.split("-")));
             } else {
-                result.add(word.toLowerCase());
+                result.add(word);
             }
         }
         return result;
     }
 
     /**
-     * Создает отображение word -> count
+     * Создает отображение word -> count. Работает в вызывающем потоке: страницы и так
+     * обрабатываются параллельно стадией лемматизации
      *
      * @param text исходный текст
      * @return словарь (key, value) = (словоформа, частота_слова)
      */
     public static Map<String, Integer> getStats(String text) {
         Collection<String> words = selectWords(text);
-        ConcurrentHashMap<Lexeme, Integer> map = new ConcurrentHashMap<>();
-        words.parallelStream().forEach(word ->
+        HashMap<Lexeme, Integer> map = new HashMap<>();
+        words.forEach(word ->
         {
-            Lexeme lexeme;
-            if (russianMorph.checkString(word)) {
-                lexeme = new Lexeme(word, russianMorph);    // if it's a russian word
-            } else if (englishMorph.checkString(word)) {
-                lexeme = new Lexeme(word, englishMorph);    // for english
-            } else {
-                return;
-            }
-            if (lexeme.getWord() == null) {
-                return;  // служебная часть речи, пропускаем
+            String lemma = LemmaCache.lemmatize(word);
+            if (lemma == null) {
+                return;  // неизвестное слово или служебная часть речи, пропускаем
             }
+            Lexeme lexeme = Lexeme.ofNormalForm(lemma);
             if (map.containsKey(lexeme)) {  // если такая словоформа есть
                 Lexeme key = map.keySet().stream()  // берем ключ
                         .filter(lexeme::equals)
@@ -95,7 +82,7 @@ public class WordCounter {
             }
         });
 
-        return map.entrySet().parallelStream()
+        return map.entrySet().stream()
                 .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
                 .collect(Collectors.toMap(x -> x.getKey().getWord(),
                         Map.Entry::getValue,
@@ -0,0 +1,50 @@
+CREATE TABLE IF NOT EXISTS _site
+(
+    id          INT AUTO_INCREMENT PRIMARY KEY,
+    status      ENUM ('INDEXING', 'INDEXED', 'FAILED') NOT NULL,
+    status_time DATETIME                               NOT NULL,
+    last_error  TEXT,
+    url         VARCHAR(255)                           NOT NULL,
+    name        VARCHAR(255)                           NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS _page
+(
+    id      INT AUTO_INCREMENT PRIMARY KEY,
+    site_id INT        NOT NULL,
+    path    TEXT       NOT NULL,
+    code    INT        NOT NULL,
+    content MEDIUMTEXT NOT NULL,
+    KEY path_index (path(255))
+);
+
+CREATE TABLE IF NOT EXISTS _lemma
+(
+    id        INT AUTO_INCREMENT PRIMARY KEY,
+    site_id   INT          NOT NULL,
+    lemma     VARCHAR(255) NOT NULL,
+    frequency INT          NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS _index
+(
+    id       INT AUTO_INCREMENT PRIMARY KEY,
+    page_id  INT   NOT NULL,
+    lemma_id INT   NOT NULL,
+    `rank`   FLOAT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS _field
+(
+    id       INT AUTO_INCREMENT PRIMARY KEY,
+    name     VARCHAR(255) NOT NULL,
+    selector VARCHAR(255) NOT NULL,
+    weight   FLOAT        NOT NULL
+);
+
+INSERT INTO _field (name, selector, weight)
+SELECT defaults.name, defaults.selector, defaults.weight
+FROM (SELECT 'title' AS name, 'title' AS selector, 1.0 AS weight
+      UNION ALL
+      SELECT 'body', 'body', 0.8) defaults
+WHERE NOT EXISTS(SELECT 1 FROM _field);
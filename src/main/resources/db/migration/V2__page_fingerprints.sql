@@ -0,0 +1,5 @@
+ALTER TABLE _page
+    ADD COLUMN etag          VARCHAR(255) NULL,
+    ADD COLUMN last_modified VARCHAR(64)  NULL,
+    ADD COLUMN content_hash  BIGINT       NOT NULL DEFAULT 0,
+    ADD COLUMN fetch_time    DATETIME     NULL;
@@ -0,0 +1,11 @@
+ALTER TABLE _page
+    ADD COLUMN first_fetch  DATETIME NULL,
+    ADD COLUMN check_count  INT      NOT NULL DEFAULT 0,
+    ADD COLUMN change_count INT      NOT NULL DEFAULT 0,
+    ADD COLUMN change_rate  DOUBLE   NOT NULL DEFAULT 0;
+
+-- Страницы, загруженные до появления истории: считаем, что они меняются раз в сутки
+UPDATE _page
+SET fetch_time  = COALESCE(fetch_time, NOW()),
+    first_fetch = COALESCE(fetch_time, NOW()),
+    change_rate = 1 / 86400;
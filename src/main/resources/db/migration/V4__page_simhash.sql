@@ -0,0 +1,7 @@
+ALTER TABLE _page
+    ADD COLUMN simhash BIGINT NOT NULL DEFAULT 0;
+
+-- Канонический путь главной страницы - "/"
+UPDATE _page
+SET path = '/'
+WHERE path = '';
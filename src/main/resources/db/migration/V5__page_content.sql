@@ -0,0 +1,14 @@
+-- Содержимое страниц переезжает в отдельную таблицу в формате COMPRESS()
+CREATE TABLE IF NOT EXISTS _page_content
+(
+    page_id  INT PRIMARY KEY,
+    content  MEDIUMBLOB NOT NULL,
+    raw_size INT        NOT NULL
+);
+
+INSERT INTO _page_content (page_id, content, raw_size)
+SELECT id, COMPRESS(content), LENGTH(content)
+FROM _page;
+
+ALTER TABLE _page
+    DROP COLUMN content;
@@ -0,0 +1,97 @@
+-- Леммы сравниваются побайтно, как в Java: иначе уникальный ключ склеил бы, например, "е" и "ё"
+ALTER TABLE _lemma
+    MODIFY lemma VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL;
+
+-- Путь страницы входит в уникальный ключ целиком: 760 символов utf8mb4 и site_id умещаются в 3072 байта ключа InnoDB.
+-- Страницы с более длинным путём обходчик больше не сохраняет
+DELETE i
+FROM _index i
+         JOIN _page p ON p.id = i.page_id
+WHERE CHAR_LENGTH(p.path) > 760;
+
+DELETE c
+FROM _page_content c
+         JOIN _page p ON p.id = c.page_id
+WHERE CHAR_LENGTH(p.path) > 760;
+
+DELETE
+FROM _page
+WHERE CHAR_LENGTH(path) > 760;
+
+ALTER TABLE _page
+    MODIFY path VARCHAR(760) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL;
+
+-- Повторы страницы одного сайта: остаётся первая, индексы и содержимое остальных удаляются
+CREATE TEMPORARY TABLE _page_duplicate AS
+SELECT p.id
+FROM _page p
+         JOIN (SELECT site_id, path, MIN(id) AS keep_id
+               FROM _page
+               GROUP BY site_id, path
+               HAVING COUNT(*) > 1) k ON k.site_id = p.site_id AND k.path = p.path
+WHERE p.id <> k.keep_id;
+
+DELETE i
+FROM _index i
+         JOIN _page_duplicate d ON d.id = i.page_id;
+
+DELETE c
+FROM _page_content c
+         JOIN _page_duplicate d ON d.id = c.page_id;
+
+DELETE p
+FROM _page p
+         JOIN _page_duplicate d ON d.id = p.id;
+
+DROP TEMPORARY TABLE _page_duplicate;
+
+ALTER TABLE _page
+    DROP INDEX path_index,
+    ADD UNIQUE KEY site_path (site_id, path);
+
+-- Повторы леммы одного сайта: индексы переводятся на первую, остальные удаляются
+CREATE TEMPORARY TABLE _lemma_duplicate AS
+SELECT l.id, k.keep_id
+FROM _lemma l
+         JOIN (SELECT site_id, lemma, MIN(id) AS keep_id
+               FROM _lemma
+               GROUP BY site_id, lemma
+               HAVING COUNT(*) > 1) k ON k.site_id = l.site_id AND k.lemma = l.lemma
+WHERE l.id <> k.keep_id;
+
+-- _index без суррогатного ключа: строки лежат в порядке (lemma_id, page_id), rank читается
+-- из той же строки кластерного индекса. Вторичный ключ по page_id неявно содержит lemma_id
+CREATE TABLE _index_new
+(
+    lemma_id INT   NOT NULL,
+    page_id  INT   NOT NULL,
+    `rank`   FLOAT NOT NULL,
+    PRIMARY KEY (lemma_id, page_id),
+    KEY page_lemma (page_id)
+);
+
+INSERT INTO _index_new (lemma_id, page_id, `rank`)
+SELECT COALESCE(d.keep_id, i.lemma_id), i.page_id, MAX(i.`rank`)
+FROM _index i
+         LEFT JOIN _lemma_duplicate d ON d.id = i.lemma_id
+GROUP BY COALESCE(d.keep_id, i.lemma_id), i.page_id;
+
+DROP TABLE _index;
+
+RENAME TABLE _index_new TO _index;
+
+DELETE l
+FROM _lemma l
+         JOIN _lemma_duplicate d ON d.id = l.id;
+
+DROP TEMPORARY TABLE _lemma_duplicate;
+
+ALTER TABLE _lemma
+    ADD UNIQUE KEY site_lemma (site_id, lemma);
+
+-- Частота леммы - число страниц с ней; после удаления повторов пересчитывается по индексу
+UPDATE _lemma l
+    LEFT JOIN (SELECT lemma_id, COUNT(*) AS pages
+               FROM _index
+               GROUP BY lemma_id) c ON c.lemma_id = l.id
+SET l.frequency = COALESCE(c.pages, 0);
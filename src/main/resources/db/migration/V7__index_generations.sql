@@ -0,0 +1,23 @@
+-- Поколения индекса сайта: поиск читает generation, полный переобход пишет в building
+ALTER TABLE _site
+    ADD COLUMN generation INT NOT NULL DEFAULT 0,
+    ADD COLUMN building   INT NULL;
+
+ALTER TABLE _page
+    ADD COLUMN generation INT NOT NULL DEFAULT 1,
+    DROP INDEX site_path,
+    ADD UNIQUE KEY site_path (site_id, generation, path);
+
+ALTER TABLE _lemma
+    ADD COLUMN generation INT NOT NULL DEFAULT 1,
+    DROP INDEX site_lemma,
+    ADD UNIQUE KEY site_lemma (site_id, generation, lemma);
+
+-- Уже сохранённые страницы - поколение 1: готовое у проиндексированных сайтов, недостроенное у остальных
+UPDATE _site
+SET generation = 1
+WHERE status = 'INDEXED';
+
+UPDATE _site
+SET building = 1
+WHERE status <> 'INDEXED';
@@ -0,0 +1,20 @@
+-- Количество страниц и лемм по поколениям сайтов, обновляется вместе с записью страниц
+CREATE TABLE IF NOT EXISTS _site_stats
+(
+    site_id    INT    NOT NULL,
+    generation INT    NOT NULL,
+    pages      BIGINT NOT NULL DEFAULT 0,
+    lemmas     BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (site_id, generation)
+);
+
+INSERT INTO _site_stats (site_id, generation, pages)
+SELECT site_id, generation, COUNT(*)
+FROM _page
+GROUP BY site_id, generation;
+
+INSERT INTO _site_stats (site_id, generation, lemmas)
+SELECT site_id, generation, COUNT(*)
+FROM _lemma
+GROUP BY site_id, generation
+ON DUPLICATE KEY UPDATE lemmas = VALUES(lemmas);
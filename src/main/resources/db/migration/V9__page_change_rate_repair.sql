@@ -0,0 +1,6 @@
+-- V3 делит целые: 1 / 86400 в DECIMAL округляется до 0.0000, и страницы, загруженные до появления
+-- истории, не попадают в повторный обход. Код не ставит частоту меньше 1 / max-change-interval,
+-- поэтому ноль остаётся только у этих страниц: считаем, что они меняются раз в сутки
+UPDATE _page
+SET change_rate = 1e0 / 86400
+WHERE change_rate = 0;
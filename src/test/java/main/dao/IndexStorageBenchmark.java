@@ -0,0 +1,214 @@
+package main.dao;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сравнивает схему _index/_lemma/_page до V6 (суррогатный ключ, без индексов по путям доступа)
+ * и после (кластерный ключ (lemma_id, page_id), уникальные (site_id, lemma) и (site_id, path)).
+ * <p>
+ * Нужна пустая база MySQL/MariaDB, которую можно очищать. Запуск:
+ * <pre>
+ * mvn test -Dtest=IndexStorageBenchmark -Dbenchmark.url=jdbc:mysql://localhost:3306/bench
+ *     -Dbenchmark.user=root -Dbenchmark.password=secret [-Dbenchmark.pages=5000]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark.url", matches = ".+")
+public class IndexStorageBenchmark {
+  private static final String URL = System.getProperty("benchmark.url");
+  private static final String USER = System.getProperty("benchmark.user", "root");
+  private static final String PASSWORD = System.getProperty("benchmark.password", "");
+  private static final int PAGES = Integer.getInteger("benchmark.pages", 2_000);
+  private static final int LEMMAS = Integer.getInteger("benchmark.lemmas", 20_000);
+  private static final int LEMMAS_PER_PAGE = 150;
+  private static final int QUERIES = 2_000;
+  private static final int BATCH = 1_000;
+
+  @Test
+  public void compareSchemas() throws SQLException {
+    Map<String, Object> before = run("5");
+    Map<String, Object> after = run("latest");
+    System.out.printf("%-28s %20s %20s%n", "", "V5 (surrogate id)", "V6 (composite key)");
+    for (String metric : before.keySet()) {
+      System.out.printf("%-28s %20s %20s%n", metric, before.get(metric), after.get(metric));
+    }
+    assertEquals(before.get("postings"), after.get("postings"));
+  }
+
+  private Map<String, Object> run(String target) throws SQLException {
+    Flyway flyway = Flyway.configure().dataSource(URL, USER, PASSWORD).target(target).cleanDisabled(false).load();
+    flyway.clean();
+    flyway.migrate();
+    Map<String, Object> result = new LinkedHashMap<>();
+    Random random = new Random(41);
+    try (Connection connection = DriverManager.getConnection(URL, USER, PASSWORD)) {
+      connection.setAutoCommit(false);
+      int siteId = insertSite(connection);
+      long start = System.nanoTime();
+      int[] lemmaIds = insertLemmas(connection, siteId);
+      int[] pageIds = insertPages(connection, siteId);
+      result.put("lemmas+pages insert, ms", (System.nanoTime() - start) / 1_000_000);
+
+      start = System.nanoTime();
+      long postings = 0;
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT INTO _index (lemma_id, page_id, `rank`) VALUES (?, ?, ?)")) {
+        for (int pageId : pageIds) {
+          Set<Integer> lemmas = new LinkedHashSet<>();
+          while (lemmas.size() < LEMMAS_PER_PAGE) {
+            lemmas.add(zipf(random, LEMMAS));
+          }
+          for (int lemma : lemmas) {
+            insert.setInt(1, lemmaIds[lemma]);
+            insert.setInt(2, pageId);
+            insert.setFloat(3, 1 + random.nextFloat());
+            insert.addBatch();
+            if (++postings % BATCH == 0) {
+              insert.executeBatch();
+            }
+          }
+        }
+        insert.executeBatch();
+      }
+      connection.commit();
+      long elapsed = System.nanoTime() - start;
+      result.put("postings", postings);
+      result.put("_index insert, postings/s", postings * 1_000_000_000L / elapsed);
+
+      result.put("postings by lemma, us", time(connection,
+          "SELECT page_id, `rank` FROM _index WHERE lemma_id = ?",
+          statement -> statement.setInt(1, lemmaIds[zipf(random, LEMMAS)])));
+      result.put("rank by page+lemma, us", time(connection,
+          "SELECT `rank` FROM _index WHERE page_id = ? AND lemma_id = ?",
+          statement -> {
+            statement.setInt(1, pageIds[random.nextInt(pageIds.length)]);
+            statement.setInt(2, lemmaIds[zipf(random, LEMMAS)]);
+          }));
+      result.put("lemma by site+name, us", time(connection,
+          "SELECT id, frequency FROM _lemma WHERE site_id = ? AND lemma = ?",
+          statement -> {
+            statement.setInt(1, siteId);
+            statement.setString(2, "lemma" + random.nextInt(LEMMAS));
+          }));
+      result.put("page by site+path, us", time(connection,
+          "SELECT id FROM _page WHERE site_id = ? AND path = ?",
+          statement -> {
+            statement.setInt(1, siteId);
+            statement.setString(2, "/page/" + random.nextInt(PAGES));
+          }));
+      result.put("postings by lemma, key", explain(connection,
+          "EXPLAIN SELECT page_id, `rank` FROM _index WHERE lemma_id = " + lemmaIds[0]));
+      result.put("lemma by site+name, key", explain(connection,
+          "EXPLAIN SELECT id FROM _lemma WHERE site_id = " + siteId + " AND lemma = 'lemma0'"));
+      result.put("_index size, KB", tableSize(connection, "_index"));
+    }
+    return result;
+  }
+
+  private static int insertSite(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate("INSERT INTO _site (status, status_time, url, name)"
+          + " VALUES ('INDEXED', NOW(), 'http://example.com', 'bench')", Statement.RETURN_GENERATED_KEYS);
+      return generatedKeys(statement, 1)[0];
+    }
+  }
+
+  private static int[] insertLemmas(Connection connection, int siteId) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO _lemma (site_id, lemma, frequency) VALUES (?, ?, 0)", Statement.RETURN_GENERATED_KEYS)) {
+      for (int i = 0; i < LEMMAS; i++) {
+        insert.setInt(1, siteId);
+        insert.setString(2, "lemma" + i);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+      connection.commit();
+      return generatedKeys(insert, LEMMAS);
+    }
+  }
+
+  private static int[] insertPages(Connection connection, int siteId) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO _page (site_id, path, code) VALUES (?, ?, 200)", Statement.RETURN_GENERATED_KEYS)) {
+      for (int i = 0; i < PAGES; i++) {
+        insert.setInt(1, siteId);
+        insert.setString(2, "/page/" + i);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+      connection.commit();
+      return generatedKeys(insert, PAGES);
+    }
+  }
+
+  private static int[] generatedKeys(Statement statement, int count) throws SQLException {
+    int[] ids = new int[count];
+    try (ResultSet keys = statement.getGeneratedKeys()) {
+      for (int i = 0; i < count && keys.next(); i++) {
+        ids[i] = keys.getInt(1);
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * @return среднее время запроса вместе с чтением результата, мкс
+   */
+  private static long time(Connection connection, String sql, Binder binder) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      long start = System.nanoTime();
+      for (int i = 0; i < QUERIES; i++) {
+        binder.bind(statement);
+        try (ResultSet resultSet = statement.executeQuery()) {
+          while (resultSet.next()) {
+            resultSet.getObject(1);
+          }
+        }
+      }
+      return (System.nanoTime() - start) / 1_000 / QUERIES;
+    }
+  }
+
+  private static String explain(Connection connection, String sql) throws SQLException {
+    try (Statement statement = connection.createStatement(); ResultSet plan = statement.executeQuery(sql)) {
+      plan.next();
+      return plan.getString("type") + "/" + plan.getString("key");
+    }
+  }
+
+  private static long tableSize(Connection connection, String table) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("ANALYZE TABLE " + table);
+      try (ResultSet size = statement.executeQuery("SELECT (data_length + index_length) DIV 1024"
+          + " FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = '" + table + "'")) {
+        return size.next() ? size.getLong(1) : 0;
+      }
+    }
+  }
+
+  /**
+   * Номер леммы с распределением, близким к частотам слов: редкие леммы встречаются реже
+   */
+  private static int zipf(Random random, int n) {
+    return (int) (n * Math.pow(random.nextDouble(), 3));
+  }
+
+  private interface Binder {
+    void bind(PreparedStatement statement) throws SQLException;
+  }
+}
@@ -0,0 +1,38 @@
+package main.service.indexer;
+
+import main.utilities.CrawlerProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeRateTest {
+  private static final double DAY = Duration.ofDays(1).toSeconds();
+  private final CrawlerProperties properties = new CrawlerProperties();
+
+  @Test
+  public void usesInitialRateWithoutHistory() {
+    assertEquals(1 / DAY, ChangeRate.estimate(0, 0, 0, properties), 1e-12);
+  }
+
+  @Test
+  public void frequentChangesGiveHigherRate() {
+    double news = ChangeRate.estimate(10, 10, 10 * DAY, properties);
+    double blog = ChangeRate.estimate(10, 3, 10 * DAY, properties);
+    double fixed = ChangeRate.estimate(10, 0, 10 * DAY, properties);
+    assertTrue(news > blog);
+    assertTrue(blog > fixed);
+    assertTrue(news > 1 / DAY, "every check saw a change, so the page changes more often than it is checked");
+    assertEquals(1.0 / properties.getMaxChangeInterval().toSeconds(), fixed, 1e-12);
+  }
+
+  @Test
+  public void approachesTrueRate() {
+    // страница меняется в среднем раз в 4 суток, проверяется раз в сутки: изменения застаёт 1 - e^(-1/4)
+    int checks = 1000;
+    int changes = (int) Math.round(checks * (1 - Math.exp(-0.25)));
+    double rate = ChangeRate.estimate(checks, changes, checks * DAY, properties);
+    assertEquals(0.25 / DAY, rate, 0.01 / DAY);
+  }
+}
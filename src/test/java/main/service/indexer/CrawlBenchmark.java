@@ -0,0 +1,200 @@
+package main.service.indexer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import main.dao.FieldRepository;
+import main.dao.SiteRepository;
+import main.model.Field;
+import main.model.Site;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Обход и индексация сгенерированного сайта ({@link SyntheticSite}) целиком: IndexBuilder -> WebCrawler -> Pipeline,
+ * база - H2 в памяти в режиме MySQL, схема создаётся Hibernate. Сеть и MySQL не нужны. Запуск:
+ * <pre>
+ * mvn test -Dtest=CrawlBenchmark [-Dbenchmark.pages=2000] [-Dbenchmark.fan-out=10] [-Dbenchmark.words=300]
+ *     [-Dbenchmark.russian-share=0.5] [-Dbenchmark.latency=5] [-Dbenchmark.jitter=5] [-Dbenchmark.error-rate=0]
+ * </pre>
+ * Настройки обходчика переопределяются так же: -Dcrawler.host-rate=500 и т.п. Журнал - только ошибки,
+ * с -Dbenchmark.logging=classpath:log4j2.xml - как в приложении.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+    properties = "logging.config=${benchmark.logging:classpath:log4j2-benchmark.xml}")
+public class CrawlBenchmark {
+  private static final int PAGES = Integer.getInteger("benchmark.pages", 2_000);
+  private static final int FAN_OUT = Integer.getInteger("benchmark.fan-out", 10);
+  private static final int WORDS = Integer.getInteger("benchmark.words", 300);
+  private static final double RUSSIAN_SHARE = Double.parseDouble(System.getProperty("benchmark.russian-share", "0.5"));
+  private static final int LATENCY = Integer.getInteger("benchmark.latency", 5);
+  private static final int JITTER = Integer.getInteger("benchmark.jitter", 5);
+  private static final double ERROR_RATE = Double.parseDouble(System.getProperty("benchmark.error-rate", "0"));
+  private static final long TIMEOUT = Long.getLong("benchmark.timeout", 600) * 1000;
+  private static SyntheticSite site;
+
+  @Autowired
+  private IndexBuilder indexBuilder;
+  @Autowired
+  private SiteRepository siteRepository;
+  @Autowired
+  private FieldRepository fieldRepository;
+  @Autowired
+  private IndexStatistics indexStatistics;
+  @Autowired
+  private Fetcher fetcher;
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @DynamicPropertySource
+  static void properties(DynamicPropertyRegistry registry) throws IOException {
+    site = new SyntheticSite(PAGES, FAN_OUT, WORDS, RUSSIAN_SHARE, LATENCY, JITTER, ERROR_RATE, 64);
+    Path dataDir = Files.createTempDirectory("crawl-benchmark");
+    registry.add("sites[0].url", site::getUrl);
+    registry.add("sites[0].name", () -> "synthetic");
+    registry.add("spring.datasource.url", () -> "jdbc:h2:mem:crawl-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    registry.add("spring.datasource.username", () -> "sa");
+    registry.add("spring.datasource.password", () -> "");
+    registry.add("spring.flyway.enabled", () -> false);
+    registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+    registry.add("spring.jpa.properties.hibernate.dialect", () -> "org.hibernate.dialect.H2Dialect");
+    registry.add("crawler.data-dir", dataDir::toString);
+    registry.add("crawler.recrawl", () -> false);
+    crawler(registry, "host-rate", "10000");
+    crawler(registry, "host-burst", "1000");
+    crawler(registry, "host-max-concurrency", "64");
+    crawler(registry, "site-max-in-flight", "64");
+    crawler(registry, "batch-size", "10");
+  }
+
+  /**
+   * Настройка обходчика для бенчмарка, если она не задана в системных свойствах
+   */
+  private static void crawler(DynamicPropertyRegistry registry, String name, String value) {
+    registry.add("crawler." + name, () -> System.getProperty("crawler." + name, value));
+  }
+
+  @AfterAll
+  static void stopSite() {
+    site.close();
+  }
+
+  @Test
+  public void crawl() throws InterruptedException {
+    fieldRepository.saveAll(List.of(field("title", 1.0f), field("body", 0.8f)));
+    Statistics database = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    database.clear();
+    HeapSampler heap = new HeapSampler();
+    heap.start();
+
+    long start = System.nanoTime();
+    indexBuilder.start();
+    Site indexed = await();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    heap.interrupt();
+    heap.join();
+
+    long committed = Pipeline.getCommitted();
+    long writes = database.getEntityInsertCount() + database.getEntityUpdateCount() + database.getEntityDeleteCount();
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("pages (site / committed)", PAGES + " / " + committed);
+    result.put("requests / 503", site.getRequests() + " / " + site.getErrors());
+    result.put("duplicates", Pipeline.getDuplicates());
+    result.put("lemmas", indexStatistics.getLemmas(indexed));
+    result.put("elapsed, s", "%.1f".formatted(seconds));
+    result.put("pages/s", "%.1f".formatted(committed / seconds));
+    result.put("fetch-to-commit p50, ms", Pipeline.getCommitLatency().getPercentile(0.5));
+    result.put("fetch-to-commit p99, ms", Pipeline.getCommitLatency().getPercentile(0.99));
+    result.put("fetched, MB", fetcher.getBytes() / (1024 * 1024));
+    result.put("entity writes/s", "%.0f".formatted(writes / seconds));
+    result.put("statements/s", "%.0f".formatted(database.getPrepareStatementCount() / seconds));
+    result.put("transactions", database.getSuccessfulTransactionCount());
+    result.put("peak heap, MB", heap.getPeak() / (1024 * 1024));
+    System.out.printf("%nCrawl benchmark: %d pages, fan-out %d, %d words, %.0f%% russian, latency %d+-%d ms, errors %.1f%%%n",
+        PAGES, FAN_OUT, WORDS, RUSSIAN_SHARE * 100, LATENCY, JITTER, ERROR_RATE * 100);
+    result.forEach((metric, value) -> System.out.printf("%-28s %20s%n", metric, value));
+
+    assertEquals(Site.Status.INDEXED, indexed.getStatus(), indexed.getLastError());
+    assertEquals(committed, indexStatistics.getPages(indexed));
+    if (ERROR_RATE == 0) {
+      assertEquals(PAGES, committed);
+    }
+  }
+
+  /**
+   * Ждёт окончания индексации
+   *
+   * @return сайт после индексации
+   */
+  private Site await() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (System.currentTimeMillis() < deadline) {
+      Optional<Site> found = siteRepository.findByUrl(site.getUrl());
+      if (found.isPresent() && found.get().getStatus() != Site.Status.INDEXING && !isIndexing()) {
+        return found.get();
+      }
+      Thread.sleep(100);
+    }
+    return fail("Indexing is not finished in " + TIMEOUT / 1000 + " s.");
+  }
+
+  private boolean isIndexing() {
+    JsonNode statistics = (JsonNode) indexBuilder.statistics().getBody();
+    return statistics != null && statistics.path("statistics").path("total").path("isIndexing").asBoolean();
+  }
+
+  private static Field field(String selector, float weight) {
+    Field field = new Field();
+    field.setName(selector);
+    field.setSelector(selector);
+    field.setWeight(weight);
+    return field;
+  }
+
+  /**
+   * Наибольший занятый размер кучи за время обхода, по замерам раз в 20 мс
+   */
+  private static class HeapSampler extends Thread {
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final AtomicLong peak = new AtomicLong();
+
+    HeapSampler() {
+      super("heap-sampler");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!isInterrupted()) {
+        peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+
+    long getPeak() {
+      return Math.max(peak.get(), memory.getHeapMemoryUsage().getUsed());
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package main.service.indexer;
+
+import com.sun.net.httpserver.HttpServer;
+import main.utilities.CrawlerProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FetcherTest {
+  private static final String PAGE = "<html><head><title>Тест</title></head><body>"
+      + "страница ".repeat(1000) + "</body></html>";
+
+  private HttpServer server;
+  private String base;
+
+  @BeforeEach
+  public void start() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/gzip", exchange -> {
+      String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(body)) {
+        gzip.write(PAGE.getBytes(StandardCharsets.UTF_8));
+      }
+      exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+      if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+        exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+      }
+      exchange.sendResponseHeaders(200, body.size());
+      try (OutputStream out = exchange.getResponseBody()) {
+        body.writeTo(out);
+      }
+    });
+    server.createContext("/large", exchange -> {
+      exchange.getResponseHeaders().add("Content-Type", "text/html");
+      exchange.sendResponseHeaders(200, 0);
+      try (OutputStream out = exchange.getResponseBody()) {
+        for (int i = 0; i < 1024; i++) {
+          out.write(new byte[1024]);
+        }
+      } catch (Exception ignored) {
+        // клиент прервал передачу
+      }
+    });
+    server.createContext("/file", exchange -> {
+      exchange.getResponseHeaders().add("Content-Type", "application/pdf");
+      exchange.sendResponseHeaders(200, 0);
+      try (OutputStream out = exchange.getResponseBody()) {
+        for (int i = 0; i < 1024; i++) {
+          out.write(new byte[1024]);
+        }
+      } catch (Exception ignored) {
+        // клиент прервал передачу
+      }
+    });
+    server.createContext("/etag", exchange -> {
+      exchange.getResponseHeaders().add("ETag", "\"v1\"");
+      if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+      byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.createContext("/missing", exchange -> {
+      exchange.sendResponseHeaders(404, -1);
+      exchange.close();
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    base = "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void stop() {
+    server.stop(0);
+  }
+
+  private static Fetcher fetcher(int maxBodySize) {
+    CrawlerProperties properties = new CrawlerProperties();
+    properties.setMaxBodySize(maxBodySize);
+    return new Fetcher(properties);
+  }
+
+  @Test
+  public void decodesGzipBody() throws Exception {
+    FetchResult result = fetcher(1 << 20).fetch(base + "/gzip").get();
+    assertEquals(200, result.getStatusCode());
+    assertTrue(result.isHtml());
+    assertEquals("utf-8", result.getCharset());
+    assertEquals(PAGE, new String(result.getBody(), StandardCharsets.UTF_8));
+    assertFalse(result.isTruncated());
+  }
+
+  @Test
+  public void truncatesLargeBody() throws Exception {
+    FetchResult result = fetcher(10_000).fetch(base + "/large").get();
+    assertTrue(result.isTruncated());
+    assertEquals(10_000, result.getBody().length);
+  }
+
+  @Test
+  public void keepsErrorStatus() throws Exception {
+    FetchResult result = fetcher(1 << 20).fetch(base + "/missing").get();
+    assertEquals(404, result.getStatusCode());
+    assertFalse(result.isHtml());
+  }
+
+  @Test
+  public void completesManyConcurrentRequests() throws Exception {
+    Fetcher fetcher = fetcher(1 << 20);
+    List<CompletableFuture<FetchResult>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      futures.add(fetcher.fetch(base + "/gzip"));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+    assertEquals(100, fetcher.getCompleted());
+    assertEquals(0, fetcher.getInFlight());
+  }
+
+  @Test
+  public void sendsConditionalRequest() throws Exception {
+    Fetcher fetcher = fetcher(1 << 20);
+    FetchResult first = fetcher.fetch(base + "/etag").get();
+    assertEquals(200, first.getStatusCode());
+    assertEquals("\"v1\"", first.getEtag());
+    FetchResult again = fetcher.fetch(base + "/etag").get();
+    assertEquals(first.getContentHash(), again.getContentHash());
+
+    FetchResult conditional = fetcher.fetch(base + "/etag", Map.of("If-None-Match", first.getEtag())).get();
+    assertTrue(conditional.isNotModified());
+    assertEquals(0, conditional.getBody().length);
+  }
+
+  @Test
+  public void abortsBodyOfNotAcceptedType() throws Exception {
+    Fetcher fetcher = fetcher(1 << 20);
+    FetchResult file = fetcher.fetch(base + "/file", Map.of("Accept", "text/html,application/xhtml+xml")).get();
+    assertEquals(200, file.getStatusCode());
+    assertFalse(file.isHtml());
+    assertEquals(0, file.getBody().length);
+    assertEquals(1, fetcher.getSkipped());
+
+    FetchResult page = fetcher.fetch(base + "/gzip", Map.of("Accept", "text/html")).get();
+    assertEquals(PAGE, new String(page.getBody(), StandardCharsets.UTF_8));
+    assertEquals(1 << 20, fetcher.fetch(base + "/file").get().getBody().length);
+  }
+
+  @Test
+  public void learnsNonHtmlLinks() {
+    ContentTypeFilter filter = new ContentTypeFilter(new CrawlerProperties());
+    assertTrue(filter.isSkipped("http://example.com/docs/report.PDF"));
+    assertFalse(filter.isSkipped("http://example.com/download/1"));
+    for (int i = 1; i <= 3; i++) {
+      filter.record("http://example.com/download/" + i, false);
+    }
+    assertTrue(filter.isSkipped("http://example.com/download/4"));
+    filter.record("http://example.com/news/1", false);
+    filter.record("http://example.com/news/2", true);
+    filter.record("http://example.com/news/3", false);
+    filter.record("http://example.com/news/4", false);
+    assertFalse(filter.isSkipped("http://example.com/news/5"));
+  }
+}
@@ -0,0 +1,29 @@
+package main.service.indexer;
+
+import main.model.Field;
+import main.model.Page;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FieldManagerTest {
+
+  private static Field field(String name, String selector, float weight) {
+    Field field = new Field();
+    field.setName(name);
+    field.setSelector(selector);
+    field.setWeight(weight);
+    return field;
+  }
+
+  @Test
+  public void textCoversConfiguredFieldsOnly() {
+    FieldManager fieldManager = new FieldManager(List.of(field("title", "title", 1), field("article", "article", 0.8f)));
+    PageContext context = new PageContext(new Page(), Jsoup.parse(
+        "<html><head><title>Заголовок</title></head><body><nav>Меню сайта</nav><article>Текст статьи</article></body></html>"));
+    assertEquals("Заголовок Текст статьи", fieldManager.text(context));
+  }
+}
@@ -0,0 +1,65 @@
+package main.service.indexer;
+
+import main.model.Site;
+import main.utilities.CrawlerProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrontierTest {
+  @TempDir
+  Path dataDir;
+
+  private CrawlerProperties properties() {
+    CrawlerProperties properties = new CrawlerProperties();
+    properties.setDataDir(dataDir.toString());
+    properties.setSeenInitialCapacity(100);
+    return properties;
+  }
+
+  private Site site() {
+    Site site = new Site();
+    site.setId(7);
+    site.setUrl("http://example.com");
+    return site;
+  }
+
+  @Test
+  public void resumesFromCheckpoint() throws Exception {
+    Frontier frontier = new Frontier(site(), properties());
+    assertFalse(frontier.isResumed());
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      urls.add("http://example.com/page" + i);
+    }
+    assertEquals(1000, frontier.offer(urls));
+    String first = frontier.poll(0, TimeUnit.MILLISECONDS);
+    String second = frontier.poll(0, TimeUnit.MILLISECONDS);
+    frontier.done(second);
+    frontier.checkpoint();
+    frontier.offer(List.of("http://example.com/late"));
+    frontier.close();
+
+    Frontier resumed = new Frontier(site(), properties());
+    assertTrue(resumed.isResumed());
+    assertEquals(first, resumed.poll(0, TimeUnit.MILLISECONDS));
+    assertEquals(0, resumed.offer(urls));
+    assertEquals(0, resumed.offer(List.of("http://example.com/late")));
+    int left = 0;
+    String last = null;
+    for (String url; (url = resumed.poll(0, TimeUnit.MILLISECONDS)) != null; left++) {
+      last = url;
+    }
+    assertEquals(999, left);
+    assertEquals("http://example.com/late", last);
+    resumed.complete();
+
+    assertFalse(new Frontier(site(), properties()).isResumed());
+  }
+}
@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.ObjectInputStream;
 import java.util.List;
-import main.model.Page;
 import main.model.Site;
 import main.model.Site.Status;
 import main.service.indexer.factory.PageFactory;
@@ -30,13 +29,13 @@ public class PipelineTest {
     ObjectInputStream stream = new ObjectInputStream(fos);
     List<?> urls = (List<?>) stream.readObject();
     urls.parallelStream().forEach(url -> {
-      Page page = null;
+      PageContext context = null;
       try {
-        page = PageFactory.create((String) url, site);
+        context = PageFactory.create((String) url, site);
       } catch (Exception e) {
         e.printStackTrace();
       }
-      pipeline.run(page);
+      pipeline.run(context);
     });
     pipeline.close();
     long duration = System.currentTimeMillis() - start;
@@ -0,0 +1,94 @@
+package main.service.indexer;
+
+import com.sun.net.httpserver.HttpServer;
+import main.utilities.CrawlerProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PolitenessSchedulerTest {
+  private HttpServer server;
+  private String base;
+  private final AtomicInteger throttled = new AtomicInteger();
+
+  @BeforeEach
+  public void start() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/ok", exchange -> {
+      exchange.getResponseHeaders().add("Content-Type", "text/html");
+      byte[] body = "<html></html>".getBytes();
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.createContext("/busy", exchange -> {
+      if (throttled.getAndIncrement() == 0) {
+        exchange.getResponseHeaders().add("Retry-After", "1");
+        exchange.sendResponseHeaders(429, -1);
+      } else {
+        exchange.sendResponseHeaders(200, -1);
+      }
+      exchange.close();
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    base = "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void stop() {
+    server.stop(0);
+  }
+
+  private static PolitenessScheduler scheduler(double rate) {
+    CrawlerProperties properties = new CrawlerProperties();
+    properties.setHostRate(rate);
+    properties.setHostBurst(1);
+    return new PolitenessScheduler(new Fetcher(properties), properties);
+  }
+
+  @Test
+  public void limitsRequestRatePerHost() throws Exception {
+    PolitenessScheduler scheduler = scheduler(10);
+    long start = System.nanoTime();
+    List<CompletableFuture<FetchResult>> futures = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      futures.add(scheduler.fetch(base + "/ok"));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+    long elapsed = (System.nanoTime() - start) / 1_000_000;
+    assertTrue(elapsed >= 450, "6 requests at 10 rps took only " + elapsed + " ms");
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void retriesAfterRetryAfter() throws Exception {
+    PolitenessScheduler scheduler = scheduler(100);
+    long start = System.nanoTime();
+    FetchResult result = scheduler.fetch(base + "/busy").get();
+    long elapsed = (System.nanoTime() - start) / 1_000_000;
+    assertEquals(200, result.getStatusCode());
+    assertEquals(2, throttled.get());
+    assertTrue(elapsed >= 900, "retry was sent after " + elapsed + " ms");
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void parsesRetryAfter() {
+    assertEquals(Duration.ofSeconds(120), PolitenessScheduler.parseRetryAfter("120"));
+    assertEquals(Duration.ZERO, PolitenessScheduler.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    assertNull(PolitenessScheduler.parseRetryAfter("soon"));
+  }
+}
@@ -0,0 +1,51 @@
+package main.service.indexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RobotsTxtTest {
+  private static final String ROBOTS = """
+      User-agent: *
+      Disallow: /search
+      Disallow: /*.pdf$
+      Allow: /search/help
+      Crawl-delay: 5
+
+      User-agent: Yandex
+      Disallow: /
+
+      Sitemap: https://example.com/sitemap-index.xml
+      """;
+
+  @Test
+  public void appliesCommonGroup() {
+    RobotsTxt robots = RobotsTxt.parse(ROBOTS, LinkManager.USER_AGENT);
+    assertTrue(robots.isAllowed("/"));
+    assertFalse(robots.isAllowed("/search?q=java"));
+    assertTrue(robots.isAllowed("/search/help"), "longer Allow wins");
+    assertFalse(robots.isAllowed("/files/report.pdf"));
+    assertTrue(robots.isAllowed("/files/report.pdf?download=1"), "$ anchors the end");
+    assertTrue(robots.isAllowed("/robots.txt"));
+    assertEquals(Duration.ofSeconds(5), robots.getCrawlDelay());
+    assertEquals(List.of("https://example.com/sitemap-index.xml"), robots.getSitemaps());
+  }
+
+  @Test
+  public void prefersOwnGroup() {
+    RobotsTxt robots = RobotsTxt.parse(ROBOTS + "\nUser-agent: LandsreykSearchBot\nDisallow: /private\n",
+        LinkManager.USER_AGENT);
+    assertTrue(robots.isAllowed("/search"));
+    assertFalse(robots.isAllowed("/private/page"));
+    assertNull(robots.getCrawlDelay());
+  }
+
+  @Test
+  public void targetIncludesQuery() {
+    assertEquals("/", RobotsTxt.target("https://example.com"));
+    assertEquals("/a/b?x=1", RobotsTxt.target("https://example.com/a/b?x=1"));
+  }
+}
@@ -0,0 +1,102 @@
+package main.service.indexer;
+
+import com.sun.net.httpserver.HttpServer;
+import main.model.Site;
+import main.utilities.CrawlerProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SiteDiscoveryTest {
+  private HttpServer server;
+  private String base;
+
+  @BeforeEach
+  public void start() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    base = "http://localhost:" + server.getAddress().getPort();
+    server.createContext("/robots.txt", exchange -> respond(exchange, ("User-agent: *\nDisallow: /admin\nCrawl-delay: 1\n"
+        + "Sitemap: " + base + "/sitemap-index.xml\n").getBytes(StandardCharsets.UTF_8)));
+    server.createContext("/sitemap-index.xml", exchange -> respond(exchange, ("""
+        <?xml version="1.0" encoding="UTF-8"?>
+        <sitemapindex xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+          <sitemap><loc>%1$s/news.xml.gz</loc></sitemap>
+          <sitemap><loc>%1$s/pages.xml</loc></sitemap>
+        </sitemapindex>""").formatted(base).getBytes(StandardCharsets.UTF_8)));
+    server.createContext("/news.xml.gz", exchange -> {
+      StringBuilder xml = new StringBuilder("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+      for (int i = 0; i < 2500; i++) {
+        xml.append("<url><loc>").append(base).append("/news/").append(i).append("</loc>")
+            .append("<lastmod>2024-03-01T10:00:00+03:00</lastmod></url>");
+      }
+      xml.append("</urlset>");
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(body)) {
+        gzip.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      respond(exchange, body.toByteArray());
+    });
+    server.createContext("/pages.xml", exchange -> respond(exchange, ("""
+        <urlset xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+          <url><loc>%1$s/about</loc><lastmod>2023-12-31</lastmod></url>
+          <url><loc>%1$s/contacts</loc></url>
+        </urlset>""").formatted(base).getBytes(StandardCharsets.UTF_8)));
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+  }
+
+  private static void respond(com.sun.net.httpserver.HttpExchange exchange, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @AfterEach
+  public void stop() {
+    server.stop(0);
+  }
+
+  @Test
+  public void readsRobotsAndStreamsSitemaps() throws Exception {
+    CrawlerProperties properties = new CrawlerProperties();
+    Fetcher fetcher = new Fetcher(properties);
+    PolitenessScheduler scheduler = new PolitenessScheduler(fetcher, properties);
+    Site site = new Site();
+    site.setUrl(base);
+    SiteDiscovery discovery = new SiteDiscovery(site, fetcher, scheduler);
+
+    RobotsTxt robots = discovery.robots();
+    assertFalse(robots.isAllowed("/admin/users"));
+    assertEquals(1.0, scheduler.getHosts().stream()
+        .filter(host -> host.getName().equals("localhost")).findAny().orElseThrow().getRate(), 1e-9);
+
+    List<List<SitemapReader.Entry>> batches = new ArrayList<>();
+    long start = System.nanoTime();
+    long total = discovery.sitemaps(robots, batches::add, () -> false);
+    long elapsed = (System.nanoTime() - start) / 1_000_000;
+    // первый sitemap берёт оставшийся после robots.txt токен, остальные ждут по Crawl-delay
+    assertTrue(elapsed >= 1_900, "3 sitemaps with Crawl-delay 1 took only " + elapsed + " ms");
+    assertEquals(2502, total);
+    assertEquals(4, batches.size(), "2500 links in batches of 1000 plus the second sitemap");
+    assertEquals(Instant.parse("2024-03-01T07:00:00Z"), batches.get(0).get(0).lastmod());
+    List<SitemapReader.Entry> last = batches.get(3);
+    assertEquals(base + "/about", last.get(0).loc());
+    assertEquals(Instant.parse("2023-12-31T00:00:00Z"), last.get(0).lastmod());
+    assertNull(last.get(1).lastmod());
+    scheduler.shutdown();
+  }
+}
@@ -0,0 +1,72 @@
+package main.service.indexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class StageTest {
+
+  @Test
+  public void submitWaitsWhileQueueIsFull() throws Exception {
+    Stage stage = new Stage("test", 1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(3);
+    Runnable task = () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    };
+    stage.submit(task);
+    stage.submit(task);
+    Thread producer = new Thread(() -> stage.submit(task));
+    producer.start();
+    producer.join(200);
+    assertTrue(producer.isAlive(), "third task should wait for a free slot");
+    release.countDown();
+    producer.join(1000);
+    assertFalse(producer.isAlive());
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    stage.shutdown();
+  }
+
+  @Test
+  public void handOffDoesNotWaitForQueue() throws Exception {
+    Stage stage = new Stage("test", 1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(4);
+    Runnable task = () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    };
+    long start = System.nanoTime();
+    for (int i = 0; i < 4; i++) {
+      stage.handOff(task, () -> fail("stage is running"));
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100), "hand-off should not wait for a free slot");
+    release.countDown();
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    stage.shutdown();
+  }
+
+  @Test
+  public void handOffRejectsAfterShutdown() {
+    Stage stage = new Stage("test", 1, 1);
+    stage.shutdown();
+    AtomicBoolean rejected = new AtomicBoolean();
+    stage.handOff(() -> fail("stage is shut down"), () -> rejected.set(true));
+    assertTrue(rejected.get());
+  }
+}
@@ -0,0 +1,185 @@
+package main.service.indexer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сгенерированный сайт на встроенном http сервере: корень / и страницы /page/1 ... /page/{size - 1}.
+ * <p>
+ * Каждая страница ссылается на следующую, поэтому обходчик находит все страницы, и ещё на fanOut
+ * случайных. Текст страницы - words слов из русского или английского словаря (доля русских
+ * страниц - russianShare). Содержимое зависит только от номера страницы. Ответ задерживается
+ * на latency ± jitter мс, с вероятностью errorRate сервер отвечает 503.
+ */
+public class SyntheticSite implements AutoCloseable {
+  private static final String[] RUSSIAN = ("магазин ноутбук доставка заказ покупатель скидка цена товар"
+      + " гарантия оплата курьер склад каталог телефон экран процессор память батарея клавиатура камера"
+      + " город улица дом квартира работа компания сотрудник директор проект задача решение вопрос ответ"
+      + " школа учитель ученик урок книга библиотека писатель история время год месяц неделя день утро"
+      + " вечер погода солнце дождь снег ветер море река озеро лес поле гора дорога машина поезд самолёт"
+      + " новый большой маленький быстрый надёжный удобный лёгкий тяжёлый красивый современный простой"
+      + " купить продать заказать доставить выбрать проверить работать читать писать говорить думать"
+      + " знать видеть строить открыть закрыть помочь начать закончить получить отправить вернуть"
+      + " быстро надёжно удобно легко просто вовремя недорого бесплатно ежедневно заранее").split(" ");
+  private static final String[] ENGLISH = ("garden soil water seed plant flower tree root leaf branch"
+      + " controller valve sensor schedule program zone pressure pipe hose sprinkler season weather rain"
+      + " summer winter spring autumn morning evening garden bed compost mulch tomato pepper lettuce"
+      + " carrot onion potato cabbage bean pea radish herb order shipping return payment warranty"
+      + " customer account invoice package delivery store price discount product review question answer"
+      + " green healthy fresh heavy light quick simple reliable careful deep wide narrow warm cold dry"
+      + " grow water plant harvest prepare choose check install connect replace repair protect deliver"
+      + " carefully quickly easily early often rarely usually daily weekly").split(" ");
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final int size;
+  private final int fanOut;
+  private final int words;
+  private final double russianShare;
+  private final int latency;
+  private final int jitter;
+  private final double errorRate;
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+
+  public SyntheticSite(int size, int fanOut, int words, double russianShare, int latency, int jitter,
+                       double errorRate, int threads) throws IOException {
+    this.size = size;
+    this.fanOut = fanOut;
+    this.words = words;
+    this.russianShare = russianShare;
+    this.latency = latency;
+    this.jitter = jitter;
+    this.errorRate = errorRate;
+    executor = Executors.newFixedThreadPool(threads);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.createContext("/", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /**
+   * @return русские и английские слова, из которых составлены страницы
+   */
+  public static List<String> vocabulary() {
+    List<String> vocabulary = new ArrayList<>(List.of(RUSSIAN));
+    vocabulary.addAll(List.of(ENGLISH));
+    return vocabulary;
+  }
+
+  /**
+   * @return адрес сайта без завершающего "/"
+   */
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.increment();
+    try (exchange) {
+      delay();
+      String path = exchange.getRequestURI().getPath();
+      int page = path.equals("/") ? 0 : number(path);
+      if (page < 0) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        errors.increment();
+        exchange.sendResponseHeaders(503, -1);
+        return;
+      }
+      byte[] body = page(page).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private void delay() {
+    int millis = latency + (jitter > 0 ? ThreadLocalRandom.current().nextInt(-jitter, jitter + 1) : 0);
+    if (millis > 0) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @return номер страницы по пути /page/{n}, -1 - если такой страницы нет
+   */
+  private int number(String path) {
+    if (!path.startsWith("/page/")) {
+      return -1;
+    }
+    try {
+      int page = Integer.parseInt(path.substring("/page/".length()));
+      return page > 0 && page < size ? page : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  String page(int page) {
+    Random random = new Random(page * 0x9E3779B97F4A7C15L);
+    String[] vocabulary = random.nextDouble() < russianShare ? RUSSIAN : ENGLISH;
+    StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>");
+    text(html, vocabulary, random, 6);
+    html.append("</title></head><body><nav>");
+    link(html, (page + 1) % size);
+    for (int i = 0; i < fanOut; i++) {
+      link(html, random.nextInt(size));
+    }
+    html.append("</nav><main><p>");
+    for (int written = 0; written < words; written += 50) {
+      text(html, vocabulary, random, Math.min(50, words - written));
+      html.append("</p><p>");
+    }
+    return html.append("</p></main></body></html>").toString();
+  }
+
+  private static void link(StringBuilder html, int page) {
+    html.append("<a href=\"").append(page == 0 ? "/" : "/page/" + page).append("\">").append(page).append("</a> ");
+  }
+
+  /**
+   * Слова словаря с распределением, близким к частотам слов в тексте: первые слова встречаются чаще
+   */
+  private static void text(StringBuilder html, String[] vocabulary, Random random, int count) {
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        html.append(' ');
+      }
+      html.append(vocabulary[(int) (vocabulary.length * Math.pow(random.nextDouble(), 2))]);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,57 @@
+package main.service.indexer;
+
+import main.model.Site;
+import main.utilities.CrawlerProperties;
+import main.utilities.SimHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlCanonicalizerTest {
+  private final CrawlerProperties properties = new CrawlerProperties();
+  private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(properties);
+
+  @Test
+  public void collapsesVariantsOfOnePage() {
+    String expected = "http://example.com/docs";
+    assertEquals(expected, canonicalizer.canonicalize("HTTP://Example.COM:80/docs/"));
+    assertEquals(expected, canonicalizer.canonicalize("http://example.com/docs/index.html#top"));
+    assertEquals(expected, canonicalizer.canonicalize("http://example.com//a/../docs/./"));
+    assertEquals("https://example.com:8443/", canonicalizer.canonicalize("https://example.com:8443"));
+    assertNull(canonicalizer.canonicalize("mailto:info@example.com"));
+  }
+
+  @Test
+  public void dropsTrackingParametersAndSortsTheRest() {
+    assertEquals("/list?a=1&page=%2F2",
+        canonicalizer.key("http://example.com/list?utm_source=x&page=%2f2&gclid=1&a=1"));
+    assertEquals("/", canonicalizer.key("http://example.com/?utm_medium=mail"));
+  }
+
+  @Test
+  public void dropsQueryWhenConfigured() {
+    properties.setDropQuery(true);
+    assertEquals("/list", new UrlCanonicalizer(properties).key("http://example.com/list?page=2"));
+  }
+
+  @Test
+  public void detectsNearDuplicates() {
+    String text = IntStream.range(0, 1000).mapToObj(i -> "слово" + i).collect(Collectors.joining(" "));
+    long original = SimHash.of(text);
+    long edited = SimHash.of(text.replace("слово500", "другое"));
+    long different = SimHash.of(IntStream.range(0, 1000).mapToObj(i -> "текст" + i).collect(Collectors.joining(" ")));
+    assertEquals(0, SimHash.of("слишком короткий текст"));
+    assertTrue(SimHash.distance(original, edited) <= NearDuplicates.MAX_DISTANCE);
+
+    Site site = new Site();
+    site.setId(-37);
+    NearDuplicates.load(site, List.of(original));
+    assertFalse(NearDuplicates.claim(site, edited));
+    assertTrue(NearDuplicates.claim(site, different));
+    assertFalse(NearDuplicates.claim(site, different));
+  }
+}
@@ -1,5 +1,6 @@
 package main.service.indexer;
 
+import java.io.IOException;
 import main.model.Site;
 import main.model.Site.Status;
 import main.service.indexer.factory.SiteFactory;
@@ -19,12 +20,12 @@ public class WebCrawlerTest {
   private ApplicationProperties applicationProperties;
 
   @Test
-  public void test1() {
+  public void test1() throws InterruptedException, IOException {
     Site site = applicationProperties.getSites().get(0);
     SiteFactory.update(site, Status.INDEXING);
     Pipeline pipeline = new Pipeline();
     WebCrawler webCrawler = new WebCrawler(site, pipeline);
-    webCrawler.compute();
+    webCrawler.crawl();
     pipeline.close();
   }
 }
\ No newline at end of file
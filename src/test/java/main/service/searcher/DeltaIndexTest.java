@@ -0,0 +1,115 @@
+package main.service.searcher;
+
+import main.model.Page;
+import main.model.PageContent;
+import main.model.Site;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaIndexTest {
+  private final DeltaIndex index = new DeltaIndex();
+  private final Site site = site();
+
+  @Test
+  public void overlaysPagesOnIndex() {
+    index.add(page(10, "/a"), content("<p>лес река</p>"), Map.of("лес", 1f, "река", 2f));
+    index.add(page(11, "/b"), content("<p>пусто</p>"), Map.of());
+    index.add(page(0, "/new"), content("<p>лес</p>"), Map.of("лес", 3f));
+    DeltaSegment delta = index.find(site).orElseThrow();
+    Map<Integer, Float> relevance = new HashMap<>(Map.of(10, 9f, 11, 9f, 12, 1f));
+
+    delta.overlay(relevance, List.of("река", "лес"));
+
+    assertEquals(Map.of(10, 3f, 12, 1f), relevance);
+    relevance = new HashMap<>();
+    delta.overlay(relevance, List.of("лес"));
+    assertEquals(2, relevance.size());
+    assertEquals(3f, relevance.get(-1));
+    assertEquals("/new", delta.findPath(-1));
+    assertEquals("<p>лес</p>", delta.findHtml(-1));
+    assertEquals(2, delta.findWord("лес", site).orElseThrow().getFrequency());
+    assertTrue(delta.findWord("гора", site).isEmpty());
+  }
+
+  @Test
+  public void removesOnlyCommittedVersion() {
+    Page first = page(10, "/a");
+    Page second = page(10, "/a");
+    index.add(first, content("1"), Map.of("лес", 1f));
+    index.add(second, content("2"), Map.of("река", 1f));
+
+    index.committed(first, false);
+    DeltaSegment delta = index.find(site).orElseThrow();
+    assertEquals("2", delta.findHtml(10));
+    assertTrue(delta.findWord("лес", site).isEmpty());
+
+    index.committed(second, false);
+    assertTrue(index.find(site).isEmpty());
+    assertEquals(1, delta.getPageCount());
+  }
+
+  @Test
+  public void keepsOneKeyForNewPage() {
+    Page first = page(0, "/new");
+    index.add(first, content("1"), Map.of("лес", 1f));
+    index.add(page(0, "/new"), content("2"), Map.of("лес", 1f));
+    assertEquals(1, index.getPages());
+
+    // после записи у страницы появляется id, но удаляется она по своей версии
+    first.setId(42);
+    index.committed(first, false);
+    assertEquals("2", index.find(site).orElseThrow().findHtml(-1));
+  }
+
+  @Test
+  public void keepsCommittedPagesUntilSnapshotIsWritten() {
+    Page written = page(0, "/new");
+    Page pending = page(11, "/b");
+    index.add(written, content("1"), Map.of("лес", 1f));
+    index.add(pending, content("2"), Map.of("лес", 2f));
+
+    // новая страница после записи переходит на свой id: снимок с ней не даст второго совпадения
+    written.setId(42);
+    index.committed(written, true);
+    DeltaSegment delta = index.find(site).orElseThrow();
+    assertNull(delta.findPath(-1));
+    assertEquals("/new", delta.findPath(42));
+    Map<Integer, Float> relevance = new HashMap<>(Map.of(42, 9f));
+    delta.overlay(relevance, List.of("лес"));
+    assertEquals(Map.of(42, 1f, 11, 2f), relevance);
+
+    index.flushed(site.getId(), site.getGeneration());
+    delta = index.find(site).orElseThrow();
+    assertEquals(1, delta.getPageCount());
+    assertEquals("2", delta.findHtml(11));
+
+    index.committed(pending, true);
+    index.flushed(site.getId(), site.getGeneration());
+    assertTrue(index.find(site).isEmpty());
+  }
+
+  private Page page(int id, String path) {
+    Page page = new Page();
+    page.setId(id);
+    page.setUrl(path);
+    page.setSite(site);
+    page.setGeneration(site.getGeneration());
+    return page;
+  }
+
+  private static PageContent content(String html) {
+    return PageContent.of(null, html);
+  }
+
+  private static Site site() {
+    Site site = new Site();
+    site.setId(1);
+    site.setGeneration(1);
+    return site;
+  }
+}
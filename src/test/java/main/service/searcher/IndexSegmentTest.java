@@ -0,0 +1,118 @@
+package main.service.searcher;
+
+import main.model.Posting;
+import main.model.Word;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexSegmentTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  public void roundTripsDictionaryPostingsAndPaths() throws IOException {
+    IndexSegment segment = IndexSegment.open(write());
+
+    assertEquals(7, segment.getSiteId());
+    assertEquals(3, segment.getGeneration());
+    assertEquals(3, segment.getLemmaCount());
+    assertEquals(2, segment.getPageCount());
+    int term = segment.find("ёж");
+    assertEquals("ёж", segment.getLemma(term));
+    assertEquals(12, segment.getLemmaId(term));
+    assertEquals(2, segment.getFrequency(term));
+    assertEquals(List.of(new Posting(100, 1.5f), new Posting(101, 0.8f)), read(segment.postings(term)));
+    assertEquals(List.of(new Posting(101, 2f)), read(segment.postings(segment.find("garden"))));
+    assertTrue(read(segment.postings(segment.find("дом"))).isEmpty());
+    assertEquals(-1, segment.find("ежи"));
+    assertEquals(-1, segment.find(""));
+    assertEquals("/путь/ёж", segment.findPath(101));
+    assertEquals("/", segment.findPath(100));
+    assertNull(segment.findPath(102));
+    assertFalse(segment.contains(102));
+  }
+
+  @Test
+  public void advancesAcrossBlocks() throws IOException {
+    List<Posting> postings = new ArrayList<>();
+    for (int i = 0; i < IndexSegment.BLOCK * 3 + 5; i++) {
+      postings.add(new Posting(1000 + i * 300, i));
+    }
+    Path file = directory.resolve("blocks.segment");
+    IndexSegment.write(file, 1, 1, List.of(word(1, "лес", postings.size())), word -> postings, Map.of());
+    IndexSegment segment = IndexSegment.open(file);
+
+    assertEquals(postings, read(segment.postings(0)));
+    IndexSegment.Postings cursor = segment.postings(0);
+    assertEquals(postings.size(), cursor.getCount());
+    assertEquals(1000, cursor.advance(0));
+    assertEquals(1000 + 200 * 300, cursor.advance(1000 + 200 * 300));
+    assertEquals(200f, cursor.getRank());
+    assertEquals(1000 + 201 * 300, cursor.advance(1000 + 200 * 300 + 1));
+    assertEquals(1000 + 201 * 300, cursor.advance(5));
+    assertEquals(1000 + 202 * 300, cursor.nextPage());
+    assertEquals(1000 + (postings.size() - 1) * 300, cursor.advance(1000 + (postings.size() - 1) * 300));
+    assertEquals(IndexSegment.Postings.NO_MORE, cursor.nextPage());
+    assertEquals(IndexSegment.Postings.NO_MORE, segment.postings(0).advance(Integer.MAX_VALUE - 1));
+  }
+
+  @Test
+  public void rejectsCorruptedSegment() throws IOException {
+    Path file = write();
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(50);
+      int value = raf.read();
+      raf.seek(50);
+      raf.write(value ^ 1);
+    }
+    IOException e = assertThrows(IOException.class, () -> IndexSegment.open(file));
+    assertTrue(e.getMessage().contains("checksum"));
+  }
+
+  @Test
+  public void rejectsOtherVersion() throws IOException {
+    Path file = write();
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(4);
+      raf.writeInt(1);
+    }
+    IOException e = assertThrows(IOException.class, () -> IndexSegment.open(file));
+    assertTrue(e.getMessage().contains("version"));
+  }
+
+  private Path write() throws IOException {
+    Path file = directory.resolve("3-0.segment");
+    Map<String, List<Posting>> postings = Map.of(
+        "ёж", List.of(new Posting(101, 0.8f), new Posting(100, 1.5f)),
+        "garden", List.of(new Posting(101, 2f)),
+        "дом", List.of());
+    IndexSegment.write(file, 7, 3, List.of(word(11, "garden", 1), word(12, "ёж", 2), word(13, "дом", 0)),
+        word -> postings.get(word.getName()), Map.of(101, "/путь/ёж", 100, "/"));
+    return file;
+  }
+
+  static List<Posting> read(IndexSegment.Postings cursor) {
+    List<Posting> postings = new ArrayList<>();
+    for (int page = cursor.nextPage(); page != IndexSegment.Postings.NO_MORE; page = cursor.nextPage()) {
+      postings.add(new Posting(page, cursor.getRank()));
+    }
+    return postings;
+  }
+
+  static Word word(int id, String name, int frequency) {
+    Word word = new Word();
+    word.setId(id);
+    word.setName(name);
+    word.setFrequency(frequency);
+    return word;
+  }
+}
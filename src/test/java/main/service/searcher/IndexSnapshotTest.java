@@ -0,0 +1,55 @@
+package main.service.searcher;
+
+import main.model.Posting;
+import main.model.Site;
+import main.model.Word;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static main.service.searcher.IndexSegmentTest.word;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexSnapshotTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  public void newerSegmentReplacesPages() throws IOException {
+    IndexSegment base = segment("2-0.segment",
+        Map.of(word(1, "лес", 3), List.of(new Posting(1, 1f), new Posting(2, 1f), new Posting(3, 1f)),
+            word(2, "река", 2), List.of(new Posting(1, 2f), new Posting(3, 0.5f))),
+        Map.of(1, "/a", 2, "/b", 3, "/c"));
+    // страница 1 потеряла реку, страница 3 удалена, у страницы 4 есть обе леммы
+    IndexSegment delta = segment("2-1.segment",
+        Map.of(word(1, "лес", 3), List.of(new Posting(1, 1f), new Posting(4, 3f)),
+            word(2, "река", 1), List.of(new Posting(4, 1f))),
+        Map.of(1, "/a2", 3, "", 4, "/d"));
+    IndexSnapshot snapshot = new IndexSnapshot(2, List.of(base, delta));
+    Site site = new Site();
+
+    assertEquals(Map.of(4, 4f), snapshot.match(List.of("река", "лес")));
+    assertEquals(Map.of(1, 1f, 2, 1f, 4, 3f), snapshot.match(List.of("лес")));
+    assertTrue(snapshot.match(List.of("река", "гора")).isEmpty());
+    Word word = snapshot.findWord("река", site).orElseThrow();
+    assertEquals(1, word.getFrequency());
+    assertEquals(2, word.getGeneration());
+    assertSame(site, word.getSite());
+    assertEquals("/a2", snapshot.findPath(1));
+    assertEquals("/b", snapshot.findPath(2));
+    assertNull(snapshot.findPath(5));
+    assertTrue(snapshot.isReplaced(3, 0));
+    assertFalse(snapshot.isReplaced(3, 1));
+  }
+
+  private IndexSegment segment(String name, Map<Word, List<Posting>> postings, Map<Integer, String> paths)
+      throws IOException {
+    Path file = directory.resolve(name);
+    IndexSegment.write(file, 1, 2, List.copyOf(postings.keySet()), postings::get, paths);
+    return IndexSegment.open(file);
+  }
+}
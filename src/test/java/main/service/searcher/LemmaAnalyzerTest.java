@@ -0,0 +1,63 @@
+package main.service.searcher;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LemmaAnalyzerTest {
+
+  @Test
+  public void emitsLemmasWithoutServiceWords() throws IOException {
+    Analyzer analyzer = new LemmaAnalyzer();
+    assertEquals(List.of("стол", "стол", "стол"), analyze(analyzer, "Стол, столами и столы"));
+    // токенизатор переиспользуется: после reset читает новый текст
+    assertEquals(List.of("стул"), analyze(analyzer, "на стульях"));
+  }
+
+  @Test
+  public void indexedLemmaMatchesAnyWordForm() throws IOException {
+    try (Directory directory = new ByteBuffersDirectory()) {
+      try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new LemmaAnalyzer()))) {
+        Document document = new Document();
+        document.add(new TextField("body", "Столами и стульями", Field.Store.NO));
+        writer.addDocument(document);
+      }
+      try (DirectoryReader reader = DirectoryReader.open(directory)) {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        assertEquals(1, searcher.count(new TermQuery(new Term("body", "стол"))));
+        assertEquals(0, searcher.count(new TermQuery(new Term("body", "столами"))));
+      }
+    }
+  }
+
+  private static List<String> analyze(Analyzer analyzer, String text) throws IOException {
+    List<String> lemmas = new ArrayList<>();
+    try (TokenStream stream = analyzer.tokenStream("body", text)) {
+      CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+      stream.reset();
+      while (stream.incrementToken()) {
+        lemmas.add(term.toString());
+      }
+      stream.end();
+    }
+    return lemmas;
+  }
+}
@@ -0,0 +1,382 @@
+package main.service.searcher;
+
+import main.service.indexer.IndexStatistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочный тест поиска: синтетический корпус ({@link SyntheticCorpus}) записывается прямо в таблицы
+ * индекса H2, затем журнал запросов проигрывается через /api/search с заданной частотой.
+ * <p>
+ * Нагрузка открытая: запросы отправляются по расписанию, не дожидаясь ответов, и задержка считается
+ * от запланированного времени отправки. Поэтому очередь перед медленным сервером попадает в процентили,
+ * а не прячется за снизившейся частотой. Запуск:
+ * <pre>
+ * mvn test -Dtest=SearchBenchmark [-Dbenchmark.sites=3] [-Dbenchmark.pages=2000] [-Dbenchmark.words=200]
+ *     [-Dbenchmark.vocabulary=1000] [-Dbenchmark.zipf=1.0] [-Dbenchmark.qps=20] [-Dbenchmark.duration=20]
+ *     [-Dbenchmark.warmup=5] [-Dbenchmark.snapshot=true] [-Dbenchmark.engine=jpa] [-Dbenchmark.queries=queries.tsv]
+ *     [-Dbenchmark.label=current]
+ *     [-Dbenchmark.baseline=target/search-benchmark/before.properties]
+ * </pre>
+ * Журнал запросов - строки "класс TAB запрос TAB сайт" (сайт может быть пустым). Без -Dbenchmark.queries
+ * он генерируется и сохраняется в target/search-benchmark/queries.tsv. Результаты записываются
+ * в target/search-benchmark/{label}.properties; с -Dbenchmark.baseline печатается сравнение с прежним
+ * прогоном, например до и после изменения поиска. С -Dbenchmark.snapshot=false поиск читает индекс
+ * из базы, а не из снимков ({@link SnapshotService}). С -Dbenchmark.engine=lucene поиск идёт по индексу
+ * Lucene ({@link LuceneSearchEngine}), построенному из _page_content после записи корпуса; два прогона
+ * с разными -Dbenchmark.label и -Dbenchmark.baseline сравнивают движки на одном журнале запросов.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "logging.config=${benchmark.logging:classpath:log4j2-benchmark.xml}")
+public class SearchBenchmark {
+  private static final int SITES = Integer.getInteger("benchmark.sites", 3);
+  private static final int PAGES = Integer.getInteger("benchmark.pages", 2_000);
+  private static final int WORDS = Integer.getInteger("benchmark.words", 200);
+  private static final int VOCABULARY = Integer.getInteger("benchmark.vocabulary", 1_000);
+  private static final double ZIPF = Double.parseDouble(System.getProperty("benchmark.zipf", "1.0"));
+  private static final int QPS = Integer.getInteger("benchmark.qps", 20);
+  private static final int DURATION = Integer.getInteger("benchmark.duration", 20);
+  private static final int WARMUP = Integer.getInteger("benchmark.warmup", 5);
+  private static final boolean SNAPSHOT = Boolean.parseBoolean(System.getProperty("benchmark.snapshot", "true"));
+  private static final String ENGINE = System.getProperty("benchmark.engine", "jpa");
+  private static final Duration TIMEOUT = Duration.ofSeconds(Long.getLong("benchmark.timeout", 10));
+  private static final String LABEL = System.getProperty("benchmark.label", "current");
+  private static final Path RESULTS = Path.of("target", "search-benchmark");
+  private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+
+  @LocalServerPort
+  private int port;
+  @Autowired
+  private DataSource dataSource;
+  @Autowired
+  private IndexStatistics indexStatistics;
+  @Autowired
+  private SnapshotService snapshotService;
+  @Autowired
+  private SearchEngine searchEngine;
+
+  @DynamicPropertySource
+  static void properties(DynamicPropertyRegistry registry) throws IOException {
+    Path dataDir = Files.createTempDirectory("search-benchmark");
+    for (int site = 1; site <= SITES; site++) {
+      int number = site;
+      registry.add("sites[%d].url".formatted(site - 1), () -> SyntheticCorpus.url(number));
+      registry.add("sites[%d].name".formatted(site - 1), () -> "Site " + number);
+    }
+    registry.add("spring.datasource.url", () -> "jdbc:h2:mem:search-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    registry.add("spring.datasource.username", () -> "sa");
+    registry.add("spring.datasource.password", () -> "");
+    registry.add("spring.flyway.enabled", () -> false);
+    registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+    registry.add("spring.jpa.properties.hibernate.dialect", () -> "org.hibernate.dialect.H2Dialect");
+    registry.add("crawler.recrawl", () -> false);
+    registry.add("crawler.data-dir", dataDir::toString);
+    registry.add("crawler.snapshot", () -> SNAPSHOT);
+    registry.add("crawler.search-engine", () -> ENGINE);
+  }
+
+  @Test
+  public void search() throws SQLException, IOException {
+    SyntheticCorpus corpus = new SyntheticCorpus(SITES, PAGES, WORDS, VOCABULARY, ZIPF);
+    long seeding = System.nanoTime();
+    corpus.seed(dataSource);
+    indexStatistics.load();
+    for (int site = 1; SNAPSHOT && site <= SITES; site++) {
+      assertTrue(snapshotService.refresh(site), "Snapshot of site " + site + " is not written.");
+    }
+    for (int site = 1; searchEngine instanceof LuceneSearchEngine lucene && site <= SITES; site++) {
+      assertTrue(lucene.rebuild(site), "Lucene index of site " + site + " is not built.");
+    }
+    double seeded = (System.nanoTime() - seeding) / 1e9;
+    Files.createDirectories(RESULTS);
+    List<Query> queries = System.getProperty("benchmark.queries") == null
+        ? generate(corpus.getVocabulary())
+        : read(Path.of(System.getProperty("benchmark.queries")));
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      HttpClient client = HttpClient.newBuilder().executor(executor).connectTimeout(TIMEOUT).build();
+      replay(client, queries, QPS * WARMUP);
+      Run run = replay(client, queries, QPS * DURATION);
+
+      Map<String, String> result = new LinkedHashMap<>();
+      result.put("requests", String.valueOf(run.requests()));
+      result.put("throughput, qps", "%.1f".formatted(run.requests() / run.seconds()));
+      for (double quantile : QUANTILES) {
+        result.put("%s, ms".formatted(name(quantile)), "%.2f".formatted(run.percentile(null, quantile)));
+      }
+      for (String kind : Query.KINDS) {
+        result.put("%s p99, ms".formatted(kind), "%.2f".formatted(run.percentile(kind, 0.99)));
+      }
+      result.put("empty results, %", "%.1f".formatted(run.empty() * 100.0 / run.requests()));
+      result.put("4xx", String.valueOf(run.count(400)));
+      result.put("5xx", String.valueOf(run.count(500)));
+      result.put("timeouts and i/o errors", String.valueOf(run.count(0)));
+      System.out.printf("%nSearch benchmark: %d sites x %d pages, %d words, %d lemmas, zipf %.2f, seeded in %.1f s,"
+              + " engine %s, snapshots %s; %d qps for %d s after %d s warmup, %d distinct queries%n", SITES, PAGES, WORDS,
+          corpus.getVocabulary().size(), ZIPF, seeded, ENGINE, SNAPSHOT ? "on" : "off", QPS, DURATION, WARMUP,
+          queries.size());
+      result.forEach((metric, value) -> System.out.printf("%-28s %12s%n", metric, value));
+      save(result);
+      compare(result);
+
+      assertEquals(0, run.count(500), "Search failed with 5xx.");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Отправляет count запросов журнала по кругу с частотой QPS, не дожидаясь ответов, и ждёт все ответы
+   */
+  private Run replay(HttpClient client, List<Query> queries, int count) {
+    Run run = new Run(queries, count);
+    long interval = 1_000_000_000L / QPS;
+    long start = System.nanoTime();
+    List<CompletableFuture<?>> responses = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      long scheduled = start + i * interval;
+      long wait;
+      while ((wait = scheduled - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      int request = i;
+      HttpRequest httpRequest = HttpRequest.newBuilder(uri(run.query(i))).timeout(TIMEOUT).GET().build();
+      responses.add(client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString())
+          .whenComplete((response, error) -> run.record(request, scheduled, response)));
+    }
+    CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+    run.finish(start);
+    return run;
+  }
+
+  private URI uri(Query query) {
+    String uri = "http://127.0.0.1:%d/api/search?query=%s".formatted(port, encode(query.text()));
+    return URI.create(query.site().isEmpty() ? uri : uri + "&site=" + encode(query.site()));
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Журнал запросов: 40% - одна частая лемма, 20% - одна редкая, 30% - две леммы, 10% - три;
+   * треть запросов ограничена одним сайтом. Частые - первая десятая часть словаря, редкие - вторая половина
+   */
+  private static List<Query> generate(List<String> vocabulary) throws IOException {
+    Random random = new Random(46);
+    List<Query> queries = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      double kind = random.nextDouble();
+      Query query;
+      if (kind < 0.4) {
+        query = new Query("common", pick(vocabulary, random, 0, vocabulary.size() / 10), "");
+      } else if (kind < 0.6) {
+        query = new Query("rare", pick(vocabulary, random, vocabulary.size() / 2, vocabulary.size()), "");
+      } else if (kind < 0.9) {
+        query = new Query("two-term", words(vocabulary, random, 2), "");
+      } else {
+        query = new Query("three-term", words(vocabulary, random, 3), "");
+      }
+      if (random.nextDouble() < 1 / 3.0) {
+        query = new Query(query.kind(), query.text(), SyntheticCorpus.url(1 + random.nextInt(SITES)));
+      }
+      queries.add(query);
+    }
+    try (Writer writer = Files.newBufferedWriter(RESULTS.resolve("queries.tsv"))) {
+      for (Query query : queries) {
+        writer.write(String.join("\t", query.kind(), query.text(), query.site()) + "\n");
+      }
+    }
+    return queries;
+  }
+
+  private static String pick(List<String> vocabulary, Random random, int from, int to) {
+    return vocabulary.get(from + random.nextInt(Math.max(to - from, 1)));
+  }
+
+  /**
+   * Несколько разных лемм, частые выбираются чаще
+   */
+  private static String words(List<String> vocabulary, Random random, int count) {
+    List<String> words = new ArrayList<>();
+    while (words.size() < Math.min(count, vocabulary.size())) {
+      String word = vocabulary.get((int) (vocabulary.size() * Math.pow(random.nextDouble(), 2)));
+      if (!words.contains(word)) {
+        words.add(word);
+      }
+    }
+    return String.join(" ", words);
+  }
+
+  private static List<Query> read(Path path) throws IOException {
+    List<Query> queries = new ArrayList<>();
+    for (String line : Files.readAllLines(path)) {
+      if (line.isBlank()) {
+        continue;
+      }
+      String[] columns = line.split("\t", -1);
+      queries.add(new Query(columns[0], columns[1], columns.length > 2 ? columns[2] : ""));
+    }
+    assertFalse(queries.isEmpty(), "Query log " + path + " is empty.");
+    return queries;
+  }
+
+  private static void save(Map<String, String> result) throws IOException {
+    Properties properties = new Properties();
+    properties.putAll(result);
+    try (Writer writer = Files.newBufferedWriter(RESULTS.resolve(LABEL + ".properties"))) {
+      properties.store(writer, "Search benchmark: %d sites x %d pages, %d qps".formatted(SITES, PAGES, QPS));
+    }
+  }
+
+  /**
+   * Печатает результаты рядом с сохранёнными результатами прежнего прогона
+   */
+  private static void compare(Map<String, String> result) throws IOException {
+    String baseline = System.getProperty("benchmark.baseline");
+    if (baseline == null) {
+      return;
+    }
+    Properties before = new Properties();
+    try (Reader reader = Files.newBufferedReader(Path.of(baseline))) {
+      before.load(reader);
+    }
+    System.out.printf("%nCompared with %s:%n%-28s %12s %12s %10s%n", baseline, "metric", "baseline", LABEL, "change");
+    result.forEach((metric, value) -> {
+      String old = before.getProperty(metric);
+      if (old == null) {
+        return;
+      }
+      double a = Double.parseDouble(old.replace(',', '.'));
+      double b = Double.parseDouble(value.replace(',', '.'));
+      String change = a == 0 ? "" : "%+.1f%%".formatted((b - a) / a * 100);
+      System.out.printf("%-28s %12s %12s %10s%n", metric, old, value, change);
+    });
+  }
+
+  private static String name(double quantile) {
+    return "p" + (quantile == 0.999 ? "999" : String.valueOf(Math.round(quantile * 100)));
+  }
+
+  /**
+   * Запрос журнала
+   *
+   * @param kind класс запроса: common, rare, two-term, three-term или свой
+   * @param site адрес сайта, пустая строка - все сайты
+   */
+  private record Query(String kind, String text, String site) {
+    static final List<String> KINDS = List.of("common", "rare", "two-term", "three-term");
+  }
+
+  /**
+   * Результаты одного проигрывания: задержка и статус каждого запроса. Каждый ответ пишет только
+   * свою ячейку, а читаются массивы после ожидания всех ответов
+   */
+  private static class Run {
+    private final List<Query> queries;
+    private final long[] latencies;
+    private final int[] statuses;
+    private final boolean[] empty;
+    private long end;
+    private double seconds;
+
+    Run(List<Query> queries, int count) {
+      this.queries = queries;
+      latencies = new long[count];
+      statuses = new int[count];
+      empty = new boolean[count];
+    }
+
+    Query query(int request) {
+      return queries.get(request % queries.size());
+    }
+
+    void record(int request, long scheduled, HttpResponse<String> response) {
+      long now = System.nanoTime();
+      latencies[request] = now - scheduled;
+      statuses[request] = response == null ? 0 : response.statusCode();
+      empty[request] = response != null && response.body().contains("\"count\":0");
+      synchronized (this) {
+        end = Math.max(end, now);
+      }
+    }
+
+    synchronized void finish(long start) {
+      seconds = (end - start) / 1e9;
+    }
+
+    int requests() {
+      return latencies.length;
+    }
+
+    double seconds() {
+      return seconds;
+    }
+
+    /**
+     * @param kind класс запросов, null - все
+     * @return процентиль задержки, мс
+     */
+    double percentile(String kind, double quantile) {
+      long[] sorted = IntStream.range(0, latencies.length)
+          .filter(i -> kind == null || query(i).kind().equals(kind))
+          .mapToLong(i -> latencies[i])
+          .sorted()
+          .toArray();
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(quantile * sorted.length);
+      return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    /**
+     * @param status 400 - ответы 4xx, 500 - 5xx, 0 - ответа не было
+     */
+    long count(int status) {
+      return Arrays.stream(statuses).filter(x -> status == 0 ? x == 0 : x / 100 == status / 100).count();
+    }
+
+    long empty() {
+      int count = 0;
+      for (boolean value : empty) {
+        count += value ? 1 : 0;
+      }
+      return count;
+    }
+  }
+}
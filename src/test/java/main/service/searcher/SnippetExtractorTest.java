@@ -0,0 +1,23 @@
+package main.service.searcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnippetExtractorTest {
+
+  @Test
+  public void findsWordFormOfLemma() {
+    String snippet = SnippetExtractor.extract("книги лежат на столах в библиотеке", List.of("стол"));
+    assertTrue(snippet.contains("столах"), snippet);
+  }
+
+  @Test
+  public void fallsBackToTextPrefixWhenLemmaIsMissing() {
+    String content = "текст страницы сменился после поиска, и найденной леммы в нём больше нет";
+    assertEquals(content.substring(0, 40), SnippetExtractor.extract(content, List.of("стол")));
+    assertEquals("", SnippetExtractor.extract("", List.of("стол")));
+  }
+}
@@ -0,0 +1,226 @@
+package main.service.searcher;
+
+import main.service.indexer.SyntheticSite;
+import main.utilities.CompressedText;
+import main.utilities.LemmaCache;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Синтетический проиндексированный корпус, записанный прямо в _site, _page, _page_content, _lemma, _index
+ * и _site_stats, без обхода. Если _field пуста, в неё записываются поля по умолчанию, как в V1__baseline.sql.
+ * <p>
+ * Словарь - слова {@link SyntheticSite}, которые сами являются своей начальной формой: тогда лемма
+ * встречается в тексте страницы дословно. Слова страниц выбираются по закону Ципфа: вероятность слова
+ * с номером r пропорциональна 1 / r^zipf. Ранг леммы на странице - число её повторов.
+ */
+public class SyntheticCorpus {
+  private static final int BATCH = 1_000;
+  private static final int TITLE_WORDS = 6;
+  private final int sites;
+  private final int pages;
+  private final int words;
+  private final List<String> vocabulary;
+  private final double[] cumulative;
+  private final Random random = new Random(46);
+
+  /**
+   * @param sites      количество сайтов
+   * @param pages      страниц на сайте
+   * @param words      слов на странице
+   * @param vocabulary наибольший размер словаря
+   * @param zipf       показатель закона Ципфа
+   */
+  public SyntheticCorpus(int sites, int pages, int words, int vocabulary, double zipf) {
+    this.sites = sites;
+    this.pages = pages;
+    this.words = words;
+    this.vocabulary = lemmas().stream().limit(vocabulary).toList();
+    cumulative = new double[this.vocabulary.size()];
+    double sum = 0;
+    for (int rank = 0; rank < cumulative.length; rank++) {
+      sum += 1 / Math.pow(rank + 1, zipf);
+      cumulative[rank] = sum;
+    }
+    for (int rank = 0; rank < cumulative.length; rank++) {
+      cumulative[rank] /= sum;
+    }
+  }
+
+  /**
+   * @return леммы по убыванию частоты
+   */
+  public List<String> getVocabulary() {
+    return vocabulary;
+  }
+
+  /**
+   * @return адрес сайта с номером site, от 1
+   */
+  public static String url(int site) {
+    return "http://site" + site + ".example.com";
+  }
+
+  public void seed(DataSource dataSource) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      connection.setAutoCommit(false);
+      insertFields(connection);
+      int pageId = 0;
+      int lemmaId = 0;
+      for (int site = 1; site <= sites; site++) {
+        insertSite(connection, site);
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        for (String lemma : vocabulary) {
+          lemmaIds.put(lemma, ++lemmaId);
+        }
+        insertLemmas(connection, site, lemmaIds);
+        int[] frequencies = new int[lemmaId + 1];
+        try (PreparedStatement page = connection.prepareStatement("INSERT INTO _page (id, site_id, generation, path, code,"
+            + " content_hash, check_count, change_count, change_rate, simhash, fetch_time) VALUES (?, ?, 1, ?, 200, 0, 0, 0, 0, 0, ?)");
+             PreparedStatement content = connection.prepareStatement(
+                 "INSERT INTO _page_content (page_id, content, raw_size) VALUES (?, ?, ?)");
+             PreparedStatement index = connection.prepareStatement(
+                 "INSERT INTO _index (lemma_id, page_id, \"rank\") VALUES (?, ?, ?)")) {
+          Timestamp now = new Timestamp(System.currentTimeMillis());
+          for (int i = 0; i < pages; i++) {
+            pageId++;
+            List<String> text = new ArrayList<>(words);
+            Map<String, Integer> counts = new HashMap<>();
+            for (int w = 0; w < words; w++) {
+              String lemma = next();
+              text.add(lemma);
+              counts.merge(lemma, 1, Integer::sum);
+            }
+            page.setInt(1, pageId);
+            page.setInt(2, site);
+            page.setString(3, "/page/" + i);
+            page.setTimestamp(4, now);
+            page.addBatch();
+            String html = "<html><head><title>" + String.join(" ", text.subList(0, Math.min(TITLE_WORDS, words)))
+                + "</title></head><body><p>" + String.join(" ", text) + "</p></body></html>";
+            byte[] data = CompressedText.compress(html);
+            content.setInt(1, pageId);
+            content.setBytes(2, data);
+            content.setInt(3, CompressedText.length(data));
+            content.addBatch();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+              int id = lemmaIds.get(entry.getKey());
+              frequencies[id]++;
+              index.setInt(1, id);
+              index.setInt(2, pageId);
+              index.setFloat(3, entry.getValue());
+              index.addBatch();
+            }
+            if (pageId % BATCH == 0) {
+              page.executeBatch();
+              content.executeBatch();
+              index.executeBatch();
+            }
+          }
+          page.executeBatch();
+          content.executeBatch();
+          index.executeBatch();
+        }
+        updateFrequencies(connection, lemmaIds, frequencies);
+        try (PreparedStatement stats = connection.prepareStatement(
+            "INSERT INTO _site_stats (site_id, generation, pages, lemmas) VALUES (?, 1, ?, ?)")) {
+          stats.setInt(1, site);
+          stats.setLong(2, pages);
+          stats.setLong(3, vocabulary.size());
+          stats.executeUpdate();
+        }
+        connection.commit();
+      }
+    }
+  }
+
+  private static void insertFields(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet fields = statement.executeQuery("SELECT COUNT(*) FROM _field")) {
+      if (fields.next() && fields.getLong(1) == 0) {
+        statement.executeUpdate(
+            "INSERT INTO _field (name, selector, weight) VALUES ('title', 'title', 1.0), ('body', 'body', 0.8)");
+      }
+    }
+  }
+
+  private static void insertSite(Connection connection, int site) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement("INSERT INTO _site (id, status, status_time, url, name,"
+        + " generation) VALUES (?, 'INDEXED', ?, ?, ?, 1)")) {
+      insert.setInt(1, site);
+      insert.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+      insert.setString(3, url(site));
+      insert.setString(4, "Site " + site);
+      insert.executeUpdate();
+    }
+  }
+
+  private static void insertLemmas(Connection connection, int site, Map<String, Integer> lemmaIds) throws SQLException {
+    try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO _lemma (id, site_id, generation, lemma, frequency) VALUES (?, ?, 1, ?, 0)")) {
+      for (Map.Entry<String, Integer> entry : lemmaIds.entrySet()) {
+        insert.setInt(1, entry.getValue());
+        insert.setInt(2, site);
+        insert.setString(3, entry.getKey());
+        insert.addBatch();
+      }
+      insert.executeBatch();
+    }
+  }
+
+  /**
+   * Частота леммы - количество страниц сайта, на которых она встречается
+   */
+  private static void updateFrequencies(Connection connection, Map<String, Integer> lemmaIds,
+                                        int[] frequencies) throws SQLException {
+    try (PreparedStatement update = connection.prepareStatement("UPDATE _lemma SET frequency = ? WHERE id = ?")) {
+      for (int id : lemmaIds.values()) {
+        update.setInt(1, frequencies[id]);
+        update.setInt(2, id);
+        update.addBatch();
+      }
+      update.executeBatch();
+    }
+  }
+
+  /**
+   * @return следующее слово по закону Ципфа
+   */
+  private String next() {
+    double value = random.nextDouble();
+    int low = 0;
+    int high = cumulative.length - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (cumulative[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return vocabulary.get(low);
+  }
+
+  private static List<String> lemmas() {
+    Set<String> lemmas = new LinkedHashSet<>();
+    for (String word : SyntheticSite.vocabulary()) {
+      if (word.equals(LemmaCache.lemmatize(word))) {
+        lemmas.add(word);
+      }
+    }
+    return new ArrayList<>(lemmas);
+  }
+}
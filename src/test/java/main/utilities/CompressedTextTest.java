@@ -0,0 +1,28 @@
+package main.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedTextTest {
+
+  @Test
+  public void roundTripsHtml() {
+    String html = "<html><head><title>Тест</title></head><body>" + "страница ".repeat(1000) + "</body></html>";
+    byte[] data = CompressedText.compress(html);
+    assertTrue(data.length * 10 < html.length(), "repetitive html compresses at least 10x");
+    assertEquals(html.getBytes(StandardCharsets.UTF_8).length, CompressedText.length(data));
+    assertEquals(html, CompressedText.decompress(data));
+    assertEquals(0, CompressedText.compress("").length);
+    assertEquals("", CompressedText.decompress(new byte[0]));
+  }
+
+  @Test
+  public void readsMysqlCompress() {
+    // SELECT HEX(COMPRESS('a'))
+    assertEquals("a", CompressedText.decompress(HexFormat.of().parseHex("01000000789C4B040000620062")));
+  }
+}
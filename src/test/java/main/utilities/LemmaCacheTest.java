@@ -0,0 +1,29 @@
+package main.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LemmaCacheTest {
+
+  @Test
+  public void lemmatizesAndCountsHits() {
+    long hits = LemmaCache.stats().hitCount();
+    assertEquals("стол", LemmaCache.lemmatize("столами"));
+    assertEquals("стол", LemmaCache.lemmatize("столами"));
+    assertTrue(LemmaCache.stats().hitCount() > hits);
+  }
+
+  @Test
+  public void skipsUnknownAndServiceWords() {
+    assertNull(LemmaCache.lemmatize("и"));
+    assertTrue(LemmaCache.isKnown("и"));
+    assertNull(LemmaCache.lemmatize("столw"));
+    assertFalse(LemmaCache.isKnown("столw"));
+  }
+
+  @Test
+  public void statsMatchDirectMorphology() {
+    assertEquals(3, WordCounter.getStats("Стол, столами и столы").get("стол"));
+  }
+}
@@ -0,0 +1,68 @@
+package main.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScalableBloomFilterTest {
+
+  @Test
+  public void growsAndKeepsFalsePositiveRate() {
+    ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+    int n = 200_000;
+    for (int i = 0; i < n; i++) {
+      filter.add("/catalog/item-" + i);
+    }
+    for (int i = 0; i < n; i++) {
+      assertTrue(filter.mightContain("/catalog/item-" + i));
+      assertFalse(filter.add("/catalog/item-" + i));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < n; i++) {
+      if (filter.mightContain("/news/" + i)) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < n * 0.01, "false positives: " + falsePositives);
+    assertTrue(filter.sizeInBytes() < n * 4L, "bytes: " + filter.sizeInBytes());
+  }
+
+  @Test
+  public void concurrentAddsOfSameKeyReportNewOnce() throws Exception {
+    int threads = 8;
+    int n = 20_000;
+    for (int round = 0; round < 5; round++) {
+      ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.001);
+      AtomicIntegerArray added = new AtomicIntegerArray(n);
+      CyclicBarrier start = new CyclicBarrier(threads);
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < n; i++) {
+            if (filter.add("/page/" + i)) {
+              added.incrementAndGet(i);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      executor.shutdown();
+      for (int i = 0; i < n; i++) {
+        assertTrue(added.get(i) <= 1, "/page/" + i + " is reported new " + added.get(i) + " times");
+      }
+    }
+  }
+}